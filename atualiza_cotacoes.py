@@ -1,6 +1,7 @@
 import requests
 import csv
 import json
+import os
 from io import StringIO
 from datetime import datetime
 
@@ -21,7 +22,11 @@ for linha in reader:
     dados.append(linha)
 
 
-with open(JSON_FILE, "w", encoding="utf-8") as f:
+# Escreve em arquivo temporário e substitui de uma vez, para que o backend
+# nunca leia um JSON escrito pela metade
+tmp_file = JSON_FILE + ".tmp"
+with open(tmp_file, "w", encoding="utf-8") as f:
     json.dump(dados, f, indent=2, ensure_ascii=False)
+os.replace(tmp_file, JSON_FILE)
 
 print(f"✅ Pronto! {len(dados)} ativos salvos em '{JSON_FILE}'")
\ No newline at end of file
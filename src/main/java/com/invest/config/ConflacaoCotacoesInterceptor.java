@@ -0,0 +1,124 @@
+package com.invest.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import com.invest.service.CotacaoStreamingService;
+import com.invest.service.ValorizacaoCarteiraStreamingService;
+
+/**
+ * Conflação de cotações no canal de saída para os clientes WebSocket
+ *
+ * Para cada sessão e tópico de ativo (/topic/cotacoes/{codigo}) ou de valorização de carteira
+ * (/topic/carteiras/{id}/valorizacao, que sempre traz o estado completo) guarda apenas a última
+ * mensagem enfileirada. Se a sessão ainda não drenou a atualização anterior quando uma
+ * nova chega, a anterior é descartada na hora de ser entregue: o cliente lento recebe
+ * somente o preço mais recente, em vez de acumular todas as variações.
+ */
+@Component
+public class ConflacaoCotacoesInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String PREFIXO_ATIVO = CotacaoStreamingService.TOPICO_COTACOES + "/";
+    private static final String PREFIXO_CARTEIRA = ValorizacaoCarteiraStreamingService.PREFIXO_TOPICO;
+
+    // sessionId → (destino → última mensagem enfileirada)
+    private final Map<String, Map<String, Message<?>>> pendentesPorSessao = new ConcurrentHashMap<>();
+
+    private final AtomicLong mensagensConflacionadas = new AtomicLong();
+    private final AtomicLong mensagensEntregues = new AtomicLong();
+    private final AtomicLong sessoesLentasDesconectadas = new AtomicLong();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (isConflacionavel(accessor)) {
+            // A mais recente passa a ser a única válida para (sessão, destino)
+            pendentesPorSessao
+                    .computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getDestination(), message);
+        }
+        return message;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (!isConflacionavel(accessor)) {
+            return message;
+        }
+
+        Map<String, Message<?>> pendentes = pendentesPorSessao.get(accessor.getSessionId());
+        if (pendentes == null) {
+            return message;
+        }
+
+        Message<?> maisRecente = pendentes.get(accessor.getDestination());
+        if (maisRecente != null && maisRecente != message) {
+            // Já existe uma atualização mais nova para o mesmo ativo: descarta esta
+            mensagensConflacionadas.incrementAndGet();
+            return null;
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (!isConflacionavel(accessor)) {
+            return;
+        }
+
+        Map<String, Message<?>> pendentes = pendentesPorSessao.get(accessor.getSessionId());
+        if (pendentes != null) {
+            pendentes.remove(accessor.getDestination(), message);
+        }
+        mensagensEntregues.incrementAndGet();
+    }
+
+    /**
+     * Libera o estado de uma sessão encerrada
+     */
+    public void removerSessao(String sessionId) {
+        if (sessionId != null) {
+            pendentesPorSessao.remove(sessionId);
+        }
+    }
+
+    /**
+     * Conta uma sessão derrubada por exceder os limites de envio (cliente lento)
+     */
+    public void registrarSessaoLenta(String sessionId) {
+        sessoesLentasDesconectadas.incrementAndGet();
+        removerSessao(sessionId);
+    }
+
+    /**
+     * Métricas de entrega: mensagens conflacionadas, entregues, pendentes e sessões lentas desconectadas
+     */
+    public Map<String, Object> getEstatisticas() {
+        Map<String, Object> estatisticas = new HashMap<>();
+        estatisticas.put("mensagensConflacionadas", mensagensConflacionadas.get());
+        estatisticas.put("mensagensEntregues", mensagensEntregues.get());
+        estatisticas.put("mensagensPendentes", pendentesPorSessao.values().stream().mapToInt(Map::size).sum());
+        estatisticas.put("sessoesLentasDesconectadas", sessoesLentasDesconectadas.get());
+        return estatisticas;
+    }
+
+    private boolean isConflacionavel(SimpMessageHeaderAccessor accessor) {
+        String destino = accessor.getDestination();
+        return accessor.getMessageType() == SimpMessageType.MESSAGE
+                && accessor.getSessionId() != null
+                && destino != null
+                && (destino.startsWith(PREFIXO_ATIVO) || destino.startsWith(PREFIXO_CARTEIRA));
+    }
+}
@@ -1,25 +1,64 @@
 package com.invest.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import com.invest.service.CotacaoStreamingService;
 
 /**
  * Configuração WebSocket para streaming de cotações em tempo real
  * Permite que clientes se conectem e recebam atualizações automáticas
+ *
+ * Clientes lentos são protegidos por conflação (ConflacaoCotacoesInterceptor) e por limites
+ * de buffer e tempo de envio: a sessão que os excede é desconectada.
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private ConflacaoCotacoesInterceptor conflacaoInterceptor;
+
+    // Tempo máximo (ms) que um envio para a sessão pode levar
+    @Value("${websocket.envio.tempo-limite-ms:10000}")
+    private int tempoLimiteEnvio;
+
+    // Tamanho máximo (bytes) do buffer de saída por sessão
+    @Value("${websocket.envio.buffer-limite-bytes:524288}")
+    private int bufferLimiteEnvio;
+
+    // Bytes enviados por uma conexão SockJS de streaming antes de ser reciclada
+    @Value("${websocket.sockjs.stream-bytes-limite:131072}")
+    private int sockJsStreamBytesLimite;
+
+    // Mensagens guardadas para clientes SockJS de polling enquanto não buscam
+    @Value("${websocket.sockjs.cache-mensagens:100}")
+    private int sockJsCacheMensagens;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Configura broker para enviar mensagens aos clientes
         config.enableSimpleBroker("/topic", "/queue");
         // Prefixo para mensagens enviadas pelos clientes
         config.setApplicationDestinationPrefixes("/app");
+        // Prefixo para mensagens direcionadas a uma sessão (ex: snapshot inicial em /user/queue/cotacoes)
+        config.setUserDestinationPrefix("/user");
     }
 
     @Override
@@ -27,6 +66,54 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // Endpoint WebSocket
         registry.addEndpoint("/ws-cotacoes")
                 .setAllowedOriginPatterns("*")
-                .withSockJS();
+                .withSockJS()
+                .setStreamBytesLimit(sockJsStreamBytesLimite)
+                .setHttpMessageCacheSize(sockJsCacheMensagens);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // /topic/cotacoes/petr4 assina o mesmo tópico que o broadcaster usa (/topic/cotacoes/PETR4)
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+                if (accessor.getCommand() != StompCommand.SUBSCRIBE) {
+                    return message;
+                }
+                String destino = accessor.getDestination();
+                String canonico = CotacaoStreamingService.normalizarDestino(destino);
+                if (canonico == null || canonico.equals(destino)) {
+                    return message;
+                }
+                accessor.setDestination(canonico);
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+        });
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Mantém só a última cotação pendente por sessão e ativo
+        registration.interceptors(conflacaoInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(tempoLimiteEnvio);
+        registration.setSendBufferSizeLimit(bufferLimiteEnvio);
+
+        // Contabiliza sessões derrubadas por excederem os limites de envio
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (closeStatus.getCode() == CloseStatus.SESSION_NOT_RELIABLE.getCode()) {
+                    conflacaoInterceptor.registrarSessaoLenta(session.getId());
+                } else {
+                    conflacaoInterceptor.removerSessao(session.getId());
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        });
     }
 }
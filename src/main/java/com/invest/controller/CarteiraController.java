@@ -11,6 +11,7 @@ import com.invest.repository.CarteiraRepository;
 import com.invest.repository.InvestidorRepository;
 import com.invest.repository.AtivoRepository;
 import com.invest.service.CarteiraService;
+import com.invest.service.ReconciliacaoValorCarteiraService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
@@ -26,7 +27,9 @@ import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +53,9 @@ public class CarteiraController {
     @Autowired
     private AtivoRepository ativoRepository;
 
+    @Autowired
+    private ReconciliacaoValorCarteiraService reconciliacaoService;
+
     @Operation(summary = "Lista todas as carteiras de um investidor",
                description = "Retorna uma página de carteiras de um investidor específico, com paginação e ordenação")
     @GetMapping("/investidor/{investidorId}")
@@ -65,7 +71,10 @@ public class CarteiraController {
         Pageable pageable = PageRequest.of(page, size, Sort.by(sort));
         Page<Carteira> carteiras = carteiraRepository.findByInvestidor(investidor, pageable);
         
-        return carteiras.map(this::convertToResponse);
+        // Ativos de todas as carteiras da página em uma única consulta
+        Map<Long, List<Ativo>> ativosPorCarteira = buscarAtivosPorCarteira(carteiras.getContent());
+        return carteiras.map(carteira -> convertToResponse(carteira,
+                ativosPorCarteira.getOrDefault(carteira.getId(), new ArrayList<>())));
     }
 
     @Operation(summary = "Busca uma carteira específica",
@@ -88,10 +97,7 @@ public class CarteiraController {
         Investidor investidor = investidorRepository.findById(investidorId)
                 .orElseThrow(() -> new ResourceNotFoundException("Investidor não encontrado: " + investidorId));
         
-        return carteiraService.getCarteirasByObjetivo(investidor, objetivo)
-                .stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
+        return convertToResponses(carteiraService.getCarteirasByObjetivo(investidor, objetivo));
     }
 
     @Operation(summary = "Lista carteiras por perfil de risco",
@@ -104,10 +110,7 @@ public class CarteiraController {
         Investidor investidor = investidorRepository.findById(investidorId)
                 .orElseThrow(() -> new ResourceNotFoundException("Investidor não encontrado: " + investidorId));
         
-        return carteiraService.getCarteirasByPerfil(investidor, perfil)
-                .stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
+        return convertToResponses(carteiraService.getCarteirasByPerfil(investidor, perfil));
     }
 
     @Operation(summary = "Cria uma nova carteira",
@@ -166,6 +169,21 @@ public class CarteiraController {
         return ResponseEntity.noContent().build();
     }
 
+    @Operation(summary = "Último relatório de reconciliação",
+               description = "Retorna o resultado da última reconciliação do valor atual e investido das carteiras com os ativos")
+    @GetMapping("/reconciliacao")
+    public ResponseEntity<Map<String, Object>> getReconciliacao() {
+        Map<String, Object> relatorio = reconciliacaoService.getUltimoRelatorio();
+        return relatorio != null ? ResponseEntity.ok(relatorio) : ResponseEntity.noContent().build();
+    }
+
+    @Operation(summary = "Executa a reconciliação das carteiras",
+               description = "Recalcula o valor atual e investido de todas as carteiras a partir dos ativos, informa e corrige divergências")
+    @PostMapping("/reconciliacao")
+    public ResponseEntity<Map<String, Object>> reconciliar() {
+        return ResponseEntity.ok(reconciliacaoService.reconciliar());
+    }
+
     @Operation(summary = "Atualiza preços de uma carteira",
                description = "Atualiza os preços de uma carteira específica usando dados do JSON ou serviço externo")
     @PostMapping("/{id}/atualizar-precos")
@@ -190,10 +208,68 @@ public class CarteiraController {
         }
     }
 
+    @Operation(summary = "Recalcula o valor das carteiras de um investidor",
+               description = "Recalcula o valor atual e investido de todas as carteiras do investidor a partir dos ativos, em um único UPDATE")
+    @PostMapping("/investidor/{investidorId}/recalcular-valores")
+    public ResponseEntity<Map<String, Object>> recalcularValoresInvestidor(@PathVariable Long investidorId) {
+        if (!investidorRepository.existsById(investidorId)) {
+            throw new ResourceNotFoundException("Investidor não encontrado: " + investidorId);
+        }
+        
+        Map<String, Object> resultado = carteiraService.recalcularValoresInvestidor(investidorId);
+        return ResponseEntity.ok(resultado);
+    }
+
+    @Operation(summary = "Recalcula o valor de um conjunto de carteiras",
+               description = "Recalcula o valor atual e investido das carteiras informadas a partir dos ativos, em um único UPDATE")
+    @PostMapping("/recalcular-valores")
+    public ResponseEntity<Map<String, Object>> recalcularValores(@RequestBody List<Long> carteiraIds) {
+        if (carteiraIds == null || carteiraIds.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(carteiraService.recalcularValores(carteiraIds));
+    }
+
     /**
      * Converte entidade Carteira para DTO de resposta
      */
     private CarteiraResponse convertToResponse(Carteira carteira) {
+        List<Ativo> ativos;
+        try {
+            ativos = ativoRepository.findByCarteira(carteira);
+        } catch (Exception e) {
+            // Se houver erro ao buscar ativos, define como lista vazia
+            ativos = new ArrayList<>();
+        }
+        return convertToResponse(carteira, ativos);
+    }
+
+    /**
+     * Converte uma lista de carteiras buscando os ativos de todas de uma vez
+     */
+    private List<CarteiraResponse> convertToResponses(List<Carteira> carteiras) {
+        Map<Long, List<Ativo>> ativosPorCarteira = buscarAtivosPorCarteira(carteiras);
+        return carteiras.stream()
+                .map(carteira -> convertToResponse(carteira,
+                        ativosPorCarteira.getOrDefault(carteira.getId(), new ArrayList<>())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ativos das carteiras agrupados por ID da carteira (uma consulta, independente da quantidade de carteiras)
+     */
+    private Map<Long, List<Ativo>> buscarAtivosPorCarteira(List<Carteira> carteiras) {
+        if (carteiras.isEmpty()) {
+            return new HashMap<>();
+        }
+        return ativoRepository.findByCarteiraIn(carteiras).stream()
+                .collect(Collectors.groupingBy(ativo -> ativo.getCarteira().getId()));
+    }
+
+    /**
+     * Converte entidade Carteira para DTO de resposta com os ativos já carregados
+     */
+    private CarteiraResponse convertToResponse(Carteira carteira, List<Ativo> ativos) {
         CarteiraResponse response = new CarteiraResponse(
                 carteira.getId(),
                 carteira.getNome(),
@@ -212,7 +288,8 @@ public class CarteiraController {
         response.setPrazo(carteira.getPrazo());
         
         // Calcular variação percentual
-        if (carteira.getValorInicial() != null && carteira.getValorInicial().compareTo(BigDecimal.ZERO) != 0) {
+        if (carteira.getValorAtual() != null && carteira.getValorInicial() != null
+                && carteira.getValorInicial().compareTo(BigDecimal.ZERO) != 0) {
             BigDecimal variacao = carteira.getValorAtual()
                 .subtract(carteira.getValorInicial())
                 .divide(carteira.getValorInicial(), 4, RoundingMode.HALF_UP)
@@ -220,19 +297,12 @@ public class CarteiraController {
             response.setVariacaoPercentual(variacao);
         }
         
-        // Busca e popula ativos da carteira para evitar LazyInitializationException
-        try {
-            List<Ativo> ativos = ativoRepository.findByCarteira(carteira);
-            List<AtivoResponse> ativosResponse = ativos.stream()
-                    .map(this::convertToAtivoResponse)
-                    .collect(Collectors.toList());
-            response.setAtivos(ativosResponse);
-            response.setTotalAtivos(ativosResponse.size());
-        } catch (Exception e) {
-            // Se houver erro ao buscar ativos, define como lista vazia
-            response.setAtivos(new ArrayList<>());
-            response.setTotalAtivos(0);
-        }
+        // Ativos já buscados pelo chamador para evitar LazyInitializationException
+        List<AtivoResponse> ativosResponse = ativos.stream()
+                .map(this::convertToAtivoResponse)
+                .collect(Collectors.toList());
+        response.setAtivos(ativosResponse);
+        response.setTotalAtivos(ativosResponse.size());
         
         return response;
     }
@@ -1,17 +1,27 @@
 package com.invest.controller;
 
+import com.invest.config.ConflacaoCotacoesInterceptor;
 import com.invest.dto.CotacaoDTO;
+import com.invest.service.AssinaturaCotacoesRegistry;
 import com.invest.service.CotacaoStreamingService;
+import com.invest.service.IndicePosicoesAtivo;
+import com.invest.service.ValorizacaoCarteiraStreamingService;
+import com.invest.service.external.CotacoesSnapshot;
 import com.invest.service.external.GoogleSheetsService;
+import com.invest.service.historico.HistoricoCotacoesStore;
+import com.invest.service.historico.PontoCotacao;
 
 import io.swagger.v3.oas.annotations.Operation;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,6 +39,21 @@ public class CotacaoRestController {
     @Autowired
     private GoogleSheetsService googleSheetsService;
 
+    @Autowired
+    private AssinaturaCotacoesRegistry assinaturaRegistry;
+
+    @Autowired
+    private ConflacaoCotacoesInterceptor conflacaoInterceptor;
+
+    @Autowired
+    private HistoricoCotacoesStore historicoCotacoesStore;
+
+    @Autowired
+    private ValorizacaoCarteiraStreamingService valorizacaoCarteiraService;
+
+    @Autowired
+    private IndicePosicoesAtivo indicePosicoesAtivo;
+
     @Operation(summary = "Listar todas as cotações",
                description = "Retorna todas as cotações disponíveis no JSON com timestamp e total de ativos")
     @GetMapping
@@ -61,6 +86,53 @@ public class CotacaoRestController {
         return ResponseEntity.ok(response);
     }
 
+    @Operation(summary = "Carteiras que possuem um ativo",
+               description = "Retorna as posições abertas do ativo em todas as carteiras (carteira, ativo e quantidade), a quantidade total e a exposição a preço atual")
+    @GetMapping("/{codigo}/detentores")
+    public ResponseEntity<Map<String, Object>> getDetentores(@PathVariable String codigo) {
+        List<IndicePosicoesAtivo.Posicao> posicoes = indicePosicoesAtivo.getPosicoes(codigo);
+        BigDecimal quantidadeTotal = indicePosicoesAtivo.getQuantidadeTotal(codigo);
+        BigDecimal preco = googleSheetsService.buscarPrecoAtivo(codigo);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("codigo", codigo.toUpperCase());
+        response.put("posicoes", posicoes);
+        response.put("totalCarteiras", indicePosicoesAtivo.getCarteiras(codigo).size());
+        response.put("quantidadeTotal", quantidadeTotal);
+        response.put("precoAtual", preco);
+        response.put("exposicao", preco != null ? quantidadeTotal.multiply(preco) : null);
+        response.put("timestamp", System.currentTimeMillis());
+
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Histórico de cotações de um ativo",
+               description = "Retorna os pontos gravados na série histórica do ativo entre as datas informadas (padrão: últimos 30 dias)")
+    @GetMapping("/{codigo}/historico")
+    public ResponseEntity<Map<String, Object>> getHistorico(
+            @PathVariable String codigo,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fim) {
+        LocalDate dataFim = fim != null ? fim : LocalDate.now();
+        LocalDate dataInicio = inicio != null ? inicio : dataFim.minusDays(30);
+        if (dataInicio.isAfter(dataFim)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<PontoCotacao> pontos = historicoCotacoesStore.buscar(codigo,
+                dataInicio.atStartOfDay(), dataFim.plusDays(1).atStartOfDay().minusNanos(1));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("codigo", codigo.toUpperCase());
+        response.put("inicio", dataInicio);
+        response.put("fim", dataFim);
+        response.put("pontos", pontos);
+        response.put("total", pontos.size());
+        response.put("timestamp", System.currentTimeMillis());
+
+        return ResponseEntity.ok(response);
+    }
+
     @Operation(summary = "Forçar atualização de cotações",
                description = "Inicia imediatamente a atualização das cotações do serviço de streaming")
     @PostMapping("/atualizar")
@@ -78,12 +150,30 @@ public class CotacaoRestController {
                description = "Retorna status do serviço, quantidade de cotações disponíveis e fonte de dados")
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> getStatus() {
+        CotacoesSnapshot snapshot = googleSheetsService.getSnapshot();
+
         Map<String, Object> status = new HashMap<>();
         status.put("status", "online");
-        status.put("cotacoesDisponiveis", googleSheetsService.getAllCotacoes().size());
+        status.put("cotacoesDisponiveis", snapshot.getTotal());
+        status.put("versao", snapshot.getVersao());
+        status.put("dataCarga", snapshot.getDataCarga());
         status.put("fonte", "cotacoes.json");
         status.put("timestamp", System.currentTimeMillis());
         
         return ResponseEntity.ok(status);
     }
+
+    @Operation(summary = "Assinaturas de cotações via WebSocket",
+               description = "Retorna, por tópico de cotações, a quantidade de assinantes e de mensagens entregues, além de mensagens conflacionadas e sessões lentas desconectadas")
+    @GetMapping("/assinaturas")
+    public ResponseEntity<Map<String, Object>> getAssinaturas() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessoes", assinaturaRegistry.getTotalSessoes());
+        response.put("topicos", assinaturaRegistry.getEstatisticas());
+        response.put("entrega", conflacaoInterceptor.getEstatisticas());
+        response.put("carteiras", valorizacaoCarteiraService.getEstatisticas());
+        response.put("timestamp", System.currentTimeMillis());
+
+        return ResponseEntity.ok(response);
+    }
 }
@@ -4,6 +4,7 @@ import com.invest.service.external.GoogleSheetsService;
 
 import io.swagger.v3.oas.annotations.Operation;
 
+import com.invest.service.AtualizacaoPrecosService;
 import com.invest.service.CarteiraService;
 import com.invest.model.Carteira;
 import com.invest.repository.CarteiraRepository;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller para integração com Google Sheets via JSON local
@@ -38,6 +40,9 @@ public class GoogleSheetsController {
     @Autowired
     private CarteiraRepository carteiraRepository;
     
+    @Autowired
+    private AtualizacaoPrecosService atualizacaoPrecosService;
+    
     @Operation(summary = "Buscar preço de um ativo", description = "Retorna o preço de um ativo específico a partir do JSON de cotações")
     @GetMapping("/preco/{codigoAtivo}")
     public ResponseEntity<String> buscarPrecoAtivo(@PathVariable String codigoAtivo) {
@@ -60,16 +65,16 @@ public class GoogleSheetsController {
         }
     }
     
-    // ⚠️ Este endpoint não faz sentido se você não atualiza o JSON via Java
-    // Sugestão: desative ou redefina
-    @Operation(summary = "Preparar leitura do JSON de cotações", description = "Confirma que o backend está pronto para ler o cotacoes.json atualizado externamente")
+    @Operation(summary = "Recarregar o JSON de cotações", description = "Relê imediatamente o cotacoes.json atualizado externamente e publica um novo snapshot")
     @PostMapping("/atualizar")
     public ResponseEntity<String> atualizarCotacoes() {
-        // O arquivo cotacoes.json deve ser atualizado EXTERNAMENTE (ex: script Python)
-        // Este endpoint só confirma que o backend está pronto para ler a nova versão
+        // O arquivo cotacoes.json deve ser atualizado EXTERNAMENTE (ex: script Python).
+        // Normalmente o CotacoesArquivoWatcher detecta a alteração sozinho; este endpoint força a recarga.
         try {
-            System.out.println("✅ Leitura do cotacoes.json será realizada na próxima requisição.");
-            return ResponseEntity.ok("Dados prontos para leitura (arquivo JSON deve ser atualizado externamente).");
+            if (googleSheetsJsonService.recarregarCotacoes()) {
+                return ResponseEntity.ok("Cotações recarregadas (versão " + googleSheetsJsonService.getVersaoCotacoes() + ").");
+            }
+            return ResponseEntity.badRequest().body("Erro: não foi possível ler o arquivo de cotações.");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Erro: " + e.getMessage());
         }
@@ -108,27 +113,20 @@ public class GoogleSheetsController {
         }
     }
     
-    @Operation(summary = "Sincronizar todas as carteiras", description = "Sincroniza todas as carteiras com os dados do Google Sheets")
-    @PostMapping("/sincronizar-todas")
-    public ResponseEntity<String> sincronizarTodasCarteiras() {
+    @Operation(summary = "Atualizar preços de todas as carteiras", description = "Aplica o snapshot de cotações a todos os ativos em lotes por código e recalcula o valor de todas as carteiras; retorna linhas alteradas e tempo gasto")
+    @PostMapping("/atualizar-precos")
+    public ResponseEntity<Map<String, Object>> atualizarTodosPrecos() {
         try {
-            List<Carteira> carteiras = carteiraRepository.findAll();
-            int sucessos = 0;
-            int erros = 0;
-            
-            for (Carteira carteira : carteiras) {
-                try {
-                    carteiraService.sincronizarComGoogleSheets(carteira.getId());
-                    sucessos++;
-                } catch (Exception e) {
-                    erros++;
-                    System.err.println("Erro ao sincronizar carteira " + carteira.getId() + ": " + e.getMessage());
-                }
-            }
-            
-            return ResponseEntity.ok("Sincronização concluída! Sucessos: " + sucessos + ", Erros: " + erros);
+            return ResponseEntity.ok(atualizacaoPrecosService.atualizarTodosPrecos());
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body("Erro na sincronização: " + e.getMessage());
+            System.err.println("Erro ao atualizar preços: " + e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("erro", String.valueOf(e.getMessage())));
         }
     }
+    
+    @Operation(summary = "Sincronizar todas as carteiras", description = "Atualiza os preços de todas as carteiras a partir do JSON de cotações em uma única operação em lote; retorna linhas alteradas e tempo gasto")
+    @PostMapping("/sincronizar-todas")
+    public ResponseEntity<Map<String, Object>> sincronizarTodasCarteiras() {
+        return atualizarTodosPrecos();
+    }
 }
\ No newline at end of file
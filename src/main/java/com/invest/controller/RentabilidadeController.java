@@ -1,16 +1,28 @@
 package com.invest.controller;
 
 import com.invest.dto.CarteiraRentabilidadeResponse;
+import com.invest.dto.InvestidorRentabilidadeResponse;
+import com.invest.dto.RentabilidadeLoteRequest;
 import com.invest.dto.RentabilidadeResponse;
+import com.invest.model.ValorDiarioCarteira;
+import com.invest.service.RentabilidadeCacheService;
+import com.invest.service.RentabilidadeInvestidorService;
+import com.invest.service.RentabilidadeLoteService;
 import com.invest.service.RentabilidadeService;
+import com.invest.service.SerieValorCarteiraService;
 
 import io.swagger.v3.oas.annotations.Operation;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller REST para cálculos de rentabilidade
@@ -23,6 +35,18 @@ public class RentabilidadeController {
     @Autowired
     private RentabilidadeService rentabilidadeService;
 
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    private RentabilidadeInvestidorService rentabilidadeInvestidorService;
+
+    @Autowired
+    private RentabilidadeLoteService rentabilidadeLoteService;
+
     @Operation(summary = "Calcula rentabilidade de um ativo",
                description = "Retorna a rentabilidade detalhada de um ativo específico pelo seu ID")
     @GetMapping("/ativo/{ativoId}")
@@ -40,7 +64,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}")
     public ResponseEntity<CarteiraRentabilidadeResponse> getRentabilidadeCarteira(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse rentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse rentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             return ResponseEntity.ok(rentabilidade);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -52,7 +76,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/resumo")
     public ResponseEntity<RentabilidadeResponse> getResumoRentabilidadeCarteira(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             // Cria resumo da carteira como um "ativo"
             RentabilidadeResponse resumo = new RentabilidadeResponse();
@@ -66,6 +90,8 @@ public class RentabilidadeController {
             resumo.setRentabilidadePercentualBruta(carteiraRentabilidade.getRentabilidadePercentualBruta());
             resumo.setRentabilidadePercentualLiquida(carteiraRentabilidade.getRentabilidadePercentualLiquida());
             resumo.setRentabilidadePercentualAnual(carteiraRentabilidade.getRentabilidadePercentualAnual());
+            resumo.setRentabilidadeTWR(carteiraRentabilidade.getRentabilidadeTWR());
+            resumo.setRentabilidadeXIRR(carteiraRentabilidade.getRentabilidadeXIRR());
             resumo.setTotalTaxasCorretagem(carteiraRentabilidade.getTotalTaxasCorretagem());
             resumo.setTotalImpostos(carteiraRentabilidade.getTotalImpostos());
             resumo.setTotalCustos(carteiraRentabilidade.getTotalCustos());
@@ -82,7 +108,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/ativos")
     public ResponseEntity<List<RentabilidadeResponse>> getRentabilidadeAtivosCarteira(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             return ResponseEntity.ok(carteiraRentabilidade.getAtivos());
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -96,7 +122,7 @@ public class RentabilidadeController {
             @PathVariable Long carteiraId, 
             @PathVariable String tipoAtivo) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             List<RentabilidadeResponse> ativosFiltrados = carteiraRentabilidade.getAtivos().stream()
                     .filter(ativo -> ativo.getNomeAtivo().toUpperCase().contains(tipoAtivo.toUpperCase()))
@@ -113,7 +139,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/positivos")
     public ResponseEntity<List<RentabilidadeResponse>> getAtivosPositivos(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             List<RentabilidadeResponse> ativosPositivos = carteiraRentabilidade.getAtivos().stream()
                     .filter(ativo -> ativo.getRentabilidadeLiquida() != null && 
@@ -131,7 +157,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/negativos")
     public ResponseEntity<List<RentabilidadeResponse>> getAtivosNegativos(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             List<RentabilidadeResponse> ativosNegativos = carteiraRentabilidade.getAtivos().stream()
                     .filter(ativo -> ativo.getRentabilidadeLiquida() != null && 
@@ -151,7 +177,7 @@ public class RentabilidadeController {
             @PathVariable Long carteiraId, 
             @PathVariable int limit) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             List<RentabilidadeResponse> topPerformers = carteiraRentabilidade.getAtivos().stream()
                     .filter(ativo -> ativo.getRentabilidadePercentualLiquida() != null)
@@ -172,7 +198,7 @@ public class RentabilidadeController {
             @PathVariable Long carteiraId, 
             @PathVariable int limit) {
         try {
-            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse carteiraRentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             List<RentabilidadeResponse> pioresPerformers = carteiraRentabilidade.getAtivos().stream()
                     .filter(ativo -> ativo.getRentabilidadePercentualLiquida() != null)
@@ -191,19 +217,8 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/distribuicao")
     public ResponseEntity<CarteiraRentabilidadeResponse> getDistribuicaoPorTipo(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse rentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
-            
-            // Retorna apenas os dados de distribuição
-            CarteiraRentabilidadeResponse distribuicao = new CarteiraRentabilidadeResponse();
-            distribuicao.setCarteiraId(rentabilidade.getCarteiraId());
-            distribuicao.setCarteiraNome(rentabilidade.getCarteiraNome());
-            distribuicao.setPercentualAcoes(rentabilidade.getPercentualAcoes());
-            distribuicao.setPercentualFIIs(rentabilidade.getPercentualFIIs());
-            distribuicao.setPercentualETFs(rentabilidade.getPercentualETFs());
-            distribuicao.setPercentualRendaFixa(rentabilidade.getPercentualRendaFixa());
-            distribuicao.setPercentualCripto(rentabilidade.getPercentualCripto());
-            distribuicao.setValorAtualMercado(rentabilidade.getValorAtualMercado());
-            
+            // Apenas a distribuição, agregada no banco: não precisa do cálculo completo de rentabilidade
+            CarteiraRentabilidadeResponse distribuicao = rentabilidadeService.calcularDistribuicaoCarteira(carteiraId);
             return ResponseEntity.ok(distribuicao);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -215,7 +230,7 @@ public class RentabilidadeController {
     @GetMapping("/carteira/{carteiraId}/risco")
     public ResponseEntity<CarteiraRentabilidadeResponse> getMetricasRisco(@PathVariable Long carteiraId) {
         try {
-            CarteiraRentabilidadeResponse rentabilidade = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+            CarteiraRentabilidadeResponse rentabilidade = rentabilidadeCacheService.getRentabilidadeCarteira(carteiraId);
             
             // Retorna apenas as métricas de risco
             CarteiraRentabilidadeResponse risco = new CarteiraRentabilidadeResponse();
@@ -232,4 +247,54 @@ public class RentabilidadeController {
             return ResponseEntity.badRequest().build();
         }
     }
+
+    @Operation(summary = "Série diária de valor da carteira",
+               description = "Retorna o valor de mercado, o fluxo líquido e o índice da cota de cada dia no período (padrão: últimos 12 meses)")
+    @GetMapping("/carteira/{carteiraId}/serie")
+    public ResponseEntity<List<ValorDiarioCarteira>> getSerieValor(
+            @PathVariable Long carteiraId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fim) {
+        try {
+            LocalDate dataFim = fim != null ? fim : LocalDate.now();
+            LocalDate dataInicio = inicio != null ? inicio : dataFim.minusYears(1);
+            return ResponseEntity.ok(serieValorCarteiraService.getSerie(carteiraId, dataInicio, dataFim));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(summary = "Calcula rentabilidade consolidada do investidor",
+               description = "Soma todas as carteiras do investidor: posições por ativo, distribuição por tipo e métricas de risco consolidadas")
+    @GetMapping("/investidor/{investidorId}")
+    public ResponseEntity<InvestidorRentabilidadeResponse> getRentabilidadeInvestidor(@PathVariable Long investidorId) {
+        try {
+            return ResponseEntity.ok(rentabilidadeInvestidorService.calcularRentabilidadeInvestidor(investidorId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(summary = "Calcula rentabilidade de várias carteiras (NDJSON)",
+               description = "Recebe uma lista de carteiras ou filtros por investidor e perfil de risco e devolve uma linha JSON por carteira, calculada em blocos")
+    @PostMapping(value = "/carteiras/lote", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> getRentabilidadeLote(@RequestBody RentabilidadeLoteRequest request) {
+        try {
+            // IDs resolvidos antes de iniciar a resposta: filtro inválido ainda retorna 400
+            List<Long> carteiraIds = rentabilidadeLoteService.resolverCarteiras(request);
+            StreamingResponseBody corpo = saida -> rentabilidadeLoteService.escreverNdjson(carteiraIds, saida);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .body(corpo);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(summary = "Estatísticas do cache de rentabilidade",
+               description = "Retorna hits, misses, tamanho e remoções do cache de rentabilidade das carteiras")
+    @GetMapping("/cache/estatisticas")
+    public ResponseEntity<Map<String, Object>> getEstatisticasCache() {
+        return ResponseEntity.ok(rentabilidadeCacheService.getEstatisticas());
+    }
 }
@@ -5,6 +5,8 @@ import com.invest.dto.TransacaoResponse;
 import com.invest.exception.ResourceNotFoundException;
 import com.invest.model.TipoTransacao;
 import com.invest.model.Transacao;
+import com.invest.service.ImportacaoTransacoesService;
+import com.invest.service.ProjecaoPosicoesService;
 import com.invest.service.TransacaoService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,11 +14,15 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +37,12 @@ public class TransacaoController {
     @Autowired
     private TransacaoService transacaoService;
 
+    @Autowired
+    private ImportacaoTransacoesService importacaoService;
+
+    @Autowired
+    private ProjecaoPosicoesService projecaoPosicoesService;
+
     @Operation(summary = "Lista todas as transações de uma carteira",
                description = "Retorna todas as transações de uma carteira específica, paginadas e ordenadas")
     @GetMapping("/carteira/{carteiraId}")
@@ -121,6 +133,51 @@ public class TransacaoController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @Operation(summary = "Importa transações em massa (CSV)",
+               description = "Importa o histórico de transações de um CSV com cabeçalho (separador ',' ou ';'). " +
+                             "Linhas inválidas são informadas no relatório sem abortar a importação")
+    @PostMapping(value = "/carteira/{carteiraId}/importar", consumes = "text/csv")
+    public ResponseEntity<Map<String, Object>> importarCsv(@PathVariable Long carteiraId, InputStream entrada) {
+        try {
+            return ResponseEntity.ok(importacaoService.importarCsv(carteiraId, entrada));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Erro ao ler o CSV: " + e.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Importa transações em massa (JSON)",
+               description = "Importa um array JSON de transações lido em streaming. " +
+                             "Elementos inválidos são informados no relatório sem abortar a importação")
+    @PostMapping(value = "/carteira/{carteiraId}/importar", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> importarJson(@PathVariable Long carteiraId, InputStream entrada) {
+        try {
+            return ResponseEntity.ok(importacaoService.importarJson(carteiraId, entrada));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "JSON inválido: " + e.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Posição de um ativo pelo livro de transações",
+               description = "Reaplica as transações do ativo em ordem de data e retorna quantidade, preço médio e resultado realizado, sem gravar")
+    @GetMapping("/carteira/{carteiraId}/posicoes/{codigoAtivo}")
+    public ProjecaoPosicoesService.Resultado getPosicao(@PathVariable Long carteiraId, @PathVariable String codigoAtivo) {
+        return projecaoPosicoesService.projetar(carteiraId, codigoAtivo);
+    }
+
+    @Operation(summary = "Reconstrói as posições de uma carteira",
+               description = "Recalcula os ativos da carteira a partir do livro de transações e corrige os que divergirem")
+    @PostMapping("/carteira/{carteiraId}/posicoes/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirPosicoesCarteira(@PathVariable Long carteiraId) {
+        return ResponseEntity.ok(projecaoPosicoesService.reconstruirCarteira(carteiraId));
+    }
+
+    @Operation(summary = "Reconstrói as posições de todas as carteiras",
+               description = "Repara os ativos de todas as carteiras a partir do livro de transações, em paralelo (uma transação por carteira)")
+    @PostMapping("/posicoes/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirTodasPosicoes() {
+        return ResponseEntity.ok(projecaoPosicoesService.reconstruirTodas());
+    }
+
     @Operation(summary = "Atualiza uma transação",
                description = "Atualiza todos os campos de uma transação pelo ID")
     @PutMapping("/{id}")
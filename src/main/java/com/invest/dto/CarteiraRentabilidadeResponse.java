@@ -1,8 +1,11 @@
 package com.invest.dto;
 
+import com.invest.model.TipoAtivo;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DTO para resposta de rentabilidade de carteira completa
@@ -21,6 +24,8 @@ public class CarteiraRentabilidadeResponse {
     private BigDecimal rentabilidadePercentualBruta;
     private BigDecimal rentabilidadePercentualLiquida;
     private BigDecimal rentabilidadePercentualAnual;
+    private BigDecimal rentabilidadeTWR;
+    private BigDecimal rentabilidadeXIRR;
     
     // Composição
     private BigDecimal valorTotalCompras;
@@ -42,6 +47,7 @@ public class CarteiraRentabilidadeResponse {
     private BigDecimal percentualETFs;
     private BigDecimal percentualRendaFixa;
     private BigDecimal percentualCripto;
+    private Map<TipoAtivo, BigDecimal> distribuicaoPorTipo;
     
     // Performance por Período
     private BigDecimal rentabilidadeMes;
@@ -151,6 +157,22 @@ public class CarteiraRentabilidadeResponse {
         this.rentabilidadePercentualAnual = rentabilidadePercentualAnual;
     }
     
+    public BigDecimal getRentabilidadeTWR() {
+        return rentabilidadeTWR;
+    }
+    
+    public void setRentabilidadeTWR(BigDecimal rentabilidadeTWR) {
+        this.rentabilidadeTWR = rentabilidadeTWR;
+    }
+    
+    public BigDecimal getRentabilidadeXIRR() {
+        return rentabilidadeXIRR;
+    }
+    
+    public void setRentabilidadeXIRR(BigDecimal rentabilidadeXIRR) {
+        this.rentabilidadeXIRR = rentabilidadeXIRR;
+    }
+    
     public BigDecimal getValorTotalCompras() {
         return valorTotalCompras;
     }
@@ -271,6 +293,14 @@ public class CarteiraRentabilidadeResponse {
         this.percentualCripto = percentualCripto;
     }
     
+    public Map<TipoAtivo, BigDecimal> getDistribuicaoPorTipo() {
+        return distribuicaoPorTipo;
+    }
+    
+    public void setDistribuicaoPorTipo(Map<TipoAtivo, BigDecimal> distribuicaoPorTipo) {
+        this.distribuicaoPorTipo = distribuicaoPorTipo;
+    }
+    
     public BigDecimal getRentabilidadeMes() {
         return rentabilidadeMes;
     }
@@ -0,0 +1,248 @@
+package com.invest.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO para resposta de rentabilidade consolidada de todas as carteiras de um investidor
+ */
+public class InvestidorRentabilidadeResponse {
+    
+    // Identificação
+    private Long investidorId;
+    private String investidorNome;
+    private Integer totalCarteiras;
+    
+    // Valores consolidados
+    private BigDecimal valorTotalInvestido;
+    private BigDecimal valorAtualMercado;
+    private BigDecimal valorAtualComProventos;
+    private BigDecimal valorTotalProventos;
+    private BigDecimal totalCustos;
+    private BigDecimal rentabilidadeBruta;
+    private BigDecimal rentabilidadeLiquida;
+    private BigDecimal rentabilidadePercentualBruta;
+    private BigDecimal rentabilidadePercentualLiquida;
+    
+    // Métricas de Risco
+    private BigDecimal volatilidade;
+    private BigDecimal sharpeRatio;
+    private BigDecimal maxDrawdown;
+    private BigDecimal var95;
+    
+    // Distribuição por Tipo
+    private BigDecimal percentualAcoes;
+    private BigDecimal percentualFIIs;
+    private BigDecimal percentualETFs;
+    private BigDecimal percentualRendaFixa;
+    private BigDecimal percentualCripto;
+    
+    // Posições por ativo (somadas entre carteiras) e resumo de cada carteira
+    private List<RentabilidadeResponse> posicoes;
+    private List<CarteiraRentabilidadeResponse> carteiras;
+    
+    // Datas
+    private LocalDateTime dataCalculo;
+    
+    // Construtores
+    public InvestidorRentabilidadeResponse() {}
+    
+    public InvestidorRentabilidadeResponse(Long investidorId, String investidorNome) {
+        this.investidorId = investidorId;
+        this.investidorNome = investidorNome;
+    }
+    
+    // Getters e Setters
+    public Long getInvestidorId() {
+        return investidorId;
+    }
+    
+    public void setInvestidorId(Long investidorId) {
+        this.investidorId = investidorId;
+    }
+    
+    public String getInvestidorNome() {
+        return investidorNome;
+    }
+    
+    public void setInvestidorNome(String investidorNome) {
+        this.investidorNome = investidorNome;
+    }
+    
+    public Integer getTotalCarteiras() {
+        return totalCarteiras;
+    }
+    
+    public void setTotalCarteiras(Integer totalCarteiras) {
+        this.totalCarteiras = totalCarteiras;
+    }
+    
+    public BigDecimal getValorTotalInvestido() {
+        return valorTotalInvestido;
+    }
+    
+    public void setValorTotalInvestido(BigDecimal valorTotalInvestido) {
+        this.valorTotalInvestido = valorTotalInvestido;
+    }
+    
+    public BigDecimal getValorAtualMercado() {
+        return valorAtualMercado;
+    }
+    
+    public void setValorAtualMercado(BigDecimal valorAtualMercado) {
+        this.valorAtualMercado = valorAtualMercado;
+    }
+    
+    public BigDecimal getValorAtualComProventos() {
+        return valorAtualComProventos;
+    }
+    
+    public void setValorAtualComProventos(BigDecimal valorAtualComProventos) {
+        this.valorAtualComProventos = valorAtualComProventos;
+    }
+    
+    public BigDecimal getValorTotalProventos() {
+        return valorTotalProventos;
+    }
+    
+    public void setValorTotalProventos(BigDecimal valorTotalProventos) {
+        this.valorTotalProventos = valorTotalProventos;
+    }
+    
+    public BigDecimal getTotalCustos() {
+        return totalCustos;
+    }
+    
+    public void setTotalCustos(BigDecimal totalCustos) {
+        this.totalCustos = totalCustos;
+    }
+    
+    public BigDecimal getRentabilidadeBruta() {
+        return rentabilidadeBruta;
+    }
+    
+    public void setRentabilidadeBruta(BigDecimal rentabilidadeBruta) {
+        this.rentabilidadeBruta = rentabilidadeBruta;
+    }
+    
+    public BigDecimal getRentabilidadeLiquida() {
+        return rentabilidadeLiquida;
+    }
+    
+    public void setRentabilidadeLiquida(BigDecimal rentabilidadeLiquida) {
+        this.rentabilidadeLiquida = rentabilidadeLiquida;
+    }
+    
+    public BigDecimal getRentabilidadePercentualBruta() {
+        return rentabilidadePercentualBruta;
+    }
+    
+    public void setRentabilidadePercentualBruta(BigDecimal rentabilidadePercentualBruta) {
+        this.rentabilidadePercentualBruta = rentabilidadePercentualBruta;
+    }
+    
+    public BigDecimal getRentabilidadePercentualLiquida() {
+        return rentabilidadePercentualLiquida;
+    }
+    
+    public void setRentabilidadePercentualLiquida(BigDecimal rentabilidadePercentualLiquida) {
+        this.rentabilidadePercentualLiquida = rentabilidadePercentualLiquida;
+    }
+    
+    public BigDecimal getVolatilidade() {
+        return volatilidade;
+    }
+    
+    public void setVolatilidade(BigDecimal volatilidade) {
+        this.volatilidade = volatilidade;
+    }
+    
+    public BigDecimal getSharpeRatio() {
+        return sharpeRatio;
+    }
+    
+    public void setSharpeRatio(BigDecimal sharpeRatio) {
+        this.sharpeRatio = sharpeRatio;
+    }
+    
+    public BigDecimal getMaxDrawdown() {
+        return maxDrawdown;
+    }
+    
+    public void setMaxDrawdown(BigDecimal maxDrawdown) {
+        this.maxDrawdown = maxDrawdown;
+    }
+    
+    public BigDecimal getVar95() {
+        return var95;
+    }
+    
+    public void setVar95(BigDecimal var95) {
+        this.var95 = var95;
+    }
+    
+    public BigDecimal getPercentualAcoes() {
+        return percentualAcoes;
+    }
+    
+    public void setPercentualAcoes(BigDecimal percentualAcoes) {
+        this.percentualAcoes = percentualAcoes;
+    }
+    
+    public BigDecimal getPercentualFIIs() {
+        return percentualFIIs;
+    }
+    
+    public void setPercentualFIIs(BigDecimal percentualFIIs) {
+        this.percentualFIIs = percentualFIIs;
+    }
+    
+    public BigDecimal getPercentualETFs() {
+        return percentualETFs;
+    }
+    
+    public void setPercentualETFs(BigDecimal percentualETFs) {
+        this.percentualETFs = percentualETFs;
+    }
+    
+    public BigDecimal getPercentualRendaFixa() {
+        return percentualRendaFixa;
+    }
+    
+    public void setPercentualRendaFixa(BigDecimal percentualRendaFixa) {
+        this.percentualRendaFixa = percentualRendaFixa;
+    }
+    
+    public BigDecimal getPercentualCripto() {
+        return percentualCripto;
+    }
+    
+    public void setPercentualCripto(BigDecimal percentualCripto) {
+        this.percentualCripto = percentualCripto;
+    }
+    
+    public List<RentabilidadeResponse> getPosicoes() {
+        return posicoes;
+    }
+    
+    public void setPosicoes(List<RentabilidadeResponse> posicoes) {
+        this.posicoes = posicoes;
+    }
+    
+    public List<CarteiraRentabilidadeResponse> getCarteiras() {
+        return carteiras;
+    }
+    
+    public void setCarteiras(List<CarteiraRentabilidadeResponse> carteiras) {
+        this.carteiras = carteiras;
+    }
+    
+    public LocalDateTime getDataCalculo() {
+        return dataCalculo;
+    }
+    
+    public void setDataCalculo(LocalDateTime dataCalculo) {
+        this.dataCalculo = dataCalculo;
+    }
+}
@@ -0,0 +1,47 @@
+package com.invest.dto;
+
+import com.invest.model.PerfilRisco;
+
+import java.util.List;
+
+/**
+ * DTO para requisição de rentabilidade de várias carteiras (relatórios em lote)
+ *
+ * Informe a lista de carteiras ou os filtros por investidor e/ou perfil de risco.
+ */
+public class RentabilidadeLoteRequest {
+
+    private List<Long> carteiraIds;
+
+    private Long investidorId;
+
+    private PerfilRisco perfilRisco;
+
+    // Construtores
+    public RentabilidadeLoteRequest() {}
+
+    // Getters e Setters
+    public List<Long> getCarteiraIds() {
+        return carteiraIds;
+    }
+
+    public void setCarteiraIds(List<Long> carteiraIds) {
+        this.carteiraIds = carteiraIds;
+    }
+
+    public Long getInvestidorId() {
+        return investidorId;
+    }
+
+    public void setInvestidorId(Long investidorId) {
+        this.investidorId = investidorId;
+    }
+
+    public PerfilRisco getPerfilRisco() {
+        return perfilRisco;
+    }
+
+    public void setPerfilRisco(PerfilRisco perfilRisco) {
+        this.perfilRisco = perfilRisco;
+    }
+}
@@ -31,6 +31,8 @@ public class RentabilidadeResponse {
     private BigDecimal rentabilidadePercentualBruta;
     private BigDecimal rentabilidadePercentualLiquida;
     private BigDecimal rentabilidadePercentualAnual;
+    private BigDecimal rentabilidadeTWR;
+    private BigDecimal rentabilidadeXIRR;
     
     // Custos e Taxas
     private BigDecimal totalTaxasCorretagem;
@@ -195,6 +197,22 @@ public class RentabilidadeResponse {
         this.rentabilidadePercentualAnual = rentabilidadePercentualAnual;
     }
     
+    public BigDecimal getRentabilidadeTWR() {
+        return rentabilidadeTWR;
+    }
+    
+    public void setRentabilidadeTWR(BigDecimal rentabilidadeTWR) {
+        this.rentabilidadeTWR = rentabilidadeTWR;
+    }
+    
+    public BigDecimal getRentabilidadeXIRR() {
+        return rentabilidadeXIRR;
+    }
+    
+    public void setRentabilidadeXIRR(BigDecimal rentabilidadeXIRR) {
+        this.rentabilidadeXIRR = rentabilidadeXIRR;
+    }
+    
     public BigDecimal getTotalTaxasCorretagem() {
         return totalTaxasCorretagem;
     }
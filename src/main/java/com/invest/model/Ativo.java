@@ -4,15 +4,18 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 
 /**
  * Entidade Ativo - representa um ativo financeiro dentro de uma carteira
+ * Uma posição por código em cada carteira; a versão detecta escritas concorrentes na mesma posição
  */
 @Entity
-@Table(name = "ativos")
+@Table(name = "ativos", uniqueConstraints =
+        @UniqueConstraint(name = "uk_ativos_carteira_codigo", columnNames = {"carteira_id", "codigo"}))
 public class Ativo {
     
     @Id
@@ -33,7 +36,8 @@ public class Ativo {
     private TipoAtivo tipo;
     
     @NotNull(message = "Quantidade é obrigatória")
-    @Positive(message = "Quantidade deve ser positiva")
+    // Zero = posição encerrada (venda total); o ativo é mantido com o preço médio e o histórico
+    @PositiveOrZero(message = "Quantidade não pode ser negativa")
     @Column(name = "quantidade", nullable = false, precision = 15, scale = 4)
     private BigDecimal quantidade;
     
@@ -55,6 +59,11 @@ public class Ativo {
     @JoinColumn(name = "carteira_id", nullable = false)
     private Carteira carteira;
     
+    // Controle otimista: escritas JDBC em ativos também incrementam a versão
+    @Version
+    @Column(name = "versao", nullable = false, columnDefinition = "bigint not null default 0")
+    private long versao;
+    
     // Construtores
     public Ativo() {
         this.dataCompra = LocalDateTime.now();
@@ -143,6 +152,10 @@ public class Ativo {
         this.dataAtualizacao = dataAtualizacao;
     }
     
+    public long getVersao() {
+        return versao;
+    }
+    
     public Carteira getCarteira() {
         return carteira;
     }
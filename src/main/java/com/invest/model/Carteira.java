@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.DynamicUpdate;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -12,8 +13,11 @@ import java.util.List;
 /**
  * Entidade Carteira - representa uma carteira de investimentos
  * Cada investidor pode ter múltiplas carteiras com objetivos distintos
+ * Atualização dinâmica: salvar a entidade grava só as colunas alteradas, sem sobrescrever
+ * valor atual/investido mantidos por variação atômica pelas transações concorrentes
  */
 @Entity
+@DynamicUpdate
 @Table(name = "carteiras")
 public class Carteira {
     
@@ -50,6 +54,10 @@ public class Carteira {
     @Column(name = "valor_atual", precision = 15, scale = 2)
     private BigDecimal valorAtual;
     
+    // Custo das posições abertas (quantidade x preço médio), mantido junto com valorAtual
+    @Column(name = "valor_investido", precision = 15, scale = 2)
+    private BigDecimal valorInvestido;
+    
     @Column(name = "data_criacao", nullable = false)
     private LocalDateTime dataCriacao;
     
@@ -147,6 +155,14 @@ public class Carteira {
         this.valorAtual = valorAtual;
     }
     
+    public BigDecimal getValorInvestido() {
+        return valorInvestido;
+    }
+    
+    public void setValorInvestido(BigDecimal valorInvestido) {
+        this.valorInvestido = valorInvestido;
+    }
+    
     public LocalDateTime getDataCriacao() {
         return dataCriacao;
     }
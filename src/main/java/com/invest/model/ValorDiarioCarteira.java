@@ -0,0 +1,139 @@
+package com.invest.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entidade ValorDiarioCarteira - valor patrimonial de uma carteira ao fim de cada dia
+ *
+ * Além do valor de mercado e do fluxo líquido do dia (aportes menos resgates e proventos),
+ * guarda o índice da cota: o retorno acumulado ponderado pelo tempo, que desconta os fluxos.
+ * O retorno entre duas datas é a razão entre os índices das duas datas.
+ * O ponto do dia corrente é provisório (cotações intradiárias) até ser refeito com o fechamento.
+ * A posição de cada ativo ao fim do dia também é guardada, para a série ser estendida a partir
+ * do último ponto sem reprocessar as transações anteriores a ele.
+ */
+@Entity
+@Table(name = "carteira_valores_diarios",
+       uniqueConstraints = @UniqueConstraint(name = "uk_valor_diario_carteira_data", columnNames = {"carteira_id", "data"}))
+public class ValorDiarioCarteira {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "carteira_id", nullable = false)
+    private Long carteiraId;
+
+    @Column(name = "data", nullable = false)
+    private LocalDate data;
+
+    @Column(name = "valor_mercado", nullable = false, precision = 15, scale = 2)
+    private BigDecimal valorMercado;
+
+    @Column(name = "fluxo_liquido", nullable = false, precision = 15, scale = 2)
+    private BigDecimal fluxoLiquido;
+
+    @Column(name = "indice_cota", nullable = false, precision = 19, scale = 8)
+    private BigDecimal indiceCota;
+
+    @Column(name = "provisorio", nullable = false, columnDefinition = "boolean not null default false")
+    private boolean provisorio;
+
+    // Quantidade e último preço de cada ativo ao fim do dia: CODIGO=quantidade@preco;... (null em pontos antigos)
+    @Column(name = "posicoes", columnDefinition = "TEXT")
+    private String posicoes;
+
+    @Column(name = "data_atualizacao")
+    private LocalDateTime dataAtualizacao;
+
+    // Construtores
+    public ValorDiarioCarteira() {
+        this.dataAtualizacao = LocalDateTime.now();
+    }
+
+    public ValorDiarioCarteira(Long carteiraId, LocalDate data, BigDecimal valorMercado,
+                               BigDecimal fluxoLiquido, BigDecimal indiceCota) {
+        this();
+        this.carteiraId = carteiraId;
+        this.data = data;
+        this.valorMercado = valorMercado;
+        this.fluxoLiquido = fluxoLiquido;
+        this.indiceCota = indiceCota;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCarteiraId() {
+        return carteiraId;
+    }
+
+    public void setCarteiraId(Long carteiraId) {
+        this.carteiraId = carteiraId;
+    }
+
+    public LocalDate getData() {
+        return data;
+    }
+
+    public void setData(LocalDate data) {
+        this.data = data;
+    }
+
+    public BigDecimal getValorMercado() {
+        return valorMercado;
+    }
+
+    public void setValorMercado(BigDecimal valorMercado) {
+        this.valorMercado = valorMercado;
+    }
+
+    public BigDecimal getFluxoLiquido() {
+        return fluxoLiquido;
+    }
+
+    public void setFluxoLiquido(BigDecimal fluxoLiquido) {
+        this.fluxoLiquido = fluxoLiquido;
+    }
+
+    public BigDecimal getIndiceCota() {
+        return indiceCota;
+    }
+
+    public void setIndiceCota(BigDecimal indiceCota) {
+        this.indiceCota = indiceCota;
+    }
+
+    public boolean isProvisorio() {
+        return provisorio;
+    }
+
+    public void setProvisorio(boolean provisorio) {
+        this.provisorio = provisorio;
+    }
+
+    public String getPosicoes() {
+        return posicoes;
+    }
+
+    public void setPosicoes(String posicoes) {
+        this.posicoes = posicoes;
+    }
+
+    public LocalDateTime getDataAtualizacao() {
+        return dataAtualizacao;
+    }
+
+    public void setDataAtualizacao(LocalDateTime dataAtualizacao) {
+        this.dataAtualizacao = dataAtualizacao;
+    }
+}
@@ -24,6 +24,16 @@ public interface AtivoRepository extends JpaRepository<Ativo, Long> {
      */
     List<Ativo> findByCarteira(Carteira carteira);
     
+    /**
+     * Busca os ativos de várias carteiras em uma única consulta
+     */
+    List<Ativo> findByCarteiraIn(List<Carteira> carteiras);
+    
+    /**
+     * Busca os ativos de uma carteira pelo ID, sem carregar a carteira
+     */
+    List<Ativo> findByCarteiraId(Long carteiraId);
+    
     /**
      * Busca ativos de uma carteira com paginação
      */
@@ -66,4 +76,16 @@ public interface AtivoRepository extends JpaRepository<Ativo, Long> {
      */
     @Query("SELECT COALESCE(SUM(a.quantidade * COALESCE(a.precoAtual, a.precoCompra)), 0) FROM Ativo a WHERE a.carteira = :carteira")
     java.math.BigDecimal calcularValorTotalCarteira(@Param("carteira") Carteira carteira);
+    
+    /**
+     * Valor de mercado por tipo de ativo de uma carteira: linhas [TipoAtivo, BigDecimal]
+     */
+    @Query("SELECT a.tipo, SUM(a.quantidade * COALESCE(a.precoAtual, a.precoCompra)) FROM Ativo a WHERE a.carteira.id = :carteiraId GROUP BY a.tipo")
+    List<Object[]> somarValorPorTipo(@Param("carteiraId") Long carteiraId);
+    
+    /**
+     * Posições abertas de todas as carteiras: linhas [ativoId, carteiraId, codigo, quantidade]
+     */
+    @Query("SELECT a.id, a.carteira.id, a.codigo, a.quantidade FROM Ativo a WHERE a.quantidade > 0")
+    List<Object[]> findPosicoesAbertas();
 }
@@ -7,6 +7,7 @@ import com.invest.model.PerfilRisco;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -40,6 +41,18 @@ public interface CarteiraRepository extends JpaRepository<Carteira, Long> {
      */
     List<Carteira> findByInvestidorAndPerfilRisco(Investidor investidor, PerfilRisco perfilRisco);
     
+    /**
+     * IDs das carteiras com o perfil de risco informado (relatórios em lote)
+     */
+    @Query("SELECT c.id FROM Carteira c WHERE c.perfilRisco = :perfilRisco ORDER BY c.id")
+    List<Long> findIdsByPerfilRisco(@Param("perfilRisco") PerfilRisco perfilRisco);
+    
+    /**
+     * IDs das carteiras de um investidor (recálculo de valores em lote)
+     */
+    @Query("SELECT c.id FROM Carteira c WHERE c.investidor.id = :investidorId ORDER BY c.id")
+    List<Long> findIdsByInvestidorId(@Param("investidorId") Long investidorId);
+    
     /**
      * Busca carteira por ID e investidor (para validação de propriedade)
      */
@@ -65,4 +78,16 @@ public interface CarteiraRepository extends JpaRepository<Carteira, Long> {
      */
     @Query("SELECT c FROM Carteira c WHERE c.dataAtualizacao < :dataLimite OR c.dataAtualizacao IS NULL")
     List<Carteira> findCarteirasParaAtualizacao(@Param("dataLimite") java.time.LocalDateTime dataLimite);
+    
+    /**
+     * Soma a variação de uma posição ao valor atual e ao valor investido da carteira (UPDATE atômico).
+     * Retorna 0 se a carteira ainda não tem os valores inicializados.
+     */
+    @Modifying
+    @Query("UPDATE Carteira c SET c.valorAtual = c.valorAtual + :variacaoValor, c.valorInvestido = c.valorInvestido + :variacaoInvestido, " +
+           "c.dataAtualizacao = :data WHERE c.id = :carteiraId AND c.valorAtual IS NOT NULL AND c.valorInvestido IS NOT NULL")
+    int somarVariacaoValores(@Param("carteiraId") Long carteiraId,
+                             @Param("variacaoValor") java.math.BigDecimal variacaoValor,
+                             @Param("variacaoInvestido") java.math.BigDecimal variacaoInvestido,
+                             @Param("data") java.time.LocalDateTime data);
 }
@@ -11,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -39,6 +40,37 @@ public interface TransacaoRepository extends JpaRepository<Transacao, Long> {
      */
     List<Transacao> findByCarteiraAndCodigoAtivo(Carteira carteira, String codigoAtivo);
     
+    /**
+     * Indica se há transações do ativo posteriores à data (inserção retroativa)
+     */
+    boolean existsByCarteiraAndCodigoAtivoAndDataTransacaoAfter(Carteira carteira, String codigoAtivo, LocalDateTime data);
+    
+    /**
+     * Busca todas as transações de uma carteira em uma única consulta, já com o ativo carregado
+     * (usado no cálculo de rentabilidade da carteira para evitar uma consulta por ativo)
+     */
+    @Query("SELECT t FROM Transacao t LEFT JOIN FETCH t.ativo WHERE t.carteira = :carteira ORDER BY t.dataTransacao")
+    List<Transacao> findByCarteiraWithAtivo(@Param("carteira") Carteira carteira);
+    
+    /**
+     * Busca as transações de várias carteiras em uma única consulta, já com o ativo carregado
+     */
+    @Query("SELECT t FROM Transacao t LEFT JOIN FETCH t.ativo WHERE t.carteira IN :carteiras ORDER BY t.dataTransacao")
+    List<Transacao> findByCarteiraInWithAtivo(@Param("carteiras") List<Carteira> carteiras);
+    
+    /**
+     * Transações de várias carteiras em ordem cronológica, em uma única consulta (séries diárias em lote)
+     */
+    @Query("SELECT t FROM Transacao t WHERE t.carteira.id IN :carteiraIds ORDER BY t.dataTransacao, t.id")
+    List<Transacao> findByCarteiraIdInOrderByDataTransacao(@Param("carteiraIds") Collection<Long> carteiraIds);
+    
+    /**
+     * Transações de várias carteiras a partir de uma data, em ordem cronológica (extensão das séries diárias)
+     */
+    @Query("SELECT t FROM Transacao t WHERE t.carteira.id IN :carteiraIds AND t.dataTransacao >= :desde ORDER BY t.dataTransacao, t.id")
+    List<Transacao> findByCarteiraIdInAPartirDe(@Param("carteiraIds") Collection<Long> carteiraIds,
+                                                @Param("desde") LocalDateTime desde);
+    
     /**
      * Busca transações por carteira e período
      */
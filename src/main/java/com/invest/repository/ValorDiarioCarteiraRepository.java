@@ -0,0 +1,66 @@
+package com.invest.repository;
+
+import com.invest.model.ValorDiarioCarteira;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository para a série diária de valor patrimonial das carteiras
+ */
+@Repository
+public interface ValorDiarioCarteiraRepository extends JpaRepository<ValorDiarioCarteira, Long> {
+
+    /**
+     * Último ponto da série de cada carteira informada (carteiras sem série não aparecem)
+     */
+    @Query("SELECT v FROM ValorDiarioCarteira v WHERE v.carteiraId IN :carteiraIds AND v.data = " +
+           "(SELECT MAX(u.data) FROM ValorDiarioCarteira u WHERE u.carteiraId = v.carteiraId)")
+    List<ValorDiarioCarteira> findUltimosPontos(@Param("carteiraIds") Collection<Long> carteiraIds);
+
+    /**
+     * Pontos das carteiras nas datas informadas (índices nas datas base dos períodos)
+     */
+    List<ValorDiarioCarteira> findByCarteiraIdInAndDataIn(Collection<Long> carteiraIds, Collection<LocalDate> datas);
+
+    /**
+     * Pontos de várias carteiras em um período, em ordem de carteira e data
+     */
+    List<ValorDiarioCarteira> findByCarteiraIdInAndDataBetweenOrderByCarteiraIdAscDataAsc(Collection<Long> carteiraIds,
+                                                                                        LocalDate inicio, LocalDate fim);
+
+    /**
+     * Apenas os índices da cota de várias carteiras no período: [carteiraId, indiceCota] em ordem de carteira e data
+     */
+    @Query("SELECT v.carteiraId, v.indiceCota FROM ValorDiarioCarteira v WHERE v.carteiraId IN :carteiraIds " +
+           "AND v.data BETWEEN :inicio AND :fim ORDER BY v.carteiraId, v.data")
+    List<Object[]> findIndicesCota(@Param("carteiraIds") Collection<Long> carteiraIds,
+                                   @Param("inicio") LocalDate inicio, @Param("fim") LocalDate fim);
+
+    /**
+     * Remove os pontos provisórios (e os de hoje em diante) das carteiras, refeitos em seguida
+     */
+    @Modifying
+    @Query("DELETE FROM ValorDiarioCarteira v WHERE v.carteiraId IN :carteiraIds AND (v.provisorio = true OR v.data >= :hoje)")
+    int deleteProvisorios(@Param("carteiraIds") Collection<Long> carteiraIds, @Param("hoje") LocalDate hoje);
+
+    /**
+     * Remove os pontos a partir de uma data (recalculados na próxima consulta)
+     */
+    @Modifying
+    @Query("DELETE FROM ValorDiarioCarteira v WHERE v.carteiraId = :carteiraId AND v.data >= :data")
+    int deleteByCarteiraIdAPartirDe(@Param("carteiraId") Long carteiraId, @Param("data") LocalDate data);
+
+    /**
+     * Remove toda a série de uma carteira
+     */
+    @Modifying
+    @Query("DELETE FROM ValorDiarioCarteira v WHERE v.carteiraId = :carteiraId")
+    int deleteByCarteiraId(@Param("carteiraId") Long carteiraId);
+}
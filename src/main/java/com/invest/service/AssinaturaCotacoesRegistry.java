@@ -0,0 +1,140 @@
+package com.invest.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+/**
+ * Índice das assinaturas STOMP ativas em /topic/cotacoes, /topic/cotacoes/{codigo}
+ * e /topic/carteiras/{id}/valorizacao
+ *
+ * Mantém a quantidade de assinantes por destino, permitindo que o broadcaster serialize
+ * e envie apenas os tópicos que têm alguém ouvindo, e contabiliza o fan-out
+ * (mensagens × assinantes) por tópico para monitoramento.
+ */
+@Component
+public class AssinaturaCotacoesRegistry {
+
+    // sessionId → (subscriptionId → destino)
+    private final Map<String, Map<String, String>> assinaturasPorSessao = new ConcurrentHashMap<>();
+
+    // destino → quantidade de assinantes
+    private final Map<String, AtomicInteger> assinantesPorDestino = new ConcurrentHashMap<>();
+
+    // destino → mensagens entregues (cada envio conta uma vez por assinante)
+    private final Map<String, AtomicLong> fanOutPorDestino = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        // O evento traz o destino como o cliente enviou; conta pelo tópico canônico usado nos envios
+        String destino = CotacaoStreamingService.normalizarDestino(accessor.getDestination());
+        if (!isDestinoCotacoes(destino) || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        String anterior = assinaturasPorSessao
+                .computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), destino);
+        if (anterior == null) {
+            assinantesPorDestino.compute(destino, (d, contador) -> {
+                AtomicInteger atual = contador != null ? contador : new AtomicInteger();
+                atual.incrementAndGet();
+                return atual;
+            });
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> assinaturas = accessor.getSessionId() != null
+                ? assinaturasPorSessao.get(accessor.getSessionId()) : null;
+        if (assinaturas == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        String destino = assinaturas.remove(accessor.getSubscriptionId());
+        if (destino != null) {
+            decrementar(destino);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        removerSessao(event.getSessionId());
+    }
+
+    /**
+     * Remove todas as assinaturas de uma sessão (desconexão ou sessão derrubada)
+     */
+    public void removerSessao(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Map<String, String> assinaturas = assinaturasPorSessao.remove(sessionId);
+        if (assinaturas != null) {
+            assinaturas.values().forEach(this::decrementar);
+        }
+    }
+
+    /**
+     * Quantidade de assinantes ativos de um destino
+     */
+    public int getAssinantes(String destino) {
+        AtomicInteger contador = assinantesPorDestino.get(destino);
+        return contador != null ? contador.get() : 0;
+    }
+
+    public boolean temAssinantes(String destino) {
+        return getAssinantes(destino) > 0;
+    }
+
+    /**
+     * Registra o envio de uma mensagem para o destino (soma o fan-out pelos assinantes atuais)
+     */
+    public void registrarEnvio(String destino) {
+        int assinantes = getAssinantes(destino);
+        if (assinantes > 0) {
+            fanOutPorDestino.computeIfAbsent(destino, d -> new AtomicLong()).addAndGet(assinantes);
+        }
+    }
+
+    /**
+     * Estatísticas por destino: assinantes atuais e mensagens entregues
+     */
+    public Map<String, Map<String, Object>> getEstatisticas() {
+        Map<String, Map<String, Object>> estatisticas = new TreeMap<>();
+        assinantesPorDestino.forEach((destino, contador) -> {
+            Map<String, Object> dados = new TreeMap<>();
+            dados.put("assinantes", contador.get());
+            dados.put("mensagensEntregues", fanOutPorDestino.getOrDefault(destino, new AtomicLong()).get());
+            estatisticas.put(destino, dados);
+        });
+        return estatisticas;
+    }
+
+    public int getTotalSessoes() {
+        return assinaturasPorSessao.size();
+    }
+
+    private void decrementar(String destino) {
+        // compute é atômico por chave: evita remover um contador que acabou de ser incrementado
+        assinantesPorDestino.computeIfPresent(destino, (d, contador) -> contador.decrementAndGet() <= 0 ? null : contador);
+    }
+
+    private boolean isDestinoCotacoes(String destino) {
+        return destino != null && (destino.equals(CotacaoStreamingService.TOPICO_COTACOES)
+                || destino.startsWith(CotacaoStreamingService.TOPICO_COTACOES + "/")
+                || destino.startsWith(ValorizacaoCarteiraStreamingService.PREFIXO_TOPICO));
+    }
+}
@@ -0,0 +1,127 @@
+package com.invest.service;
+
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.invest.service.external.CotacoesSnapshot;
+import com.invest.service.external.GoogleSheetsService;
+
+/**
+ * Atualização global dos preços dos ativos a partir do snapshot de cotações
+ *
+ * Em vez de carregar cada carteira e salvar ativo por ativo, aplica o snapshot inteiro em
+ * lotes de UPDATE por código (JDBC batch, só as linhas cujo preço mudou) e recalcula o
+ * valor atual de todas as carteiras com um único UPDATE agregado.
+ */
+@Service
+@Transactional
+public class AtualizacaoPrecosService {
+
+    private static final String SQL_ATUALIZAR_ATIVOS =
+            "UPDATE ativos SET preco_atual = ?, data_atualizacao = ?, versao = versao + 1 " +
+            "WHERE codigo = ? AND (preco_atual IS NULL OR preco_atual <> ?)";
+
+    // Mesma regra de CarteiraService.calcularValorAtualCarteira: posições abertas a preço atual (ou de compra);
+    // carteiras sem posição aberta (todas zeradas) ficam com valor zero, como em ReconciliacaoValorCarteiraService
+    private static final String SQL_ATUALIZAR_CARTEIRAS =
+            "UPDATE carteiras c LEFT JOIN (" +
+            "    SELECT carteira_id, ROUND(SUM(quantidade * COALESCE(preco_atual, preco_compra)), 2) AS valor " +
+            "    FROM ativos WHERE quantidade > 0 GROUP BY carteira_id" +
+            ") v ON v.carteira_id = c.id " +
+            "SET c.valor_atual = COALESCE(v.valor, 0), c.data_atualizacao = ? " +
+            "WHERE NOT (c.valor_atual <=> COALESCE(v.valor, 0))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private IndicePosicoesAtivo indicePosicoesAtivo;
+
+    @Value("${cotacoes.atualizacao.tamanho-lote:500}")
+    private int tamanhoLote;
+
+    /**
+     * Aplica o snapshot atual de cotações a todos os ativos e recalcula o valor das carteiras
+     * @return quantidade de cotações, ativos e carteiras alterados e tempo gasto
+     */
+    public Map<String, Object> atualizarTodosPrecos() {
+        long inicio = System.currentTimeMillis();
+        CotacoesSnapshot snapshot = googleSheetsService.getSnapshot();
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+
+        List<String> codigos = new ArrayList<>(snapshot.getPrecos().keySet());
+        List<Object[]> parametros = new ArrayList<>(codigos.size());
+        for (String codigo : codigos) {
+            BigDecimal preco = snapshot.getPreco(codigo);
+            parametros.add(new Object[] {preco, agora, codigo, preco});
+        }
+
+        // Um UPDATE por código, enviado em lotes
+        int[][] resultados = jdbcTemplate.batchUpdate(SQL_ATUALIZAR_ATIVOS, parametros, tamanhoLote, (ps, linha) -> {
+            ps.setBigDecimal(1, (BigDecimal) linha[0]);
+            ps.setTimestamp(2, (Timestamp) linha[1]);
+            ps.setString(3, (String) linha[2]);
+            ps.setBigDecimal(4, (BigDecimal) linha[3]);
+        });
+
+        int ativosAtualizados = 0;
+        Set<String> codigosAlterados = new TreeSet<>();
+        int indice = 0;
+        for (int[] lote : resultados) {
+            for (int linhas : lote) {
+                String codigo = codigos.get(indice++);
+                if (linhas > 0) {
+                    ativosAtualizados += linhas;
+                    codigosAlterados.add(codigo);
+                } else if (linhas == Statement.SUCCESS_NO_INFO) {
+                    codigosAlterados.add(codigo); // Driver não informou: trata como alterado
+                }
+            }
+        }
+        long tempoAtivos = System.currentTimeMillis() - inicio;
+
+        int carteirasAtualizadas = jdbcTemplate.update(SQL_ATUALIZAR_CARTEIRAS, agora);
+
+        // Só as carteiras que possuem algum código alterado têm o cache invalidado
+        Set<Long> carteirasAfetadas = new TreeSet<>();
+        for (String codigo : codigosAlterados) {
+            carteirasAfetadas.addAll(indicePosicoesAtivo.getCarteiras(codigo));
+        }
+        carteirasAfetadas.forEach(rentabilidadeCacheService::invalidarCarteira);
+
+        long tempoTotal = System.currentTimeMillis() - inicio;
+        System.out.println("💰 Preços atualizados: " + ativosAtualizados + " ativos, " + carteirasAtualizadas
+                + " carteiras em " + tempoTotal + " ms");
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("versaoCotacoes", snapshot.getVersao());
+        resultado.put("cotacoes", codigos.size());
+        resultado.put("lotes", resultados.length);
+        resultado.put("codigosAlterados", codigosAlterados.size());
+        resultado.put("ativosAtualizados", ativosAtualizados);
+        resultado.put("carteirasAtualizadas", carteirasAtualizadas);
+        resultado.put("tempoAtivosMs", tempoAtivos);
+        resultado.put("tempoTotalMs", tempoTotal);
+        return resultado;
+    }
+}
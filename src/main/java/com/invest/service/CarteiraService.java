@@ -11,7 +11,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service para lógica de negócio das carteiras de investimentos
@@ -32,6 +34,18 @@ public class CarteiraService {
     @Autowired
     private AtivoRepository ativoRepository;
 
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    private IndicePosicoesAtivo indicePosicoesAtivo;
+
+    @Autowired
+    private ReconciliacaoValorCarteiraService reconciliacaoService;
+
     /**
      * Cria uma nova carteira para um investidor por ID
      */
@@ -54,6 +68,9 @@ public class CarteiraService {
         carteira.setValorInicial(request.getValorInicial());
         carteira.setGoogleSheetsId(request.getGoogleSheetsId());
         carteira.setInvestidor(investidor);
+        // Sem posições: a partir daqui os valores são mantidos pelas variações de cada transação
+        carteira.setValorAtual(BigDecimal.ZERO);
+        carteira.setValorInvestido(BigDecimal.ZERO);
         
         return carteiraRepository.save(carteira);
     }
@@ -70,7 +87,9 @@ public class CarteiraService {
         carteira.setValorInicial(request.getValorInicial());
         carteira.setGoogleSheetsId(request.getGoogleSheetsId());
         
-        return carteiraRepository.save(carteira);
+        Carteira salva = carteiraRepository.save(carteira);
+        rentabilidadeCacheService.invalidarCarteira(salva.getId());
+        return salva;
     }
 
     /**
@@ -99,7 +118,9 @@ public class CarteiraService {
             carteira.setGoogleSheetsId(request.getGoogleSheetsId());
         }
         
-        return carteiraRepository.save(carteira);
+        Carteira salva = carteiraRepository.save(carteira);
+        rentabilidadeCacheService.invalidarCarteira(salva.getId());
+        return salva;
     }
 
     /**
@@ -107,21 +128,43 @@ public class CarteiraService {
      */
     public void deleteCarteira(Long id) {
         carteiraRepository.deleteById(id);
+        serieValorCarteiraService.removerSerie(id);
+        rentabilidadeCacheService.invalidarCarteira(id);
+        indicePosicoesAtivo.removerCarteira(id);
     }
 
     /**
-     * Busca carteiras por investidor e recalcula o valor atual de cada uma
+     * Busca carteiras por investidor (somente leitura, uma consulta)
+     * O valor atual vem do que é mantido pelas transações, pela atualização de preços e pela
+     * reconciliação; para forçar o recálculo use recalcularValoresInvestidor.
      */
+    @Transactional(readOnly = true)
     public List<Carteira> getCarteirasByInvestidor(Long investidorId) {
         Investidor investidor = new Investidor();
         investidor.setId(investidorId);
-        List<Carteira> carteiras = carteiraRepository.findByInvestidor(investidor);
-        // Recalcula o valor atual de cada carteira para garantir que está atualizado
-        for (Carteira carteira : carteiras) {
-            calcularValorAtualCarteira(carteira);
-            carteiraRepository.save(carteira);
-        }
-        return carteiras;
+        return carteiraRepository.findByInvestidor(investidor);
+    }
+
+    /**
+     * Recalcula o valor atual e investido de todas as carteiras do investidor em um único UPDATE
+     */
+    public Map<String, Object> recalcularValoresInvestidor(Long investidorId) {
+        List<Long> carteiraIds = carteiraRepository.findIdsByInvestidorId(investidorId);
+        Map<String, Object> resultado = recalcularValores(carteiraIds);
+        resultado.put("investidorId", investidorId);
+        return resultado;
+    }
+
+    /**
+     * Recalcula o valor atual e investido das carteiras informadas em um único UPDATE
+     */
+    public Map<String, Object> recalcularValores(List<Long> carteiraIds) {
+        int atualizadas = reconciliacaoService.recalcularCarteiras(carteiraIds);
+
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("carteiras", carteiraIds.size());
+        resultado.put("carteirasAtualizadas", atualizadas);
+        return resultado;
     }
 
     /**
@@ -191,6 +234,7 @@ public class CarteiraService {
 
             carteira.setDataAtualizacao(LocalDateTime.now());
             carteiraRepository.save(carteira);
+            rentabilidadeCacheService.invalidarCarteira(carteiraId);
 
             System.out.println("✅ Preços da carteira '" + carteira.getNome() + "' atualizados com sucesso!");
         } catch (Exception e) {
@@ -214,24 +258,46 @@ public class CarteiraService {
     /**
      * Calcula o valor atual de uma carteira com base nos preços atuais dos ativos
      * Se o ativo não tiver precoAtual, usa o precoCompra
+     * Também recalcula o valor investido (quantidade x preço médio das posições abertas)
      */
     public void calcularValorAtualCarteira(Carteira carteira) {
         // Busca os ativos da carteira diretamente do banco para garantir dados atualizados
         List<Ativo> ativos = ativoRepository.findByCarteira(carteira);
         
         BigDecimal valorTotal = BigDecimal.ZERO;
+        BigDecimal valorInvestido = BigDecimal.ZERO;
         
         // Itera sobre os ativos da carteira
         for (Ativo ativo : ativos) {
-            if (ativo.getQuantidade() != null && ativo.getQuantidade().compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal valorAtivo = ativo.getValorTotalAtual(); // Usa precoAtual se disponível, senão precoCompra
-                if (valorAtivo != null && valorAtivo.compareTo(BigDecimal.ZERO) > 0) {
-                    valorTotal = valorTotal.add(valorAtivo);
-                }
-            }
+            valorTotal = valorTotal.add(calcularValorMercadoPosicao(ativo));
+            valorInvestido = valorInvestido.add(calcularCustoPosicao(ativo));
         }
         
         carteira.setValorAtual(valorTotal);
+        carteira.setValorInvestido(valorInvestido);
+    }
+
+    /**
+     * Valor de mercado de uma posição (zero se não houver quantidade)
+     * Usa precoAtual se disponível, senão precoCompra
+     */
+    public BigDecimal calcularValorMercadoPosicao(Ativo ativo) {
+        if (ativo == null || ativo.getQuantidade() == null || ativo.getQuantidade().compareTo(BigDecimal.ZERO) <= 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal valorAtivo = ativo.getValorTotalAtual();
+        return valorAtivo != null && valorAtivo.compareTo(BigDecimal.ZERO) > 0 ? valorAtivo : BigDecimal.ZERO;
+    }
+
+    /**
+     * Custo de uma posição: quantidade x preço médio (zero se não houver quantidade)
+     */
+    public BigDecimal calcularCustoPosicao(Ativo ativo) {
+        if (ativo == null || ativo.getQuantidade() == null || ativo.getQuantidade().compareTo(BigDecimal.ZERO) <= 0
+                || ativo.getPrecoCompra() == null) {
+            return BigDecimal.ZERO;
+        }
+        return ativo.getValorTotalCompra();
     }
 
     /**
@@ -2,101 +2,262 @@ package com.invest.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
 import com.invest.dto.CotacaoDTO;
+import com.invest.service.external.CotacoesSnapshot;
 import com.invest.service.external.GoogleSheetsService;
 
 /**
  * Service responsável por streaming de cotações em tempo real
- * Atualiza cotações periodicamente e envia para clientes conectados via WebSocket
+ * Compara cada novo snapshot de cotações com o último enviado e publica apenas
+ * os ativos que mudaram para os clientes conectados via WebSocket.
+ * Clientes podem assinar o universo inteiro (/topic/cotacoes) ou apenas os ativos
+ * que acompanham (/topic/cotacoes/{codigo}). Os preços alterados também são repassados para a
+ * valorização em tempo real das carteiras (ValorizacaoCarteiraStreamingService).
  */
 @Service
 public class CotacaoStreamingService {
 
+    public static final String TOPICO_COTACOES = "/topic/cotacoes";
+    public static final String FILA_SNAPSHOT = "/queue/cotacoes";
+
     @Autowired
     private GoogleSheetsService googleSheetsService;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    private Map<String, CotacaoDTO> cotacoesCache = new HashMap<>();
+    @Autowired
+    private AssinaturaCotacoesRegistry assinaturaRegistry;
+
+    @Autowired
+    private ValorizacaoCarteiraStreamingService valorizacaoCarteiraService;
+
+    private final Map<String, CotacaoDTO> cotacoesCache = new ConcurrentHashMap<>();
+
+    // Versão das cotações que gerou o conteúdo atual do cache
+    private volatile long versaoCache = -1;
+
+    // Último snapshot publicado no tópico (base para o cálculo do delta)
+    private CotacoesSnapshot ultimoEnviado = CotacoesSnapshot.vazio();
+
+    /**
+     * Verifica periodicamente se há um novo snapshot de cotações e envia apenas os ativos
+     * cujo preço mudou: em um único frame para /topic/cotacoes e em /topic/cotacoes/{codigo}.
+     * Só são serializados os ativos (e o tópico agregado) que têm assinantes.
+     */
+    @Scheduled(fixedDelayString = "${cotacoes.streaming.intervalo-ms:5000}")
+    public synchronized void atualizarEEnviarCotacoes() {
+        CotacoesSnapshot atual = googleSheetsService.getSnapshot();
+        if (atual.getVersao() == ultimoEnviado.getVersao()) {
+            return; // Nada novo desde o último envio
+        }
+
+        boolean enviarAgregado = assinaturaRegistry.temAssinantes(TOPICO_COTACOES);
+        List<CotacaoDTO> alteradas = new ArrayList<>();
+        Map<String, BigDecimal> precosCarteiras = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : atual.getPrecos().entrySet()) {
+            BigDecimal precoAnterior = ultimoEnviado.getPreco(entry.getKey());
+            if (precoAnterior != null && precoAnterior.compareTo(entry.getValue()) == 0) {
+                continue;
+            }
+
+            if (valorizacaoCarteiraService.isMonitorado(entry.getKey())) {
+                precosCarteiras.put(entry.getKey(), entry.getValue());
+            }
+
+            String topicoAtivo = getTopicoAtivo(entry.getKey());
+            boolean enviarAtivo = assinaturaRegistry.temAssinantes(topicoAtivo);
+            if (!enviarAgregado && !enviarAtivo) {
+                continue; // Ninguém acompanha este ativo
+            }
+
+            CotacaoDTO cotacao = criarCotacaoDTO(entry.getKey(), atual);
+            if (enviarAgregado) {
+                alteradas.add(cotacao);
+            }
+            if (enviarAtivo) {
+                messagingTemplate.convertAndSend(topicoAtivo, cotacao);
+                assinaturaRegistry.registrarEnvio(topicoAtivo);
+            }
+        }
+
+        ultimoEnviado = atual;
+        valorizacaoCarteiraService.aplicarCotacoes(precosCarteiras);
+
+        if (!alteradas.isEmpty()) {
+            messagingTemplate.convertAndSend(TOPICO_COTACOES, criarMensagem("DELTA", atual.getVersao(), alteradas));
+            assinaturaRegistry.registrarEnvio(TOPICO_COTACOES);
+        }
+    }
+
+    /**
+     * Envia o estado atual apenas para a sessão que acabou de assinar (o cliente recebe em
+     * /user/queue/cotacoes): o snapshot completo para /topic/cotacoes ou a cotação do ativo
+     * para /topic/cotacoes/{codigo}. Os demais assinantes recebem somente deltas.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destino = accessor.getDestination();
+        if (destino == null || accessor.getSessionId() == null) {
+            return;
+        }
+
+        CotacoesSnapshot atual = googleSheetsService.getSnapshot();
+        List<CotacaoDTO> cotacoes;
+        if (TOPICO_COTACOES.equals(destino)) {
+            cotacoes = new ArrayList<>(atual.getTotal());
+            for (String codigo : atual.getPrecos().keySet()) {
+                cotacoes.add(criarCotacaoDTO(codigo, atual));
+            }
+        } else if (destino.startsWith(TOPICO_COTACOES + "/")) {
+            String codigo = destino.substring(TOPICO_COTACOES.length() + 1).toUpperCase();
+            if (atual.getPreco(codigo) == null) {
+                return;
+            }
+            cotacoes = List.of(criarCotacaoDTO(codigo, atual));
+        } else {
+            return;
+        }
+
+        enviarParaSessao(accessor.getSessionId(), FILA_SNAPSHOT, criarMensagem("SNAPSHOT", atual.getVersao(), cotacoes));
+    }
 
     /**
-     * Atualiza cotações a cada 10 segundos e envia para clientes conectados
-     * DESATIVADO - Sistema agora usa JSON local
+     * Tópico STOMP de um ativo específico
      */
-    // @Scheduled(fixedRate = 10000) // 10 segundos - DESATIVADO
-    public void atualizarEEnviarCotacoes() {
-        // Desativado - sistema agora usa GoogleSheetsService com JSON local
+    public static String getTopicoAtivo(String codigo) {
+        return TOPICO_COTACOES + "/" + codigo;
+    }
+
+    /**
+     * Destino canônico de uma assinatura: o código em /topic/cotacoes/{codigo} vai para maiúsculas,
+     * como nos envios do broadcaster; os demais destinos não mudam
+     */
+    public static String normalizarDestino(String destino) {
+        if (destino == null || !destino.startsWith(TOPICO_COTACOES + "/")) {
+            return destino;
+        }
+        return getTopicoAtivo(destino.substring(TOPICO_COTACOES.length() + 1).toUpperCase());
     }
 
     /**
      * Obtém cotação atual de um ativo específico
-     * Se não estiver em cache, busca do GoogleSheetsService
+     * Se não estiver em cache (ou se as cotações foram recarregadas), busca do GoogleSheetsService
      */
     public CotacaoDTO getCotacao(String codigo) {
         String codigoUpper = codigo.toUpperCase();
-        
+
+        // Descarta o cache quando uma nova versão do arquivo de cotações foi carregada
+        CotacoesSnapshot snapshot = googleSheetsService.getSnapshot();
+        if (snapshot.getVersao() != versaoCache) {
+            cotacoesCache.clear();
+            versaoCache = snapshot.getVersao();
+        }
+
         // Tenta buscar do cache primeiro
         CotacaoDTO cotacao = cotacoesCache.get(codigoUpper);
-        
+
         if (cotacao != null) {
             return cotacao;
         }
-        
-        // Se não estiver em cache, busca do GoogleSheetsService
-        Map<String, Object> cotacaoMap = googleSheetsService.buscarCotacaoCompleta(codigo);
-        
-        if (cotacaoMap == null) {
+
+        // Se não estiver em cache, busca do snapshot atual
+        if (snapshot.getCotacaoCompleta(codigoUpper) == null) {
             return null;
         }
-        
-        // Cria CotacaoDTO a partir dos dados do JSON
-        cotacao = new CotacaoDTO();
-        cotacao.setCodigo(codigoUpper);
+
+        cotacao = criarCotacaoDTO(codigoUpper, snapshot);
+
+        // Armazena no cache para próximas consultas
+        cotacoesCache.put(codigoUpper, cotacao);
+
+        return cotacao;
+    }
+
+    /**
+     * Obtém todas as cotações em cache
+     */
+    public Map<String, CotacaoDTO> getAllCotacoes() {
+        return new HashMap<>(cotacoesCache);
+    }
+
+    /**
+     * Força atualização imediata das cotações: relê o arquivo e publica o delta
+     */
+    public void forcarAtualizacao() {
+        googleSheetsService.recarregarCotacoes();
+        atualizarEEnviarCotacoes();
+    }
+
+    /**
+     * Cria CotacaoDTO a partir dos dados completos do snapshot (ou apenas do preço, se não houver)
+     */
+    private CotacaoDTO criarCotacaoDTO(String codigo, CotacoesSnapshot snapshot) {
+        CotacaoDTO cotacao = new CotacaoDTO();
+        cotacao.setCodigo(codigo);
+        cotacao.setPrecoAtual(snapshot.getPreco(codigo));
+        cotacao.setDataHora(LocalDateTime.now());
+
+        Map<String, Object> cotacaoMap = snapshot.getCotacaoCompleta(codigo);
+        if (cotacaoMap == null) {
+            cotacao.setNome("");
+            return cotacao;
+        }
+
         cotacao.setNome(cotacaoMap.get("nome") != null ? cotacaoMap.get("nome").toString() : "");
-        
+
         if (cotacaoMap.get("precoAtual") != null) {
             cotacao.setPrecoAtual((BigDecimal) cotacaoMap.get("precoAtual"));
         }
-        
+
         if (cotacaoMap.get("variacao") != null) {
             cotacao.setVariacao((BigDecimal) cotacaoMap.get("variacao"));
         }
-        
+
         if (cotacaoMap.get("precoMaximo") != null) {
             cotacao.setPrecoMaximo((BigDecimal) cotacaoMap.get("precoMaximo"));
         }
-        
+
         if (cotacaoMap.get("precoMinimo") != null) {
             cotacao.setPrecoMinimo((BigDecimal) cotacaoMap.get("precoMinimo"));
         }
-        
-        cotacao.setDataHora(LocalDateTime.now());
-        
-        // Armazena no cache para próximas consultas
-        cotacoesCache.put(codigoUpper, cotacao);
-        
+
         return cotacao;
     }
 
-    /**
-     * Obtém todas as cotações em cache
-     */
-    public Map<String, CotacaoDTO> getAllCotacoes() {
-        return new HashMap<>(cotacoesCache);
+    private Map<String, Object> criarMensagem(String tipo, long versao, List<CotacaoDTO> cotacoes) {
+        Map<String, Object> mensagem = new HashMap<>();
+        mensagem.put("tipo", tipo);
+        mensagem.put("versao", versao);
+        mensagem.put("cotacoes", cotacoes);
+        mensagem.put("total", cotacoes.size());
+        mensagem.put("timestamp", System.currentTimeMillis());
+        return mensagem;
     }
 
     /**
-     * Força atualização imediata das cotações
+     * Envia uma mensagem para uma única sessão WebSocket (destino /user{destino})
      */
-    public void forcarAtualizacao() {
-        atualizarEEnviarCotacoes();
+    private void enviarParaSessao(String sessionId, String destino, Object payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destino, payload, headers.getMessageHeaders());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,542 @@
+package com.invest.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invest.dto.TransacaoRequest;
+import com.invest.model.TipoAtivo;
+import com.invest.model.TipoTransacao;
+import com.invest.repository.CarteiraRepository;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/**
+ * Importação em massa de transações (histórico da corretora) a partir de CSV ou JSON
+ *
+ * As linhas são lidas em streaming e validadas em lotes; as válidas são inseridas com JDBC
+ * batch e as inválidas entram no relatório com o número da linha, sem abortar a importação.
+ * Ao final, a posição de cada ativo afetado é reconstruída uma única vez pelo livro de
+ * transações (ProjecaoPosicoesService), e o valor da carteira é recalculado em um único UPDATE.
+ */
+@Service
+@Transactional
+public class ImportacaoTransacoesService {
+
+    /** Colunas aceitas no cabeçalho do CSV (mesmos nomes de TransacaoRequest) */
+    public static final List<String> COLUNAS_CSV = List.of(
+            "tipoTransacao", "codigoAtivo", "nomeAtivo", "tipoAtivo", "quantidade", "precoUnitario",
+            "taxasCorretagem", "impostos", "dataTransacao", "dataLiquidacao", "observacoes");
+
+    private static final List<String> COLUNAS_OBRIGATORIAS = COLUNAS_CSV.subList(0, 6);
+
+    private static final DateTimeFormatter DATA_BR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    // Colunas DECIMAL(15,4) e DECIMAL(15,2) de transacoes
+    private static final int PRECISAO_VALORES = 15;
+    private static final int ESCALA_QUANTIDADE = 4;
+    private static final int ESCALA_VALORES = 2;
+
+    private static final String SQL_INSERIR_TRANSACAO =
+            "INSERT INTO transacoes (tipo_transacao, codigo_ativo, nome_ativo, tipo_ativo, quantidade, preco_unitario, " +
+            "valor_total, taxas_corretagem, impostos, valor_liquido, data_transacao, data_liquidacao, observacoes, carteira_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CarteiraRepository carteiraRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ReconciliacaoValorCarteiraService reconciliacaoService;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    private ProjecaoPosicoesService projecaoPosicoesService;
+
+    @Value("${transacoes.importacao.tamanho-lote:1000}")
+    private int tamanhoLote;
+
+    @Value("${transacoes.importacao.max-erros:1000}")
+    private int maxErros;
+
+    /**
+     * Importa transações de um CSV com cabeçalho (separador ',' ou ';', colunas de COLUNAS_CSV)
+     * @return relatório com linhas lidas, importadas, erros por linha e posições reconstruídas
+     */
+    public Map<String, Object> importarCsv(Long carteiraId, InputStream entrada) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        return importar(carteiraId, new LeitorCsv(reader));
+    }
+
+    /**
+     * Importa transações de um array JSON de TransacaoRequest, lido elemento a elemento
+     * @return relatório com linhas lidas, importadas, erros por linha e posições reconstruídas
+     */
+    public Map<String, Object> importarJson(Long carteiraId, InputStream entrada) throws IOException {
+        JsonParser parser = objectMapper.createParser(entrada);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("O JSON deve ser um array de transações");
+        }
+        return importar(carteiraId, new LeitorJson(parser));
+    }
+
+    private Map<String, Object> importar(Long carteiraId, LeitorLinhas leitor) throws IOException {
+        if (!carteiraRepository.existsById(carteiraId)) {
+            throw new RuntimeException("Carteira não encontrada: " + carteiraId);
+        }
+        long inicio = System.currentTimeMillis();
+        Importacao importacao = new Importacao(carteiraId);
+
+        List<Linha> lote = new ArrayList<>(tamanhoLote);
+        Linha linha;
+        while ((linha = leitor.proxima()) != null) {
+            lote.add(linha);
+            if (lote.size() >= tamanhoLote) {
+                processarLote(importacao, lote);
+                lote.clear();
+            }
+        }
+        processarLote(importacao, lote);
+
+        int[] ativos = {0, 0};
+        if (importacao.importadas > 0) {
+            ativos = reconstruirPosicoes(importacao);
+            reconciliacaoService.recalcularCarteiras(List.of(carteiraId));
+            rentabilidadeCacheService.invalidarCarteira(carteiraId);
+            serieValorCarteiraService.invalidarAPartirDe(carteiraId, importacao.menorData.toLocalDate());
+        }
+
+        long tempo = System.currentTimeMillis() - inicio;
+        System.out.println("📥 Importação na carteira " + carteiraId + ": " + importacao.importadas + " transações, "
+                + importacao.totalErros + " linhas com erro, " + importacao.codigos.size() + " ativos em " + tempo + " ms");
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("carteiraId", carteiraId);
+        relatorio.put("linhasLidas", importacao.lidas);
+        relatorio.put("transacoesImportadas", importacao.importadas);
+        relatorio.put("linhasComErro", importacao.totalErros);
+        relatorio.put("erros", importacao.erros);
+        relatorio.put("lotes", importacao.lotes);
+        relatorio.put("ativosReconstruidos", importacao.codigos.size());
+        relatorio.put("ativosAtualizados", ativos[0]);
+        relatorio.put("ativosCriados", ativos[1]);
+        relatorio.put("avisos", importacao.avisos);
+        relatorio.put("tempoMs", tempo);
+        return relatorio;
+    }
+
+    /**
+     * Valida as linhas do lote e insere as válidas em um único JDBC batch
+     */
+    private void processarLote(Importacao importacao, List<Linha> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> parametros = new ArrayList<>(lote.size());
+
+        for (Linha linha : lote) {
+            importacao.lidas++;
+            String erro = linha.erro != null ? linha.erro : validar(linha.request);
+            if (erro != null) {
+                importacao.registrarErro(linha.numero, erro, maxErros);
+                continue;
+            }
+
+            TransacaoRequest request = linha.request;
+            String codigo = request.getCodigoAtivo().trim().toUpperCase();
+            LocalDateTime data = request.getDataTransacao() != null ? request.getDataTransacao() : agora.toLocalDateTime();
+            BigDecimal valorTotal = request.getQuantidade().multiply(request.getPrecoUnitario());
+            BigDecimal valorLiquido = valorTotal;
+            if (request.getTaxasCorretagem() != null) {
+                valorLiquido = valorLiquido.subtract(request.getTaxasCorretagem());
+            }
+            if (request.getImpostos() != null) {
+                valorLiquido = valorLiquido.subtract(request.getImpostos());
+            }
+
+            parametros.add(new Object[] {
+                    request.getTipoTransacao().name(), codigo, request.getNomeAtivo().trim(), request.getTipoAtivo().name(),
+                    request.getQuantidade(), request.getPrecoUnitario(), valorTotal,
+                    request.getTaxasCorretagem(), request.getImpostos(), valorLiquido,
+                    Timestamp.valueOf(data),
+                    request.getDataLiquidacao() != null ? Timestamp.valueOf(request.getDataLiquidacao()) : null,
+                    request.getObservacoes(), importacao.carteiraId});
+
+            importacao.codigos.add(codigo);
+            if (importacao.menorData == null || data.isBefore(importacao.menorData)) {
+                importacao.menorData = data;
+            }
+        }
+
+        if (!parametros.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_INSERIR_TRANSACAO, parametros);
+            importacao.importadas += parametros.size();
+            importacao.lotes++;
+        }
+    }
+
+    /**
+     * Reconstrói uma única vez, pelo livro, a posição de cada código afetado
+     * @return {ativos atualizados, ativos criados}
+     */
+    private int[] reconstruirPosicoes(Importacao importacao) {
+        Map<String, ProjecaoPosicoesService.Resultado> resultados =
+                projecaoPosicoesService.reconstruirCodigos(importacao.carteiraId, importacao.codigos);
+
+        int atualizados = 0;
+        int criados = 0;
+        for (ProjecaoPosicoesService.Resultado resultado : resultados.values()) {
+            if (resultado.isCriado()) {
+                criados++;
+            } else if (resultado.isAlterado()) {
+                atualizados++;
+            }
+            if (resultado.isQuantidadeAjustada()) {
+                Map<String, Object> aviso = new LinkedHashMap<>();
+                aviso.put("codigo", resultado.getCodigo());
+                aviso.put("aviso", "Saídas maiores que as entradas: quantidade ajustada para zero");
+                importacao.avisos.add(aviso);
+            }
+        }
+        return new int[] {atualizados, criados};
+    }
+
+    /**
+     * Valida uma linha com as mesmas regras de TransacaoRequest e os limites das colunas
+     * @return mensagem de erro ou null se válida
+     */
+    private String validar(TransacaoRequest request) {
+        Set<ConstraintViolation<TransacaoRequest>> violacoes = validator.validate(request);
+        if (!violacoes.isEmpty()) {
+            return violacoes.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        if (request.getCodigoAtivo().trim().length() > 20) {
+            return "Código do ativo deve ter no máximo 20 caracteres";
+        }
+        if (request.getNomeAtivo().trim().length() > 255) {
+            return "Nome do ativo deve ter no máximo 255 caracteres";
+        }
+        if (request.getObservacoes() != null && request.getObservacoes().length() > 500) {
+            return "Observações devem ter no máximo 500 caracteres";
+        }
+
+        // Um valor fora da coluna derrubaria o JDBC batch do lote inteiro: rejeita só a linha
+        String erro = validarDecimal(request.getQuantidade(), ESCALA_QUANTIDADE, "Quantidade");
+        if (erro == null) {
+            erro = validarDecimal(request.getPrecoUnitario(), ESCALA_VALORES, "Preço unitário");
+        }
+        if (erro == null) {
+            erro = validarDecimal(request.getTaxasCorretagem(), ESCALA_VALORES, "Taxas de corretagem");
+        }
+        if (erro == null) {
+            erro = validarDecimal(request.getImpostos(), ESCALA_VALORES, "Impostos");
+        }
+        if (erro == null) {
+            // Valores calculados: o banco arredonda as casas decimais, mas não aceita mais dígitos inteiros
+            BigDecimal valorTotal = request.getQuantidade().multiply(request.getPrecoUnitario());
+            BigDecimal valorLiquido = valorTotal
+                    .subtract(request.getTaxasCorretagem() != null ? request.getTaxasCorretagem() : BigDecimal.ZERO)
+                    .subtract(request.getImpostos() != null ? request.getImpostos() : BigDecimal.ZERO);
+            if (digitosInteiros(valorTotal) > PRECISAO_VALORES - ESCALA_VALORES) {
+                return "Valor total (quantidade x preço) deve ter no máximo " + (PRECISAO_VALORES - ESCALA_VALORES) + " dígitos inteiros";
+            }
+            if (digitosInteiros(valorLiquido) > PRECISAO_VALORES - ESCALA_VALORES) {
+                return "Valor líquido deve ter no máximo " + (PRECISAO_VALORES - ESCALA_VALORES) + " dígitos inteiros";
+            }
+        }
+        return erro;
+    }
+
+    /**
+     * Verifica se o valor cabe em DECIMAL(PRECISAO_VALORES, escala)
+     * @return mensagem de erro ou null se cabe (ou se o valor é null)
+     */
+    private static String validarDecimal(BigDecimal valor, int escala, String campo) {
+        if (valor == null) {
+            return null;
+        }
+        if (digitosInteiros(valor) > PRECISAO_VALORES - escala) {
+            return campo + " deve ter no máximo " + (PRECISAO_VALORES - escala) + " dígitos inteiros";
+        }
+        if (valor.stripTrailingZeros().scale() > escala) {
+            return campo + " deve ter no máximo " + escala + " casas decimais";
+        }
+        return null;
+    }
+
+    private static int digitosInteiros(BigDecimal valor) {
+        return Math.max(valor.precision() - valor.scale(), 0);
+    }
+
+    /**
+     * Estado acumulado de uma importação
+     */
+    private static class Importacao {
+        private final Long carteiraId;
+        private final Set<String> codigos = new TreeSet<>();
+        private final List<Map<String, Object>> erros = new ArrayList<>();
+        private final List<Map<String, Object>> avisos = new ArrayList<>();
+        private LocalDateTime menorData;
+        private int lidas;
+        private int importadas;
+        private int totalErros;
+        private int lotes;
+
+        Importacao(Long carteiraId) {
+            this.carteiraId = carteiraId;
+        }
+
+        void registrarErro(long numero, String mensagem, int maxErros) {
+            totalErros++;
+            if (erros.size() < maxErros) {
+                Map<String, Object> erro = new LinkedHashMap<>();
+                erro.put("linha", numero);
+                erro.put("erro", mensagem);
+                erros.add(erro);
+            }
+        }
+    }
+
+    /**
+     * Linha lida da entrada: a requisição convertida ou o erro de conversão
+     */
+    private static class Linha {
+        private final long numero;
+        private final TransacaoRequest request;
+        private final String erro;
+
+        Linha(long numero, TransacaoRequest request, String erro) {
+            this.numero = numero;
+            this.request = request;
+            this.erro = erro;
+        }
+    }
+
+    private interface LeitorLinhas {
+        /** Próxima linha ou null no fim da entrada */
+        Linha proxima() throws IOException;
+    }
+
+    /**
+     * Leitor de CSV linha a linha; o número da linha é o do arquivo (cabeçalho = 1)
+     */
+    private static class LeitorCsv implements LeitorLinhas {
+        private final BufferedReader reader;
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final char separador;
+        private long numero;
+
+        LeitorCsv(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            String cabecalho = reader.readLine();
+            numero = 1;
+            if (cabecalho == null || cabecalho.isBlank()) {
+                throw new IllegalArgumentException("CSV vazio ou sem cabeçalho");
+            }
+            if (cabecalho.startsWith("\uFEFF")) {
+                cabecalho = cabecalho.substring(1);
+            }
+            separador = cabecalho.indexOf(';') >= 0 ? ';' : ',';
+
+            List<String> colunas = dividir(cabecalho, separador);
+            for (int i = 0; i < colunas.size(); i++) {
+                indices.put(colunas.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String obrigatoria : COLUNAS_OBRIGATORIAS) {
+                if (!indices.containsKey(obrigatoria.toLowerCase(Locale.ROOT))) {
+                    throw new IllegalArgumentException("Coluna obrigatória ausente no CSV: " + obrigatoria);
+                }
+            }
+        }
+
+        @Override
+        public Linha proxima() throws IOException {
+            String texto;
+            do {
+                texto = reader.readLine();
+                numero++;
+                if (texto == null) {
+                    return null;
+                }
+            } while (texto.isBlank());
+
+            List<String> valores = dividir(texto, separador);
+            try {
+                TransacaoRequest request = new TransacaoRequest();
+                String tipoTransacao = valor(valores, "tipoTransacao");
+                String tipoAtivo = valor(valores, "tipoAtivo");
+                request.setTipoTransacao(tipoTransacao != null ? converterEnum(TipoTransacao.class, tipoTransacao, "Tipo de transação") : null);
+                request.setCodigoAtivo(valor(valores, "codigoAtivo"));
+                request.setNomeAtivo(valor(valores, "nomeAtivo"));
+                request.setTipoAtivo(tipoAtivo != null ? converterEnum(TipoAtivo.class, tipoAtivo, "Tipo do ativo") : null);
+                request.setQuantidade(converterNumero(valor(valores, "quantidade")));
+                request.setPrecoUnitario(converterNumero(valor(valores, "precoUnitario")));
+                request.setTaxasCorretagem(converterNumero(valor(valores, "taxasCorretagem")));
+                request.setImpostos(converterNumero(valor(valores, "impostos")));
+                request.setDataTransacao(converterData(valor(valores, "dataTransacao")));
+                request.setDataLiquidacao(converterData(valor(valores, "dataLiquidacao")));
+                request.setObservacoes(valor(valores, "observacoes"));
+                return new Linha(numero, request, null);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return new Linha(numero, null, e.getMessage());
+            }
+        }
+
+        private String valor(List<String> valores, String coluna) {
+            Integer indice = indices.get(coluna.toLowerCase(Locale.ROOT));
+            if (indice == null || indice >= valores.size()) {
+                return null;
+            }
+            String valor = valores.get(indice).trim();
+            return valor.isEmpty() ? null : valor;
+        }
+
+        private static <E extends Enum<E>> E converterEnum(Class<E> tipo, String valor, String campo) {
+            try {
+                return Enum.valueOf(tipo, valor.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(campo + " inválido: " + valor);
+            }
+        }
+
+        /**
+         * Aceita 1234.56 e o formato brasileiro 1.234,56
+         */
+        private static BigDecimal converterNumero(String valor) {
+            if (valor == null) {
+                return null;
+            }
+            String normalizado = valor;
+            if (normalizado.indexOf(',') >= 0) {
+                normalizado = normalizado.replace(".", "").replace(',', '.');
+            }
+            try {
+                return new BigDecimal(normalizado);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Número inválido: " + valor);
+            }
+        }
+
+        /**
+         * Aceita ISO (2024-01-31, 2024-01-31T10:00:00, 2024-01-31 10:00:00) e dd/MM/yyyy
+         */
+        private static LocalDateTime converterData(String valor) {
+            if (valor == null) {
+                return null;
+            }
+            try {
+                if (valor.length() == 10) {
+                    return valor.indexOf('/') >= 0
+                            ? LocalDate.parse(valor, DATA_BR).atStartOfDay()
+                            : LocalDate.parse(valor).atStartOfDay();
+                }
+                return LocalDateTime.parse(valor.replace(' ', 'T'));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Data inválida: " + valor);
+            }
+        }
+
+        /**
+         * Divide uma linha respeitando campos entre aspas ("" representa uma aspa)
+         */
+        private static List<String> dividir(String linha, char separador) {
+            List<String> campos = new ArrayList<>();
+            StringBuilder atual = new StringBuilder();
+            boolean entreAspas = false;
+            for (int i = 0; i < linha.length(); i++) {
+                char c = linha.charAt(i);
+                if (c == '"') {
+                    if (entreAspas && i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                        atual.append('"');
+                        i++;
+                    } else {
+                        entreAspas = !entreAspas;
+                    }
+                } else if (c == separador && !entreAspas) {
+                    campos.add(atual.toString());
+                    atual.setLength(0);
+                } else {
+                    atual.append(c);
+                }
+            }
+            campos.add(atual.toString());
+            return campos;
+        }
+    }
+
+    /**
+     * Leitor de um array JSON elemento a elemento; o número da linha é a posição no array (a partir de 1)
+     */
+    private class LeitorJson implements LeitorLinhas {
+        private final JsonParser parser;
+        private long numero;
+
+        LeitorJson(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public Linha proxima() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return null;
+            }
+            numero++;
+            JsonNode no = parser.readValueAsTree();
+            if (no == null || !no.isObject()) {
+                return new Linha(numero, null, "Elemento não é um objeto de transação");
+            }
+            try {
+                return new Linha(numero, objectMapper.treeToValue(no, TransacaoRequest.class), null);
+            } catch (JsonProcessingException e) {
+                return new Linha(numero, null, "Valor inválido: " + e.getOriginalMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.invest.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.invest.repository.AtivoRepository;
+
+/**
+ * Índice invertido em memória: código do ativo → posições (carteira, ativo, quantidade)
+ *
+ * Responde "quais carteiras possuem PETR4" sem varrer a tabela de ativos, para que
+ * propagação de preços, alertas e relatórios de exposição toquem apenas as posições
+ * relevantes. É reconstruído na inicialização a partir de ativos e mantido pelas escritas
+ * do TransacaoService; dentro de uma transação a alteração só é aplicada após o commit.
+ */
+@Component
+public class IndicePosicoesAtivo {
+
+    @Autowired
+    private AtivoRepository ativoRepository;
+
+    // código → (ativoId → posição)
+    private final Map<String, Map<Long, Posicao>> posicoesPorCodigo = new ConcurrentHashMap<>();
+
+    // ativoId → código (para remover a posição sem conhecer o código)
+    private final Map<Long, String> codigoPorAtivo = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconstruir();
+    }
+
+    /**
+     * Reconstrói o índice a partir de todas as posições abertas
+     * @return quantidade de posições indexadas
+     */
+    public synchronized int reconstruir() {
+        long inicio = System.currentTimeMillis();
+        posicoesPorCodigo.clear();
+        codigoPorAtivo.clear();
+
+        List<Object[]> linhas = ativoRepository.findPosicoesAbertas();
+        for (Object[] linha : linhas) {
+            aplicar((Long) linha[0], (Long) linha[1], (String) linha[2], (BigDecimal) linha[3]);
+        }
+
+        System.out.println("📇 Índice de posições reconstruído: " + linhas.size() + " posições em "
+                + posicoesPorCodigo.size() + " ativos (" + (System.currentTimeMillis() - inicio) + " ms)");
+        return linhas.size();
+    }
+
+    /**
+     * Registra a quantidade atual de um ativo (quantidade zero ou negativa remove a posição).
+     * Dentro de uma transação, aplicado apenas após o commit.
+     */
+    public void registrarPosicao(Long carteiraId, Long ativoId, String codigo, BigDecimal quantidade) {
+        if (ativoId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    aplicar(ativoId, carteiraId, codigo, quantidade);
+                }
+            });
+        } else {
+            aplicar(ativoId, carteiraId, codigo, quantidade);
+        }
+    }
+
+    /**
+     * Remove todas as posições de uma carteira (exclusão da carteira), após o commit
+     */
+    public void removerCarteira(Long carteiraId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removerPosicoesCarteira(carteiraId);
+                }
+            });
+        } else {
+            removerPosicoesCarteira(carteiraId);
+        }
+    }
+
+    /**
+     * Posições abertas de um ativo em todas as carteiras
+     */
+    public List<Posicao> getPosicoes(String codigo) {
+        Map<Long, Posicao> posicoes = posicoesPorCodigo.get(codigo.toUpperCase());
+        return posicoes != null ? new ArrayList<>(posicoes.values()) : Collections.emptyList();
+    }
+
+    /**
+     * IDs das carteiras que possuem o ativo
+     */
+    public Set<Long> getCarteiras(String codigo) {
+        Set<Long> carteiras = new TreeSet<>();
+        for (Posicao posicao : getPosicoes(codigo)) {
+            carteiras.add(posicao.getCarteiraId());
+        }
+        return carteiras;
+    }
+
+    /**
+     * Quantidade somada do ativo em todas as carteiras
+     */
+    public BigDecimal getQuantidadeTotal(String codigo) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Posicao posicao : getPosicoes(codigo)) {
+            total = total.add(posicao.getQuantidade());
+        }
+        return total;
+    }
+
+    /**
+     * Códigos com ao menos uma posição aberta
+     */
+    public Set<String> getCodigos() {
+        return Collections.unmodifiableSet(posicoesPorCodigo.keySet());
+    }
+
+    public Map<String, Object> getEstatisticas() {
+        Map<String, Object> estatisticas = new HashMap<>();
+        estatisticas.put("ativos", posicoesPorCodigo.size());
+        estatisticas.put("posicoes", codigoPorAtivo.size());
+        return estatisticas;
+    }
+
+    private synchronized void aplicar(Long ativoId, Long carteiraId, String codigo, BigDecimal quantidade) {
+        String codigoAnterior = codigoPorAtivo.remove(ativoId);
+        if (codigoAnterior != null) {
+            removerDoCodigo(codigoAnterior, ativoId);
+        }
+        if (codigo == null || quantidade == null || quantidade.compareTo(BigDecimal.ZERO) <= 0) {
+            return;
+        }
+
+        String codigoUpper = codigo.toUpperCase();
+        posicoesPorCodigo.computeIfAbsent(codigoUpper, c -> new ConcurrentHashMap<>())
+                .put(ativoId, new Posicao(carteiraId, ativoId, codigoUpper, quantidade));
+        codigoPorAtivo.put(ativoId, codigoUpper);
+    }
+
+    private synchronized void removerPosicoesCarteira(Long carteiraId) {
+        for (Map<Long, Posicao> posicoes : posicoesPorCodigo.values()) {
+            posicoes.values().removeIf(posicao -> {
+                if (posicao.getCarteiraId().equals(carteiraId)) {
+                    codigoPorAtivo.remove(posicao.getAtivoId());
+                    return true;
+                }
+                return false;
+            });
+        }
+        posicoesPorCodigo.values().removeIf(Map::isEmpty);
+    }
+
+    private void removerDoCodigo(String codigo, Long ativoId) {
+        posicoesPorCodigo.computeIfPresent(codigo, (c, posicoes) -> {
+            posicoes.remove(ativoId);
+            return posicoes.isEmpty() ? null : posicoes;
+        });
+    }
+
+    /**
+     * Posição de uma carteira em um ativo (imutável)
+     */
+    public static final class Posicao {
+        private final Long carteiraId;
+        private final Long ativoId;
+        private final String codigo;
+        private final BigDecimal quantidade;
+
+        Posicao(Long carteiraId, Long ativoId, String codigo, BigDecimal quantidade) {
+            this.carteiraId = carteiraId;
+            this.ativoId = ativoId;
+            this.codigo = codigo;
+            this.quantidade = quantidade;
+        }
+
+        public Long getCarteiraId() {
+            return carteiraId;
+        }
+
+        public Long getAtivoId() {
+            return ativoId;
+        }
+
+        public String getCodigo() {
+            return codigo;
+        }
+
+        public BigDecimal getQuantidade() {
+            return quantidade;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package com.invest.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.invest.model.Ativo;
+import com.invest.model.TipoTransacao;
+import com.invest.utils.CalculadoraPosicao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Projeção das posições a partir do livro de transações
+ *
+ * A posição de cada ativo (quantidade, preço médio e resultado realizado) é obtida reaplicando
+ * as transações do código em ordem de data com CalculadoraPosicao, lidas em streaming do JDBC
+ * sem carregar entidades: o resultado depende só da sequência de transações, então edições,
+ * exclusões e inserções retroativas não deixam a posição divergir. Cada alteração reconstrói
+ * apenas os códigos afetados; a reconstrução completa repara todas as carteiras em paralelo,
+ * cada uma em sua própria transação.
+ */
+@Service
+@Transactional
+public class ProjecaoPosicoesService {
+
+    private static final String SQL_TRANSACOES =
+            "SELECT codigo_ativo, tipo_transacao, quantidade, preco_unitario, data_transacao, nome_ativo, tipo_ativo " +
+            "FROM transacoes WHERE carteira_id = ?%s ORDER BY data_transacao, id";
+
+    private static final String SQL_ATIVOS =
+            "SELECT id, codigo, quantidade, preco_compra, preco_atual, versao FROM ativos WHERE carteira_id = ?%s ORDER BY id";
+
+    // Só grava se a versão lida não mudou: outra transação na mesma posição força nova tentativa
+    private static final String SQL_ATUALIZAR_ATIVO =
+            "UPDATE ativos SET quantidade = ?, preco_compra = ?, data_atualizacao = ?, versao = versao + 1 " +
+            "WHERE id = ? AND versao = ?";
+
+    private static final String SQL_INSERIR_ATIVO =
+            "INSERT INTO ativos (codigo, nome, tipo, quantidade, preco_compra, data_compra, data_atualizacao, carteira_id, versao) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String SQL_VINCULAR_ATIVOS =
+            "UPDATE transacoes t JOIN ativos a ON a.carteira_id = t.carteira_id AND a.codigo = t.codigo_ativo " +
+            "SET t.ativo_id = a.id WHERE t.carteira_id = ?%s AND (t.ativo_id IS NULL OR t.ativo_id <> a.id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private IndicePosicoesAtivo indicePosicoesAtivo;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private ReconciliacaoValorCarteiraService reconciliacaoService;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Value("${posicoes.projecao.fetch-size:500}")
+    private int fetchSize;
+
+    // 0 = número de processadores
+    @Value("${posicoes.reconstrucao.threads:0}")
+    private int threads;
+
+    /**
+     * Posição de um ativo calculada pelo livro, sem gravar nada
+     */
+    @Transactional(readOnly = true)
+    public Resultado projetar(Long carteiraId, String codigo) {
+        String codigoUpper = codigo.trim().toUpperCase();
+        return processar(carteiraId, List.of(codigoUpper), false).get(codigoUpper);
+    }
+
+    /**
+     * Reconstrói a posição de um ativo a partir das suas transações e grava o ativo
+     */
+    public Resultado reconstruirAtivo(Long carteiraId, String codigo) {
+        String codigoUpper = codigo.trim().toUpperCase();
+        return reconstruirCodigos(carteiraId, List.of(codigoUpper)).get(codigoUpper);
+    }
+
+    /**
+     * Reconstrói as posições dos códigos informados (uma leitura do livro para todos) e grava
+     * apenas os ativos que mudaram. Códigos sem transações ficam com quantidade zero.
+     * O valor da carteira não é alterado aqui: cabe ao chamador aplicar a variação.
+     * @return resultado por código (em maiúsculas)
+     */
+    public Map<String, Resultado> reconstruirCodigos(Long carteiraId, Collection<String> codigos) {
+        List<String> codigosUpper = new ArrayList<>();
+        for (String codigo : codigos) {
+            String codigoUpper = codigo.trim().toUpperCase();
+            if (!codigosUpper.contains(codigoUpper)) {
+                codigosUpper.add(codigoUpper);
+            }
+        }
+        return processar(carteiraId, codigosUpper, true);
+    }
+
+    /**
+     * Reconstrói todas as posições de uma carteira que têm transações e recalcula o valor da carteira
+     * Ativos sem nenhuma transação (cadastros antigos) não são alterados.
+     */
+    public Map<String, Object> reconstruirCarteira(Long carteiraId) {
+        Map<String, Resultado> resultados = processar(carteiraId, null, true);
+
+        int alterados = 0;
+        int criados = 0;
+        int ajustados = 0;
+        for (Resultado resultado : resultados.values()) {
+            if (resultado.isCriado()) {
+                criados++;
+            } else if (resultado.isAlterado()) {
+                alterados++;
+            }
+            if (resultado.isQuantidadeAjustada()) {
+                ajustados++;
+            }
+        }
+        if (alterados + criados > 0) {
+            reconciliacaoService.recalcularCarteiras(List.of(carteiraId));
+            rentabilidadeCacheService.invalidarCarteira(carteiraId);
+            // Posições reparadas: a série diária gravada foi calculada com a posição antiga
+            Timestamp primeiraTransacao = jdbcTemplate.queryForObject(
+                    "SELECT MIN(data_transacao) FROM transacoes WHERE carteira_id = ?", Timestamp.class, carteiraId);
+            if (primeiraTransacao != null) {
+                serieValorCarteiraService.invalidarAPartirDe(carteiraId, primeiraTransacao.toLocalDateTime().toLocalDate());
+            }
+        }
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("carteiraId", carteiraId);
+        relatorio.put("ativos", resultados.size());
+        relatorio.put("ativosAlterados", alterados);
+        relatorio.put("ativosCriados", criados);
+        relatorio.put("quantidadesAjustadas", ajustados);
+        return relatorio;
+    }
+
+    /**
+     * Reconstrói as posições de todas as carteiras em paralelo (uma transação por carteira);
+     * uma carteira com erro não interrompe as demais
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Object> reconstruirTodas() {
+        long inicio = System.currentTimeMillis();
+        List<Long> carteiraIds = jdbcTemplate.queryForList("SELECT id FROM carteiras ORDER BY id", Long.class);
+        int totalThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Callable<Map<String, Object>>> tarefas = new ArrayList<>(carteiraIds.size());
+        for (Long carteiraId : carteiraIds) {
+            tarefas.add(() -> {
+                try {
+                    return transactionTemplate.execute(status -> reconstruirCarteira(carteiraId));
+                } catch (Exception e) {
+                    Map<String, Object> erro = new LinkedHashMap<>();
+                    erro.put("carteiraId", carteiraId);
+                    erro.put("erro", e.getMessage());
+                    return erro;
+                }
+            });
+        }
+
+        List<Map<String, Object>> erros = new ArrayList<>();
+        int carteirasReparadas = 0;
+        int ativosAlterados = 0;
+        int ativosCriados = 0;
+        ForkJoinPool executor = new ForkJoinPool(totalThreads);
+        try {
+            for (Future<Map<String, Object>> futuro : executor.invokeAll(tarefas)) {
+                Map<String, Object> relatorio = futuro.get();
+                if (relatorio.containsKey("erro")) {
+                    erros.add(relatorio);
+                    continue;
+                }
+                int alterados = (Integer) relatorio.get("ativosAlterados");
+                int criados = (Integer) relatorio.get("ativosCriados");
+                if (alterados + criados > 0) {
+                    carteirasReparadas++;
+                }
+                ativosAlterados += alterados;
+                ativosCriados += criados;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reconstrução das posições interrompida");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Erro na reconstrução das posições: " + e.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        long tempo = System.currentTimeMillis() - inicio;
+        System.out.println("🔁 Posições reconstruídas: " + carteiraIds.size() + " carteiras (" + carteirasReparadas
+                + " reparadas, " + erros.size() + " com erro) em " + tempo + " ms");
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("carteiras", carteiraIds.size());
+        relatorio.put("carteirasReparadas", carteirasReparadas);
+        relatorio.put("ativosAlterados", ativosAlterados);
+        relatorio.put("ativosCriados", ativosCriados);
+        relatorio.put("erros", erros);
+        relatorio.put("threads", totalThreads);
+        relatorio.put("tempoMs", tempo);
+        return relatorio;
+    }
+
+    /**
+     * Recarrega do banco um ativo gerenciado pelo JPA depois de uma reconstrução (que grava via JDBC)
+     */
+    public void sincronizar(Ativo ativo) {
+        if (ativo != null && ativo.getId() != null && entityManager.contains(ativo)) {
+            entityManager.refresh(ativo);
+        }
+    }
+
+    /**
+     * Lê o livro em streaming acumulando uma posição por código e, se gravar, atualiza os ativos
+     * @param codigos códigos em maiúsculas ou null para todos os códigos com transações
+     */
+    private Map<String, Resultado> processar(Long carteiraId, List<String> codigos, boolean gravar) {
+        if (codigos != null && codigos.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        // Alterações pendentes do JPA (transação recém-salva ou excluída) precisam estar no banco
+        entityManager.flush();
+
+        Map<String, Acumulado> acumulados = dobrar(carteiraId, codigos);
+        Map<String, Object[]> ativosExistentes = buscarAtivos(carteiraId, codigos, gravar);
+
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+        Map<String, Resultado> resultados = new LinkedHashMap<>();
+        List<Object[]> atualizacoes = new ArrayList<>();
+        List<Object[]> insercoes = new ArrayList<>();
+
+        for (Map.Entry<String, Acumulado> entry : acumulados.entrySet()) {
+            String codigo = entry.getKey();
+            Acumulado acumulado = entry.getValue();
+            CalculadoraPosicao.Posicao posicao = acumulado.posicao;
+
+            boolean ajustada = posicao.getQuantidade().compareTo(BigDecimal.ZERO) < 0;
+            BigDecimal quantidade = ajustada ? BigDecimal.ZERO : posicao.getQuantidade();
+            // Já na escala da coluna: arredondado a cada compra, como na atualização direta
+            BigDecimal precoMedio = posicao.getPrecoMedio();
+
+            Object[] existente = ativosExistentes.get(codigo);
+            if (existente != null) {
+                Long ativoId = (Long) existente[0];
+                BigDecimal precoCompra = precoMedio != null ? precoMedio : (BigDecimal) existente[2];
+                boolean alterado = quantidade.compareTo((BigDecimal) existente[1]) != 0
+                        || precoCompra.compareTo((BigDecimal) existente[2]) != 0;
+                if (alterado) {
+                    atualizacoes.add(new Object[] {quantidade, precoCompra, agora, ativoId, existente[4]});
+                }
+                resultados.put(codigo, new Resultado(codigo, ativoId, quantidade, precoCompra, (BigDecimal) existente[3],
+                        posicao, ajustada, false, alterado));
+            } else if (quantidade.compareTo(BigDecimal.ZERO) > 0) {
+                BigDecimal precoCompra = precoMedio != null ? precoMedio : acumulado.primeiroPreco;
+                LocalDateTime dataCompra = posicao.getDataPrimeiraCompra() != null
+                        ? posicao.getDataPrimeiraCompra() : acumulado.primeiraData;
+                insercoes.add(new Object[] {codigo, acumulado.nome, acumulado.tipo, quantidade, precoCompra,
+                        Timestamp.valueOf(dataCompra), agora, carteiraId});
+                resultados.put(codigo, new Resultado(codigo, null, quantidade, precoCompra, null,
+                        posicao, ajustada, true, true));
+            } else {
+                resultados.put(codigo, new Resultado(codigo, null, quantidade, precoMedio, null,
+                        posicao, ajustada, false, false));
+            }
+        }
+
+        if (!gravar) {
+            return resultados;
+        }
+
+        if (!atualizacoes.isEmpty()) {
+            int[] linhas = jdbcTemplate.batchUpdate(SQL_ATUALIZAR_ATIVO, atualizacoes);
+            for (int i = 0; i < linhas.length; i++) {
+                // SUCCESS_NO_INFO (-2) não informa a contagem; nesse caso vale o bloqueio de buscarAtivos
+                if (linhas[i] == 0) {
+                    throw new ObjectOptimisticLockingFailureException(Ativo.class, atualizacoes.get(i)[3]);
+                }
+            }
+        }
+        if (!insercoes.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_INSERIR_ATIVO, insercoes);
+            // IDs gerados dos ativos criados
+            buscarAtivos(carteiraId, codigos, false).forEach((codigo, ativo) -> {
+                Resultado resultado = resultados.get(codigo);
+                if (resultado != null && resultado.ativoId == null && resultado.criado) {
+                    resultado.ativoId = (Long) ativo[0];
+                }
+            });
+        }
+
+        String filtro = codigos != null ? " AND t.codigo_ativo IN (" + placeholders(codigos.size()) + ")" : "";
+        jdbcTemplate.update(String.format(SQL_VINCULAR_ATIVOS, filtro), parametros(carteiraId, codigos));
+
+        // Índice código → posições com as quantidades reconstruídas (aplicado após o commit)
+        for (Resultado resultado : resultados.values()) {
+            if (resultado.ativoId != null && resultado.alterado) {
+                indicePosicoesAtivo.registrarPosicao(carteiraId, resultado.ativoId, resultado.codigo, resultado.quantidade);
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Reaplica as transações em ordem de data sobre uma posição por código (uma linha por vez)
+     */
+    private Map<String, Acumulado> dobrar(Long carteiraId, List<String> codigos) {
+        Map<String, Acumulado> acumulados = new LinkedHashMap<>();
+        if (codigos != null) {
+            codigos.forEach(codigo -> acumulados.put(codigo, new Acumulado()));
+        }
+
+        String filtro = codigos != null ? " AND codigo_ativo IN (" + placeholders(codigos.size()) + ")" : "";
+        Object[] parametros = parametros(carteiraId, codigos);
+        RowCallbackHandler dobra = rs -> {
+            String codigo = rs.getString(1).toUpperCase();
+            Acumulado acumulado = acumulados.computeIfAbsent(codigo, c -> new Acumulado());
+            BigDecimal precoUnitario = rs.getBigDecimal(4);
+            LocalDateTime data = rs.getTimestamp(5).toLocalDateTime();
+            if (acumulado.nome == null) {
+                acumulado.nome = rs.getString(6);
+                acumulado.tipo = rs.getString(7);
+                acumulado.primeiroPreco = precoUnitario;
+                acumulado.primeiraData = data;
+            }
+            CalculadoraPosicao.aplicar(acumulado.posicao, TipoTransacao.valueOf(rs.getString(2)),
+                    rs.getBigDecimal(3), precoUnitario, data);
+        };
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(String.format(SQL_TRANSACOES, filtro));
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setObject(i + 1, parametros[i]);
+            }
+            return ps;
+        }, dobra);
+        return acumulados;
+    }
+
+    /**
+     * Ativos da carteira por código em maiúsculas: {id, quantidade, preço de compra, preço atual, versão}
+     * (o primeiro de cada código, se houver duplicados). Para gravar, as linhas dos códigos reconstruídos
+     * ficam bloqueadas até o fim da transação (pelo índice carteira + código, sem travar os demais ativos
+     * da carteira): o conflito não depende do driver informar as linhas do batch.
+     * @param codigos códigos em maiúsculas ou null para todos os ativos da carteira
+     */
+    private Map<String, Object[]> buscarAtivos(Long carteiraId, List<String> codigos, boolean bloquear) {
+        String filtro = codigos != null ? " AND codigo IN (" + placeholders(codigos.size()) + ")" : "";
+        String sql = String.format(SQL_ATIVOS, filtro);
+        Map<String, Object[]> ativos = new HashMap<>();
+        jdbcTemplate.query(bloquear ? sql + " FOR UPDATE" : sql, rs -> {
+            ativos.putIfAbsent(rs.getString(2).toUpperCase(),
+                    new Object[] {rs.getLong(1), rs.getBigDecimal(3), rs.getBigDecimal(4), rs.getBigDecimal(5), rs.getLong(6)});
+        }, parametros(carteiraId, codigos));
+        return ativos;
+    }
+
+    private static String placeholders(int quantidade) {
+        return String.join(", ", Collections.nCopies(quantidade, "?"));
+    }
+
+    private static Object[] parametros(Long carteiraId, List<String> codigos) {
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(carteiraId);
+        if (codigos != null) {
+            parametros.addAll(codigos);
+        }
+        return parametros.toArray();
+    }
+
+    /**
+     * Posição em construção de um código e os dados da primeira transação (para criar o ativo)
+     */
+    private static class Acumulado {
+        private final CalculadoraPosicao.Posicao posicao = new CalculadoraPosicao.Posicao();
+        private String nome;
+        private String tipo;
+        private BigDecimal primeiroPreco;
+        private LocalDateTime primeiraData;
+    }
+
+    /**
+     * Posição reconstruída de um ativo
+     */
+    public static final class Resultado {
+        private final String codigo;
+        private Long ativoId;
+        private final BigDecimal quantidade;
+        private final BigDecimal precoMedio;
+        private final BigDecimal precoAtual;
+        private final BigDecimal resultadoRealizado;
+        private final int transacoes;
+        private final boolean quantidadeAjustada;
+        private final boolean criado;
+        private final boolean alterado;
+
+        Resultado(String codigo, Long ativoId, BigDecimal quantidade, BigDecimal precoMedio, BigDecimal precoAtual,
+                  CalculadoraPosicao.Posicao posicao, boolean quantidadeAjustada, boolean criado, boolean alterado) {
+            this.codigo = codigo;
+            this.ativoId = ativoId;
+            this.quantidade = quantidade;
+            this.precoMedio = precoMedio;
+            this.precoAtual = precoAtual;
+            this.resultadoRealizado = posicao.getResultadoRealizado().setScale(2, RoundingMode.HALF_UP);
+            this.transacoes = posicao.getTransacoes();
+            this.quantidadeAjustada = quantidadeAjustada;
+            this.criado = criado;
+            this.alterado = alterado;
+        }
+
+        public String getCodigo() {
+            return codigo;
+        }
+
+        public Long getAtivoId() {
+            return ativoId;
+        }
+
+        public BigDecimal getQuantidade() {
+            return quantidade;
+        }
+
+        public BigDecimal getPrecoMedio() {
+            return precoMedio;
+        }
+
+        public BigDecimal getResultadoRealizado() {
+            return resultadoRealizado;
+        }
+
+        public int getTransacoes() {
+            return transacoes;
+        }
+
+        /** Saídas maiores que as entradas: a quantidade foi gravada como zero */
+        public boolean isQuantidadeAjustada() {
+            return quantidadeAjustada;
+        }
+
+        public boolean isCriado() {
+            return criado;
+        }
+
+        public boolean isAlterado() {
+            return alterado;
+        }
+
+        /**
+         * Valor de mercado (mesma regra de CarteiraService.calcularValorMercadoPosicao)
+         */
+        public BigDecimal getValorMercado() {
+            if (quantidade.compareTo(BigDecimal.ZERO) <= 0 || precoMedio == null) {
+                return BigDecimal.ZERO;
+            }
+            return quantidade.multiply(precoAtual != null ? precoAtual : precoMedio);
+        }
+
+        /**
+         * Custo da posição: quantidade x preço médio
+         */
+        public BigDecimal getCusto() {
+            if (quantidade.compareTo(BigDecimal.ZERO) <= 0 || precoMedio == null) {
+                return BigDecimal.ZERO;
+            }
+            return quantidade.multiply(precoMedio);
+        }
+    }
+}
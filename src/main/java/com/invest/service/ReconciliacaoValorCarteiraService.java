@@ -0,0 +1,190 @@
+package com.invest.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reconciliação periódica do valor atual e do valor investido das carteiras
+ *
+ * As escritas de transações mantêm esses valores por variação (TransacaoService); este job
+ * recalcula todos a partir dos ativos em uma única consulta agregada, informa as carteiras
+ * cuja diferença passou da tolerância (arredondamentos acumulados, escritas fora do service)
+ * e, se configurado, corrige os valores em lote.
+ */
+@Service
+@Transactional
+public class ReconciliacaoValorCarteiraService {
+
+    // Mesma regra de CarteiraService.calcularValorAtualCarteira: apenas posições abertas
+    private static final String SQL_VALORES =
+            "SELECT c.id, c.valor_atual, c.valor_investido, COALESCE(v.valor, 0), COALESCE(v.investido, 0) " +
+            "FROM carteiras c LEFT JOIN (" +
+            "    SELECT carteira_id, " +
+            "           ROUND(SUM(quantidade * COALESCE(preco_atual, preco_compra)), 2) AS valor, " +
+            "           ROUND(SUM(quantidade * preco_compra), 2) AS investido " +
+            "    FROM ativos WHERE quantidade > 0 GROUP BY carteira_id" +
+            ") v ON v.carteira_id = c.id";
+
+    // Só corrige se os valores não mudaram desde a leitura (uma transação concorrente já aplicou sua variação)
+    private static final String SQL_CORRIGIR =
+            "UPDATE carteiras SET valor_atual = ?, valor_investido = ?, data_atualizacao = ? " +
+            "WHERE id = ? AND valor_atual <=> ? AND valor_investido <=> ?";
+
+    // Recalcula as carteiras informadas em um único UPDATE; só grava as que mudaram
+    private static final String SQL_RECALCULAR =
+            "UPDATE carteiras c LEFT JOIN (" +
+            "    SELECT carteira_id, " +
+            "           ROUND(SUM(quantidade * COALESCE(preco_atual, preco_compra)), 2) AS valor, " +
+            "           ROUND(SUM(quantidade * preco_compra), 2) AS investido " +
+            "    FROM ativos WHERE quantidade > 0 AND carteira_id IN (%1$s) GROUP BY carteira_id" +
+            ") v ON v.carteira_id = c.id " +
+            "SET c.valor_atual = COALESCE(v.valor, 0), c.valor_investido = COALESCE(v.investido, 0), c.data_atualizacao = ? " +
+            "WHERE c.id IN (%1$s) " +
+            "AND NOT (c.valor_atual <=> COALESCE(v.valor, 0) AND c.valor_investido <=> COALESCE(v.investido, 0))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Value("${carteira.reconciliacao.tolerancia:0.05}")
+    private BigDecimal tolerancia;
+
+    @Value("${carteira.reconciliacao.corrigir:true}")
+    private boolean corrigir;
+
+    private volatile Map<String, Object> ultimoRelatorio;
+
+    @Scheduled(initialDelayString = "${carteira.reconciliacao.intervalo-ms:3600000}",
+               fixedDelayString = "${carteira.reconciliacao.intervalo-ms:3600000}")
+    public void reconciliarPeriodicamente() {
+        try {
+            reconciliar();
+        } catch (Exception e) {
+            System.err.println("❌ Erro na reconciliação do valor das carteiras: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compara os valores mantidos por variação com os recalculados a partir dos ativos
+     * @return relatório com carteiras verificadas, divergentes, maior diferença e tempo gasto
+     */
+    public Map<String, Object> reconciliar() {
+        long inicio = System.currentTimeMillis();
+        List<Map<String, Object>> divergencias = new ArrayList<>();
+        List<Object[]> correcoes = new ArrayList<>();
+        BigDecimal maiorDiferenca = BigDecimal.ZERO;
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> linhas = jdbcTemplate.query(SQL_VALORES, (rs, i) -> new Object[] {
+                rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3), rs.getBigDecimal(4), rs.getBigDecimal(5)});
+
+        for (Object[] linha : linhas) {
+            Long carteiraId = (Long) linha[0];
+            BigDecimal valorAtual = (BigDecimal) linha[1];
+            BigDecimal valorInvestido = (BigDecimal) linha[2];
+            BigDecimal valorEsperado = ((BigDecimal) linha[3]).setScale(2, RoundingMode.HALF_UP);
+            BigDecimal investidoEsperado = ((BigDecimal) linha[4]).setScale(2, RoundingMode.HALF_UP);
+
+            BigDecimal diferencaValor = diferenca(valorAtual, valorEsperado);
+            BigDecimal diferencaInvestido = diferenca(valorInvestido, investidoEsperado);
+            BigDecimal diferenca = diferencaValor.max(diferencaInvestido);
+            maiorDiferenca = maiorDiferenca.max(diferenca);
+
+            // Valores nulos (carteiras antigas) sempre são inicializados
+            boolean divergente = diferenca.compareTo(tolerancia) > 0;
+            if (divergente || valorAtual == null || valorInvestido == null) {
+                if (divergente) {
+                    Map<String, Object> divergencia = new LinkedHashMap<>();
+                    divergencia.put("carteiraId", carteiraId);
+                    divergencia.put("valorAtual", valorAtual);
+                    divergencia.put("valorAtualEsperado", valorEsperado);
+                    divergencia.put("valorInvestido", valorInvestido);
+                    divergencia.put("valorInvestidoEsperado", investidoEsperado);
+                    divergencias.add(divergencia);
+                }
+                correcoes.add(new Object[] {valorEsperado, investidoEsperado, agora, carteiraId, valorAtual, valorInvestido});
+            }
+        }
+
+        int corrigidas = 0;
+        if (corrigir && !correcoes.isEmpty()) {
+            for (int linhasAlteradas : jdbcTemplate.batchUpdate(SQL_CORRIGIR, correcoes)) {
+                if (linhasAlteradas > 0 || linhasAlteradas == Statement.SUCCESS_NO_INFO) {
+                    corrigidas++;
+                }
+            }
+        }
+
+        long tempo = System.currentTimeMillis() - inicio;
+        if (!divergencias.isEmpty()) {
+            System.out.println("⚠️ Reconciliação: " + divergencias.size() + " carteiras com divergência acima de "
+                    + tolerancia + " (maior: " + maiorDiferenca + ")");
+        }
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("carteirasVerificadas", linhas.size());
+        relatorio.put("carteirasDivergentes", divergencias.size());
+        relatorio.put("carteirasCorrigidas", corrigidas);
+        relatorio.put("maiorDiferenca", maiorDiferenca);
+        relatorio.put("tolerancia", tolerancia);
+        relatorio.put("divergencias", divergencias);
+        relatorio.put("tempoMs", tempo);
+        relatorio.put("dataExecucao", LocalDateTime.now());
+        ultimoRelatorio = relatorio;
+        return relatorio;
+    }
+
+    /**
+     * Recalcula o valor atual e investido das carteiras informadas a partir dos ativos,
+     * em um único UPDATE independente da quantidade de carteiras
+     * @return quantidade de carteiras cujos valores mudaram
+     */
+    public int recalcularCarteiras(Collection<Long> carteiraIds) {
+        if (carteiraIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(carteiraIds));
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+
+        List<Object> parametros = new ArrayList<>(ids.size() * 2 + 1);
+        parametros.addAll(ids);
+        parametros.add(Timestamp.valueOf(LocalDateTime.now()));
+        parametros.addAll(ids);
+
+        int atualizadas = jdbcTemplate.update(String.format(SQL_RECALCULAR, placeholders), parametros.toArray());
+        if (atualizadas > 0) {
+            ids.forEach(rentabilidadeCacheService::invalidarCarteira);
+        }
+        return atualizadas;
+    }
+
+    /**
+     * Relatório da última reconciliação (null se ainda não rodou)
+     */
+    public Map<String, Object> getUltimoRelatorio() {
+        return ultimoRelatorio;
+    }
+
+    private BigDecimal diferenca(BigDecimal atual, BigDecimal esperado) {
+        return atual != null ? atual.subtract(esperado).abs() : esperado.abs();
+    }
+}
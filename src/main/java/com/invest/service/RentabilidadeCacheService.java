@@ -0,0 +1,216 @@
+package com.invest.service;
+
+import com.invest.dto.CarteiraRentabilidadeResponse;
+import com.invest.model.Carteira;
+import com.invest.service.external.GoogleSheetsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de rentabilidade calculada por carteira
+ *
+ * Cada carteira tem uma versão que é incrementada a cada escrita de transação ou atualização
+ * de preços. O resultado fica válido enquanto a versão da carteira e a versão das cotações
+ * forem as mesmas do momento do cálculo e o dia não tiver mudado (retornos por período, XIRR
+ * e o ponto provisório da série dependem da data atual). Os endpoints de rentabilidade passam
+ * a ser projeções sobre um único cálculo.
+ */
+@Service
+public class RentabilidadeCacheService {
+
+    @Autowired
+    private RentabilidadeService rentabilidadeService;
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Value("${rentabilidade.cache.max-entradas:500}")
+    private int maxEntradas;
+
+    private final Map<Long, AtomicLong> versoesCarteira = new ConcurrentHashMap<>();
+
+    // LRU limitado por maxEntradas (acesso sincronizado no próprio mapa)
+    private final LinkedHashMap<Long, EntradaCache> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, EntradaCache> eldest) {
+            if (size() > maxEntradas) {
+                remocoes.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong remocoes = new AtomicLong();
+
+    /**
+     * Retorna a rentabilidade da carteira, recalculando apenas se a versão mudou
+     */
+    public CarteiraRentabilidadeResponse getRentabilidadeCarteira(Long carteiraId) {
+        // Lê as versões ANTES do cálculo: uma escrita concorrente invalida o resultado
+        long versaoCarteira = getVersaoCarteira(carteiraId);
+        long versaoCotacoes = googleSheetsService.getVersaoCotacoes();
+        LocalDate hoje = LocalDate.now();
+
+        EntradaCache entrada;
+        synchronized (cache) {
+            entrada = cache.get(carteiraId);
+        }
+        if (entrada != null && entrada.isValida(versaoCarteira, versaoCotacoes, hoje)) {
+            hits.incrementAndGet();
+            return entrada.response;
+        }
+
+        misses.incrementAndGet();
+        CarteiraRentabilidadeResponse response = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+        synchronized (cache) {
+            cache.put(carteiraId, new EntradaCache(versaoCarteira, versaoCotacoes, hoje, response));
+        }
+        return response;
+    }
+
+    /**
+     * Rentabilidade de várias carteiras: as que estão válidas no cache são reaproveitadas e as
+     * demais são calculadas juntas (ativos e transações de todas em duas consultas).
+     * O mapa mantém a ordem da lista recebida.
+     */
+    public Map<Long, CarteiraRentabilidadeResponse> getRentabilidadeCarteiras(List<Carteira> carteiras) {
+        return getRentabilidadeCarteiras(carteiras, true);
+    }
+
+    /**
+     * Como getRentabilidadeCarteiras, escolhendo se os resultados calculados entram no cache.
+     * Relatórios em lote usam armazenar = false para não expulsar as carteiras consultadas na tela.
+     */
+    public Map<Long, CarteiraRentabilidadeResponse> getRentabilidadeCarteiras(List<Carteira> carteiras, boolean armazenar) {
+        long versaoCotacoes = googleSheetsService.getVersaoCotacoes();
+        LocalDate hoje = LocalDate.now();
+        Map<Long, CarteiraRentabilidadeResponse> resultado = new LinkedHashMap<>();
+        Map<Long, Long> versoes = new HashMap<>();
+        List<Carteira> pendentes = new ArrayList<>();
+
+        for (Carteira carteira : carteiras) {
+            long versaoCarteira = getVersaoCarteira(carteira.getId());
+            EntradaCache entrada;
+            synchronized (cache) {
+                entrada = cache.get(carteira.getId());
+            }
+            if (entrada != null && entrada.isValida(versaoCarteira, versaoCotacoes, hoje)) {
+                hits.incrementAndGet();
+                resultado.put(carteira.getId(), entrada.response);
+            } else {
+                resultado.put(carteira.getId(), null); // Reserva a posição na ordem original
+                versoes.put(carteira.getId(), versaoCarteira);
+                pendentes.add(carteira);
+            }
+        }
+
+        if (!pendentes.isEmpty()) {
+            misses.addAndGet(pendentes.size());
+            Map<Long, CarteiraRentabilidadeResponse> calculadas = rentabilidadeService.calcularRentabilidadeCarteiras(pendentes);
+            if (armazenar) {
+                synchronized (cache) {
+                    calculadas.forEach((id, response) -> cache.put(id, new EntradaCache(versoes.get(id), versaoCotacoes, hoje, response)));
+                }
+            }
+            resultado.putAll(calculadas);
+        }
+        return resultado;
+    }
+
+    /**
+     * Versão atual da carteira (0 se nunca foi alterada desde o início da aplicação)
+     */
+    public long getVersaoCarteira(Long carteiraId) {
+        AtomicLong versao = versoesCarteira.get(carteiraId);
+        return versao != null ? versao.get() : 0L;
+    }
+
+    /**
+     * Invalida a rentabilidade da carteira.
+     * Dentro de uma transação, a versão só é incrementada após o commit, para que um cálculo
+     * concorrente não guarde dados antigos sob a nova versão.
+     */
+    public void invalidarCarteira(Long carteiraId) {
+        if (carteiraId == null) {
+            return;
+        }
+        incrementarVersao(carteiraId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    incrementarVersao(carteiraId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove todas as entradas do cache
+     */
+    public void limpar() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Estatísticas do cache (hits, misses, tamanho)
+     */
+    public Map<String, Object> getEstatisticas() {
+        Map<String, Object> estatisticas = new HashMap<>();
+        long totalHits = hits.get();
+        long totalMisses = misses.get();
+        long total = totalHits + totalMisses;
+        synchronized (cache) {
+            estatisticas.put("tamanho", cache.size());
+        }
+        estatisticas.put("maxEntradas", maxEntradas);
+        estatisticas.put("hits", totalHits);
+        estatisticas.put("misses", totalMisses);
+        estatisticas.put("remocoes", remocoes.get());
+        estatisticas.put("taxaAcerto", total > 0 ? (double) totalHits / total : 0.0);
+        estatisticas.put("versaoCotacoes", googleSheetsService.getVersaoCotacoes());
+        return estatisticas;
+    }
+
+    private void incrementarVersao(Long carteiraId) {
+        versoesCarteira.computeIfAbsent(carteiraId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Resultado calculado junto com as versões e a data usadas no cálculo
+     */
+    private static class EntradaCache {
+        private final long versaoCarteira;
+        private final long versaoCotacoes;
+        private final LocalDate data;
+        private final CarteiraRentabilidadeResponse response;
+
+        EntradaCache(long versaoCarteira, long versaoCotacoes, LocalDate data, CarteiraRentabilidadeResponse response) {
+            this.versaoCarteira = versaoCarteira;
+            this.versaoCotacoes = versaoCotacoes;
+            this.data = data;
+            this.response = response;
+        }
+
+        boolean isValida(long versaoCarteira, long versaoCotacoes, LocalDate hoje) {
+            return this.versaoCarteira == versaoCarteira && this.versaoCotacoes == versaoCotacoes && data.equals(hoje);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.invest.service;
+
+import com.invest.dto.CarteiraRentabilidadeResponse;
+import com.invest.dto.InvestidorRentabilidadeResponse;
+import com.invest.dto.RentabilidadeResponse;
+import com.invest.model.Carteira;
+import com.invest.model.Investidor;
+import com.invest.repository.CarteiraRepository;
+import com.invest.repository.InvestidorRepository;
+import com.invest.utils.AritmeticaFixa;
+import com.invest.utils.CalculadoraRisco;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Service para a rentabilidade consolidada de todas as carteiras de um investidor
+ *
+ * A rentabilidade de cada carteira vem do cache quando ainda é válida; as que faltam são
+ * calculadas juntas, com um número fixo de consultas (RentabilidadeService.calcularRentabilidadeCarteiras).
+ * As posições são somadas por código de ativo entre as carteiras.
+ */
+@Service
+@Transactional(readOnly = true)
+public class RentabilidadeInvestidorService {
+
+    private static final BigDecimal CEM = BigDecimal.valueOf(100);
+
+    @Autowired
+    private InvestidorRepository investidorRepository;
+
+    @Autowired
+    private CarteiraRepository carteiraRepository;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private RiscoCarteiraService riscoCarteiraService;
+
+    /**
+     * Calcula a rentabilidade consolidada do investidor
+     * Sem transação de leitura própria: o cálculo das carteiras e do risco estende a série diária
+     * em transações de escrita, que não devem ficar aninhadas a esta (duas conexões por requisição).
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public InvestidorRentabilidadeResponse calcularRentabilidadeInvestidor(Long investidorId) {
+        Investidor investidor = investidorRepository.findById(investidorId)
+                .orElseThrow(() -> new RuntimeException("Investidor não encontrado: " + investidorId));
+
+        List<Carteira> carteiras = carteiraRepository.findByInvestidor(investidor);
+        Map<Long, CarteiraRentabilidadeResponse> rentabilidades = rentabilidadeCacheService.getRentabilidadeCarteiras(carteiras);
+
+        InvestidorRentabilidadeResponse response = new InvestidorRentabilidadeResponse(investidor.getId(), investidor.getNome());
+        response.setTotalCarteiras(carteiras.size());
+        response.setDataCalculo(LocalDateTime.now());
+
+        AritmeticaFixa.Soma somaInvestido = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaMercado = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaComProventos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaProventos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaCustos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+
+        Map<String, RentabilidadeResponse> posicoes = new TreeMap<>();
+        List<CarteiraRentabilidadeResponse> resumos = new ArrayList<>(rentabilidades.size());
+        for (CarteiraRentabilidadeResponse carteira : rentabilidades.values()) {
+            somaInvestido.adicionar(valor(carteira.getValorTotalInvestido()));
+            somaMercado.adicionar(valor(carteira.getValorAtualMercado()));
+            somaComProventos.adicionar(valor(carteira.getValorAtualComProventos()));
+            somaProventos.adicionar(valor(carteira.getValorTotalProventos()));
+            somaCustos.adicionar(valor(carteira.getTotalCustos()));
+
+            if (carteira.getAtivos() != null) {
+                for (RentabilidadeResponse ativo : carteira.getAtivos()) {
+                    acumularPosicao(posicoes, ativo);
+                }
+            }
+            resumos.add(resumirCarteira(carteira));
+        }
+
+        response.setValorTotalInvestido(somaInvestido.getResultado());
+        response.setValorAtualMercado(somaMercado.getResultado());
+        response.setValorAtualComProventos(somaComProventos.getResultado());
+        response.setValorTotalProventos(somaProventos.getResultado());
+        response.setTotalCustos(somaCustos.getResultado());
+        calcularRentabilidade(response);
+
+        List<RentabilidadeResponse> listaPosicoes = new ArrayList<>(posicoes.values());
+        listaPosicoes.forEach(this::calcularRentabilidadePosicao);
+        response.setPosicoes(listaPosicoes);
+        response.setCarteiras(resumos);
+
+        calcularDistribuicao(response, rentabilidades.values());
+        calcularRisco(response, new ArrayList<>(rentabilidades.keySet()));
+
+        return response;
+    }
+
+    /**
+     * Soma a posição de um ativo à posição consolidada do mesmo código
+     */
+    private void acumularPosicao(Map<String, RentabilidadeResponse> posicoes, RentabilidadeResponse ativo) {
+        RentabilidadeResponse posicao = posicoes.get(ativo.getCodigoAtivo());
+        if (posicao == null) {
+            posicao = new RentabilidadeResponse();
+            posicao.setCodigoAtivo(ativo.getCodigoAtivo());
+            posicao.setNomeAtivo(ativo.getNomeAtivo());
+            posicao.setPrecoAtual(ativo.getPrecoAtual());
+            posicao.setQuantidadeAtual(BigDecimal.ZERO);
+            posicao.setPrecoMedioCompra(BigDecimal.ZERO);
+            posicao.setValorTotalInvestido(BigDecimal.ZERO);
+            posicao.setValorTotalCompras(BigDecimal.ZERO);
+            posicao.setValorTotalVendas(BigDecimal.ZERO);
+            posicao.setValorTotalProventos(BigDecimal.ZERO);
+            posicao.setValorAtualMercado(BigDecimal.ZERO);
+            posicao.setValorAtualComProventos(BigDecimal.ZERO);
+            posicao.setTotalTaxasCorretagem(BigDecimal.ZERO);
+            posicao.setTotalImpostos(BigDecimal.ZERO);
+            posicao.setTotalCustos(BigDecimal.ZERO);
+            posicoes.put(ativo.getCodigoAtivo(), posicao);
+        }
+
+        // Preço médio ponderado pela quantidade de cada carteira (acumulado como custo total até o final)
+        BigDecimal quantidade = valor(ativo.getQuantidadeAtual());
+        posicao.setPrecoMedioCompra(posicao.getPrecoMedioCompra().add(valor(ativo.getPrecoMedioCompra()).multiply(quantidade)));
+        posicao.setQuantidadeAtual(posicao.getQuantidadeAtual().add(quantidade));
+        posicao.setValorTotalInvestido(posicao.getValorTotalInvestido().add(valor(ativo.getValorTotalInvestido())));
+        posicao.setValorTotalCompras(posicao.getValorTotalCompras().add(valor(ativo.getValorTotalCompras())));
+        posicao.setValorTotalVendas(posicao.getValorTotalVendas().add(valor(ativo.getValorTotalVendas())));
+        posicao.setValorTotalProventos(posicao.getValorTotalProventos().add(valor(ativo.getValorTotalProventos())));
+        posicao.setValorAtualMercado(posicao.getValorAtualMercado().add(valor(ativo.getValorAtualMercado())));
+        posicao.setValorAtualComProventos(posicao.getValorAtualComProventos().add(valor(ativo.getValorAtualComProventos())));
+        posicao.setTotalTaxasCorretagem(posicao.getTotalTaxasCorretagem().add(valor(ativo.getTotalTaxasCorretagem())));
+        posicao.setTotalImpostos(posicao.getTotalImpostos().add(valor(ativo.getTotalImpostos())));
+        posicao.setTotalCustos(posicao.getTotalCustos().add(valor(ativo.getTotalCustos())));
+
+        if (posicao.getDataPrimeiraCompra() == null
+                || (ativo.getDataPrimeiraCompra() != null && ativo.getDataPrimeiraCompra().isBefore(posicao.getDataPrimeiraCompra()))) {
+            posicao.setDataPrimeiraCompra(ativo.getDataPrimeiraCompra());
+        }
+        if (posicao.getDataUltimaTransacao() == null
+                || (ativo.getDataUltimaTransacao() != null && ativo.getDataUltimaTransacao().isAfter(posicao.getDataUltimaTransacao()))) {
+            posicao.setDataUltimaTransacao(ativo.getDataUltimaTransacao());
+        }
+    }
+
+    /**
+     * Finaliza a posição consolidada: preço médio e rentabilidade sobre os totais somados
+     */
+    private void calcularRentabilidadePosicao(RentabilidadeResponse posicao) {
+        BigDecimal quantidade = posicao.getQuantidadeAtual();
+        posicao.setPrecoMedioCompra(quantidade.compareTo(BigDecimal.ZERO) > 0
+                ? posicao.getPrecoMedioCompra().divide(quantidade, 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO);
+
+        BigDecimal investido = posicao.getValorTotalInvestido();
+        BigDecimal rentabilidadeBruta = posicao.getValorAtualMercado().subtract(investido);
+        BigDecimal rentabilidadeLiquida = posicao.getValorAtualComProventos().subtract(investido).subtract(posicao.getTotalCustos());
+        posicao.setRentabilidadeBruta(rentabilidadeBruta);
+        posicao.setRentabilidadeLiquida(rentabilidadeLiquida);
+        posicao.setRentabilidadePercentualBruta(percentual(rentabilidadeBruta, investido));
+        posicao.setRentabilidadePercentualLiquida(percentual(rentabilidadeLiquida, investido));
+        posicao.setDataAtualizacao(LocalDateTime.now());
+    }
+
+    /**
+     * Rentabilidade bruta e líquida do investidor (mesmas fórmulas da carteira)
+     */
+    private void calcularRentabilidade(InvestidorRentabilidadeResponse response) {
+        BigDecimal investido = response.getValorTotalInvestido();
+        BigDecimal rentabilidadeBruta = response.getValorAtualMercado().subtract(investido);
+        BigDecimal rentabilidadeLiquida = response.getValorAtualComProventos().subtract(investido).subtract(response.getTotalCustos());
+        response.setRentabilidadeBruta(rentabilidadeBruta);
+        response.setRentabilidadeLiquida(rentabilidadeLiquida);
+        response.setRentabilidadePercentualBruta(percentual(rentabilidadeBruta, investido));
+        response.setRentabilidadePercentualLiquida(percentual(rentabilidadeLiquida, investido));
+    }
+
+    /**
+     * Distribuição por tipo: percentuais de cada carteira ponderados pelo seu valor de mercado
+     */
+    private void calcularDistribuicao(InvestidorRentabilidadeResponse response, Iterable<CarteiraRentabilidadeResponse> carteiras) {
+        BigDecimal valorTotal = response.getValorAtualMercado();
+        if (valorTotal.compareTo(BigDecimal.ZERO) <= 0) {
+            return;
+        }
+
+        BigDecimal acoes = BigDecimal.ZERO;
+        BigDecimal fiis = BigDecimal.ZERO;
+        BigDecimal etfs = BigDecimal.ZERO;
+        BigDecimal rendaFixa = BigDecimal.ZERO;
+        BigDecimal cripto = BigDecimal.ZERO;
+        for (CarteiraRentabilidadeResponse carteira : carteiras) {
+            BigDecimal peso = valor(carteira.getValorAtualMercado());
+            acoes = acoes.add(valor(carteira.getPercentualAcoes()).multiply(peso));
+            fiis = fiis.add(valor(carteira.getPercentualFIIs()).multiply(peso));
+            etfs = etfs.add(valor(carteira.getPercentualETFs()).multiply(peso));
+            rendaFixa = rendaFixa.add(valor(carteira.getPercentualRendaFixa()).multiply(peso));
+            cripto = cripto.add(valor(carteira.getPercentualCripto()).multiply(peso));
+        }
+
+        response.setPercentualAcoes(acoes.divide(valorTotal, 4, RoundingMode.HALF_UP));
+        response.setPercentualFIIs(fiis.divide(valorTotal, 4, RoundingMode.HALF_UP));
+        response.setPercentualETFs(etfs.divide(valorTotal, 4, RoundingMode.HALF_UP));
+        response.setPercentualRendaFixa(rendaFixa.divide(valorTotal, 4, RoundingMode.HALF_UP));
+        response.setPercentualCripto(cripto.divide(valorTotal, 4, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * Métricas de risco sobre o retorno diário consolidado das carteiras
+     */
+    private void calcularRisco(InvestidorRentabilidadeResponse response, List<Long> carteiraIds) {
+        if (carteiraIds.isEmpty()) {
+            return;
+        }
+        CalculadoraRisco.Metricas metricas = riscoCarteiraService.calcularRiscoConsolidado(carteiraIds);
+        if (metricas.getAmostras() < 2) {
+            return; // Histórico insuficiente
+        }
+
+        response.setVolatilidade(paraPercentual(metricas.getVolatilidadeAnual()));
+        response.setSharpeRatio(BigDecimal.valueOf(metricas.getSharpeRatio()).setScale(4, RoundingMode.HALF_UP));
+        response.setMaxDrawdown(paraPercentual(metricas.getDrawdownMaximo()));
+        response.setVar95(paraPercentual(riscoCarteiraService.getVar95(metricas)));
+    }
+
+    /**
+     * Cópia da rentabilidade da carteira sem a lista de ativos (já consolidada em posicoes)
+     */
+    private CarteiraRentabilidadeResponse resumirCarteira(CarteiraRentabilidadeResponse carteira) {
+        CarteiraRentabilidadeResponse resumo = new CarteiraRentabilidadeResponse(carteira.getCarteiraId(), carteira.getCarteiraNome());
+        resumo.setValorTotalInvestido(carteira.getValorTotalInvestido());
+        resumo.setValorAtualMercado(carteira.getValorAtualMercado());
+        resumo.setValorAtualComProventos(carteira.getValorAtualComProventos());
+        resumo.setRentabilidadeBruta(carteira.getRentabilidadeBruta());
+        resumo.setRentabilidadeLiquida(carteira.getRentabilidadeLiquida());
+        resumo.setRentabilidadePercentualBruta(carteira.getRentabilidadePercentualBruta());
+        resumo.setRentabilidadePercentualLiquida(carteira.getRentabilidadePercentualLiquida());
+        resumo.setRentabilidadePercentualAnual(carteira.getRentabilidadePercentualAnual());
+        resumo.setRentabilidadeTWR(carteira.getRentabilidadeTWR());
+        resumo.setRentabilidadeXIRR(carteira.getRentabilidadeXIRR());
+        resumo.setVolatilidade(carteira.getVolatilidade());
+        resumo.setSharpeRatio(carteira.getSharpeRatio());
+        resumo.setMaxDrawdown(carteira.getMaxDrawdown());
+        resumo.setVar95(carteira.getVar95());
+        resumo.setTotalAtivos(carteira.getTotalAtivos());
+        resumo.setDataUltimaAtualizacao(carteira.getDataUltimaAtualizacao());
+        return resumo;
+    }
+
+    private BigDecimal percentual(BigDecimal valor, BigDecimal base) {
+        if (base.compareTo(BigDecimal.ZERO) <= 0) {
+            return BigDecimal.ZERO;
+        }
+        return valor.divide(base, 4, RoundingMode.HALF_UP).multiply(CEM);
+    }
+
+    private BigDecimal paraPercentual(double valor) {
+        return BigDecimal.valueOf(valor * 100).setScale(4, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal valor(BigDecimal valor) {
+        return valor != null ? valor : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,131 @@
+package com.invest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invest.dto.CarteiraRentabilidadeResponse;
+import com.invest.dto.RentabilidadeLoteRequest;
+import com.invest.model.Carteira;
+import com.invest.model.Investidor;
+import com.invest.repository.CarteiraRepository;
+import com.invest.repository.InvestidorRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rentabilidade de muitas carteiras para relatórios, escrita como NDJSON (uma carteira por linha)
+ *
+ * As carteiras são processadas em blocos: cada bloco busca carteiras, ativos, transações, séries
+ * diárias e métricas de risco em consultas compartilhadas (RentabilidadeService.calcularRentabilidadeCarteiras),
+ * escreve as linhas e descarta os resultados antes do próximo. A memória depende do tamanho do
+ * bloco, não da quantidade de carteiras. Sem @Transactional de propósito, e o contexto de
+ * persistência (compartilhado pela requisição com open-in-view) é limpo ao fim de cada bloco
+ * para as entidades lidas não se acumularem durante o relatório.
+ */
+@Service
+public class RentabilidadeLoteService {
+
+    private static final byte[] NOVA_LINHA = {'\n'};
+
+    @Autowired
+    private CarteiraRepository carteiraRepository;
+
+    @Autowired
+    private InvestidorRepository investidorRepository;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${rentabilidade.lote.tamanho-bloco:200}")
+    private int tamanhoBloco;
+
+    /**
+     * Resolve os IDs das carteiras a partir da lista informada ou dos filtros por investidor e perfil
+     */
+    public List<Long> resolverCarteiras(RentabilidadeLoteRequest request) {
+        if (request.getCarteiraIds() != null && !request.getCarteiraIds().isEmpty()) {
+            // Remove duplicados mantendo a ordem pedida
+            return new ArrayList<>(new LinkedHashSet<>(request.getCarteiraIds()));
+        }
+
+        if (request.getInvestidorId() != null) {
+            Investidor investidor = investidorRepository.findById(request.getInvestidorId())
+                    .orElseThrow(() -> new RuntimeException("Investidor não encontrado: " + request.getInvestidorId()));
+            List<Carteira> carteiras = request.getPerfilRisco() != null
+                    ? carteiraRepository.findByInvestidorAndPerfilRisco(investidor, request.getPerfilRisco())
+                    : carteiraRepository.findByInvestidor(investidor);
+            return carteiras.stream().map(Carteira::getId).toList();
+        }
+
+        if (request.getPerfilRisco() != null) {
+            return carteiraRepository.findIdsByPerfilRisco(request.getPerfilRisco());
+        }
+
+        throw new RuntimeException("Informe carteiraIds, investidorId ou perfilRisco");
+    }
+
+    /**
+     * Calcula e escreve a rentabilidade de cada carteira, bloco a bloco, na ordem dos IDs.
+     * Carteiras inexistentes ou com erro de cálculo geram uma linha com "erro".
+     */
+    public void escreverNdjson(List<Long> carteiraIds, OutputStream saida) throws IOException {
+        long inicio = System.currentTimeMillis();
+        int erros = 0;
+
+        for (int de = 0; de < carteiraIds.size(); de += tamanhoBloco) {
+            List<Long> bloco = carteiraIds.subList(de, Math.min(de + tamanhoBloco, carteiraIds.size()));
+
+            Map<Long, CarteiraRentabilidadeResponse> resultados;
+            String erroBloco = null;
+            try {
+                List<Carteira> carteiras = carteiraRepository.findAllById(bloco);
+                resultados = rentabilidadeCacheService.getRentabilidadeCarteiras(carteiras, false);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Erro ao calcular bloco de rentabilidade: " + e.getMessage());
+                resultados = Map.of();
+                erroBloco = e.getMessage();
+            } finally {
+                // Nada é alterado aqui: solta as entidades do bloco sem flush
+                entityManager.clear();
+            }
+
+            for (Long carteiraId : bloco) {
+                CarteiraRentabilidadeResponse response = resultados.get(carteiraId);
+                if (response != null) {
+                    saida.write(objectMapper.writeValueAsBytes(response));
+                } else {
+                    erros++;
+                    saida.write(objectMapper.writeValueAsBytes(linhaErro(carteiraId,
+                            erroBloco != null ? erroBloco : "Carteira não encontrada: " + carteiraId)));
+                }
+                saida.write(NOVA_LINHA);
+            }
+            saida.flush();
+        }
+
+        System.out.println("📊 Rentabilidade em lote: " + carteiraIds.size() + " carteiras (" + erros + " com erro) em "
+                + (System.currentTimeMillis() - inicio) + " ms");
+    }
+
+    private Map<String, Object> linhaErro(Long carteiraId, String mensagem) {
+        Map<String, Object> linha = new LinkedHashMap<>();
+        linha.put("carteiraId", carteiraId);
+        linha.put("erro", mensagem);
+        return linha;
+    }
+}
@@ -4,17 +4,36 @@ import com.invest.dto.CarteiraRentabilidadeResponse;
 import com.invest.dto.RentabilidadeResponse;
 import com.invest.model.*;
 import com.invest.repository.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import com.invest.utils.AritmeticaFixa;
+import com.invest.utils.CalculadoraDistribuicao;
 import com.invest.utils.CalculadoraImpostos;
+import com.invest.utils.CalculadoraRetorno;
+import com.invest.utils.CalculadoraRisco;
 
 /**
  * Service para cálculos de rentabilidade de ativos e carteiras
@@ -32,6 +51,40 @@ public class RentabilidadeService {
     @Autowired
     private CarteiraRepository carteiraRepository;
 
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    private RiscoCarteiraService riscoCarteiraService;
+
+    // Cálculo paralelo por ativo (opcional): só para carteiras com ao menos limiteAtivos ativos
+    @Value("${rentabilidade.paralelo.habilitado:false}")
+    private boolean paraleloHabilitado;
+
+    @Value("${rentabilidade.paralelo.limite-ativos:50}")
+    private int paraleloLimiteAtivos;
+
+    // 0 = número de processadores
+    @Value("${rentabilidade.paralelo.threads:0}")
+    private int paraleloThreads;
+
+    private ForkJoinPool executorParalelo;
+
+    @PostConstruct
+    public void iniciarExecutor() {
+        if (paraleloHabilitado) {
+            int threads = paraleloThreads > 0 ? paraleloThreads : Runtime.getRuntime().availableProcessors();
+            executorParalelo = new ForkJoinPool(threads);
+        }
+    }
+
+    @PreDestroy
+    public void encerrarExecutor() {
+        if (executorParalelo != null) {
+            executorParalelo.shutdown();
+        }
+    }
+
     /**
      * Calcula rentabilidade de um ativo específico
      */
@@ -42,6 +95,13 @@ public class RentabilidadeService {
         Carteira carteira = ativo.getCarteira();
         List<Transacao> transacoes = transacaoRepository.findByCarteiraAndCodigoAtivo(carteira, ativo.getCodigo());
 
+        return montarRentabilidadeAtivo(ativo, transacoes);
+    }
+
+    /**
+     * Monta a rentabilidade de um ativo a partir das suas transações já carregadas
+     */
+    private RentabilidadeResponse montarRentabilidadeAtivo(Ativo ativo, List<Transacao> transacoes) {
         RentabilidadeResponse response = new RentabilidadeResponse(
                 ativo.getId(), ativo.getCodigo(), ativo.getNome()
         );
@@ -56,6 +116,7 @@ public class RentabilidadeService {
         calcularRentabilidade(response);
         calcularMetricasAdicionais(response, transacoes);
         calcularDatas(response, transacoes);
+        calcularRetornosPonderados(response, transacoes);
 
         return response;
     }
@@ -67,6 +128,54 @@ public class RentabilidadeService {
         Carteira carteira = carteiraRepository.findById(carteiraId)
                 .orElseThrow(() -> new RuntimeException("Carteira não encontrada: " + carteiraId));
 
+        // Busca ativos diretamente do repository para evitar LazyInitializationException
+        List<Ativo> ativos = ativoRepository.findByCarteira(carteira);
+
+        // Carrega todas as transações da carteira de uma vez, já com o ativo
+        List<Transacao> transacoes = transacaoRepository.findByCarteiraWithAtivo(carteira);
+
+        return calcularRentabilidadeCarteira(carteira, ativos, transacoes,
+                riscoCarteiraService.calcularRisco(carteiraId),
+                serieValorCarteiraService.calcularRetornosPorPeriodo(carteiraId));
+    }
+
+    /**
+     * Calcula a rentabilidade de várias carteiras buscando ativos, transações e a série diária
+     * de todas elas de uma vez (sem consultas por carteira). O mapa mantém a ordem da lista recebida.
+     */
+    public Map<Long, CarteiraRentabilidadeResponse> calcularRentabilidadeCarteiras(List<Carteira> carteiras) {
+        Map<Long, CarteiraRentabilidadeResponse> resultado = new LinkedHashMap<>();
+        if (carteiras.isEmpty()) {
+            return resultado;
+        }
+
+        // getId() do proxy da carteira não dispara consulta
+        Map<Long, List<Ativo>> ativosPorCarteira = ativoRepository.findByCarteiraIn(carteiras).stream()
+                .collect(Collectors.groupingBy(a -> a.getCarteira().getId()));
+        Map<Long, List<Transacao>> transacoesPorCarteira = transacaoRepository.findByCarteiraInWithAtivo(carteiras).stream()
+                .collect(Collectors.groupingBy(t -> t.getCarteira().getId()));
+        List<Long> carteiraIds = carteiras.stream().map(Carteira::getId).collect(Collectors.toList());
+        // Retornos antes do risco: a série trava todas as carteiras de uma vez (em ordem de ID) até o fim
+        // desta transação, e o risco só recalcula um subconjunto delas
+        Map<Long, Map<String, BigDecimal>> retornosPorCarteira = serieValorCarteiraService.calcularRetornosPorPeriodo(carteiraIds);
+        Map<Long, CalculadoraRisco.Metricas> metricasPorCarteira = riscoCarteiraService.calcularRisco(carteiraIds);
+
+        for (Carteira carteira : carteiras) {
+            resultado.put(carteira.getId(), calcularRentabilidadeCarteira(carteira,
+                    ativosPorCarteira.getOrDefault(carteira.getId(), Collections.emptyList()),
+                    transacoesPorCarteira.getOrDefault(carteira.getId(), Collections.emptyList()),
+                    metricasPorCarteira.get(carteira.getId()),
+                    retornosPorCarteira.get(carteira.getId())));
+        }
+        return resultado;
+    }
+
+    /**
+     * Calcula a rentabilidade da carteira a partir dos ativos, transações (em ordem de data),
+     * métricas de risco e retornos por período já carregados
+     */
+    private CarteiraRentabilidadeResponse calcularRentabilidadeCarteira(Carteira carteira, List<Ativo> ativos, List<Transacao> transacoes,
+                                                                        CalculadoraRisco.Metricas metricas, Map<String, BigDecimal> retornos) {
         CarteiraRentabilidadeResponse response = new CarteiraRentabilidadeResponse(
                 carteira.getId(), carteira.getNome()
         );
@@ -76,21 +185,23 @@ public class RentabilidadeService {
         response.setDataUltimaAtualizacao(carteira.getDataAtualizacao());
 
         // Calcula rentabilidade de cada ativo
-        // Busca ativos diretamente do repository para evitar LazyInitializationException
-        List<Ativo> ativos = ativoRepository.findByCarteira(carteira);
+        // Agrupa as transações por código do ativo, evitando buscar transações separadamente para cada ativo
+        Map<String, List<Transacao>> transacoesPorAtivo = transacoes.stream()
+                .collect(Collectors.groupingBy(Transacao::getCodigoAtivo));
         
         List<RentabilidadeResponse> ativosRentabilidade = new ArrayList<>();
-        BigDecimal valorTotalInvestido = BigDecimal.ZERO;
-        BigDecimal valorAtualMercado = BigDecimal.ZERO;
-        BigDecimal valorAtualComProventos = BigDecimal.ZERO;
-        BigDecimal totalCompras = BigDecimal.ZERO;
-        BigDecimal totalVendas = BigDecimal.ZERO;
-        BigDecimal totalProventos = BigDecimal.ZERO;
-        BigDecimal totalTaxas = BigDecimal.ZERO;
-        BigDecimal totalImpostos = BigDecimal.ZERO;
-
-        for (Ativo ativo : ativos) {
-            RentabilidadeResponse ativoRentabilidade = calcularRentabilidadeAtivo(ativo.getId());
+        // Somas em ponto fixo (escala preço x quantidade), com o mesmo resultado de BigDecimal.add
+        AritmeticaFixa.Soma somaInvestido = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaMercado = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaComProventos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaCompras = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaVendas = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaProventos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaTaxas = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        AritmeticaFixa.Soma somaImpostos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+
+        // Agrega sempre na ordem dos ativos, independente de como foram calculados
+        for (RentabilidadeResponse ativoRentabilidade : calcularRentabilidadeAtivos(ativos, transacoesPorAtivo)) {
             ativosRentabilidade.add(ativoRentabilidade);
 
             // Acumula valores (com verificação de null)
@@ -103,16 +214,25 @@ public class RentabilidadeService {
             BigDecimal taxas = ativoRentabilidade.getTotalTaxasCorretagem() != null ? ativoRentabilidade.getTotalTaxasCorretagem() : BigDecimal.ZERO;
             BigDecimal impostos = ativoRentabilidade.getTotalImpostos() != null ? ativoRentabilidade.getTotalImpostos() : BigDecimal.ZERO;
             
-            valorTotalInvestido = valorTotalInvestido.add(valorInvestido);
-            valorAtualMercado = valorAtualMercado.add(valorMercado);
-            valorAtualComProventos = valorAtualComProventos.add(valorComProventos);
-            totalCompras = totalCompras.add(compras);
-            totalVendas = totalVendas.add(vendas);
-            totalProventos = totalProventos.add(proventos);
-            totalTaxas = totalTaxas.add(taxas);
-            totalImpostos = totalImpostos.add(impostos);
+            somaInvestido.adicionar(valorInvestido);
+            somaMercado.adicionar(valorMercado);
+            somaComProventos.adicionar(valorComProventos);
+            somaCompras.adicionar(compras);
+            somaVendas.adicionar(vendas);
+            somaProventos.adicionar(proventos);
+            somaTaxas.adicionar(taxas);
+            somaImpostos.adicionar(impostos);
         }
 
+        BigDecimal valorTotalInvestido = somaInvestido.getResultado();
+        BigDecimal valorAtualMercado = somaMercado.getResultado();
+        BigDecimal valorAtualComProventos = somaComProventos.getResultado();
+        BigDecimal totalCompras = somaCompras.getResultado();
+        BigDecimal totalVendas = somaVendas.getResultado();
+        BigDecimal totalProventos = somaProventos.getResultado();
+        BigDecimal totalTaxas = somaTaxas.getResultado();
+        BigDecimal totalImpostos = somaImpostos.getResultado();
+
         // Define valores da carteira
         response.setValorTotalInvestido(valorTotalInvestido != null ? valorTotalInvestido : BigDecimal.ZERO);
         response.setValorAtualMercado(valorAtualMercado != null ? valorAtualMercado : BigDecimal.ZERO);
@@ -127,14 +247,21 @@ public class RentabilidadeService {
         // Calcula rentabilidade da carteira
         calcularRentabilidadeCarteira(response);
 
+        // Retorno ponderado pelo capital (XIRR) de todos os fluxos da carteira
+        BigDecimal xirrCarteira = calcularXIRR(transacoes, response.getValorAtualMercado());
+        if (xirrCarteira != null) {
+            response.setRentabilidadeXIRR(xirrCarteira);
+            response.setRentabilidadePercentualAnual(xirrCarteira);
+        }
+
         // Calcula distribuição por tipo de ativo
         calcularDistribuicaoPorTipo(response, ativos);
 
         // Calcula métricas de risco
-        calcularMetricasRisco(response, ativosRentabilidade);
+        calcularMetricasRisco(response, metricas);
 
         // Calcula performance por período
-        calcularPerformancePorPeriodo(response, carteira);
+        calcularPerformancePorPeriodo(response, retornos);
 
         // Define lista de ativos
         response.setAtivos(ativosRentabilidade);
@@ -149,33 +276,74 @@ public class RentabilidadeService {
         return response;
     }
 
+    /**
+     * Calcula a rentabilidade de cada ativo, em paralelo quando habilitado e a carteira tem ativos suficientes.
+     * As tarefas só leem dados já carregados (ativos e transações com o ativo via JOIN FETCH), sem acessar
+     * a sessão do Hibernate, e o resultado mantém a ordem da lista de ativos.
+     */
+    private List<RentabilidadeResponse> calcularRentabilidadeAtivos(List<Ativo> ativos, Map<String, List<Transacao>> transacoesPorAtivo) {
+        if (executorParalelo == null || ativos.size() < paraleloLimiteAtivos) {
+            List<RentabilidadeResponse> resultados = new ArrayList<>(ativos.size());
+            for (Ativo ativo : ativos) {
+                resultados.add(montarRentabilidadeAtivo(ativo, transacoesPorAtivo.getOrDefault(ativo.getCodigo(), Collections.emptyList())));
+            }
+            return resultados;
+        }
+
+        List<Callable<RentabilidadeResponse>> tarefas = new ArrayList<>(ativos.size());
+        for (Ativo ativo : ativos) {
+            List<Transacao> transacoesAtivo = transacoesPorAtivo.getOrDefault(ativo.getCodigo(), Collections.emptyList());
+            tarefas.add(() -> montarRentabilidadeAtivo(ativo, transacoesAtivo));
+        }
+
+        try {
+            List<RentabilidadeResponse> resultados = new ArrayList<>(ativos.size());
+            for (Future<RentabilidadeResponse> futuro : executorParalelo.invokeAll(tarefas)) {
+                resultados.add(futuro.get());
+            }
+            return resultados;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Cálculo de rentabilidade interrompido", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Erro ao calcular rentabilidade do ativo: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
     /**
      * Calcula valores de investimento
      */
     private void calcularValoresInvestimento(RentabilidadeResponse response, List<Transacao> transacoes) {
-        BigDecimal totalCompras = BigDecimal.ZERO;
-        BigDecimal totalVendas = BigDecimal.ZERO;
-        BigDecimal totalProventos = BigDecimal.ZERO;
-        BigDecimal totalTaxas = BigDecimal.ZERO;
-        BigDecimal totalImpostos = BigDecimal.ZERO;
+        // Valores das transações têm escala 2: somados em centavos (long)
+        AritmeticaFixa.Soma somaCompras = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
+        AritmeticaFixa.Soma somaVendas = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
+        AritmeticaFixa.Soma somaProventos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
+        AritmeticaFixa.Soma somaTaxas = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
+        AritmeticaFixa.Soma somaImpostos = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
 
         for (Transacao transacao : transacoes) {
             if (transacao.getTipoTransacao() == TipoTransacao.COMPRA) {
-                totalCompras = totalCompras.add(transacao.getValorTotal());
+                somaCompras.adicionar(transacao.getValorTotal());
             } else if (transacao.getTipoTransacao() == TipoTransacao.VENDA) {
-                totalVendas = totalVendas.add(transacao.getValorTotal());
+                somaVendas.adicionar(transacao.getValorTotal());
             } else if (transacao.getTipoTransacao().isProvento()) {
-                totalProventos = totalProventos.add(transacao.getValorTotal());
+                somaProventos.adicionar(transacao.getValorTotal());
             }
 
             if (transacao.getTaxasCorretagem() != null) {
-                totalTaxas = totalTaxas.add(transacao.getTaxasCorretagem());
+                somaTaxas.adicionar(transacao.getTaxasCorretagem());
             }
             if (transacao.getImpostos() != null) {
-                totalImpostos = totalImpostos.add(transacao.getImpostos());
+                somaImpostos.adicionar(transacao.getImpostos());
             }
         }
 
+        BigDecimal totalCompras = somaCompras.getResultado();
+        BigDecimal totalVendas = somaVendas.getResultado();
+        BigDecimal totalProventos = somaProventos.getResultado();
+        BigDecimal totalTaxas = somaTaxas.getResultado();
+        BigDecimal totalImpostos = somaImpostos.getResultado();
+
         // Impostos aproximados (quando não informados nas transações ou para completar análise)
         BigDecimal impostosAproximados = CalculadoraImpostos.calcularImpostosAproximados(transacoes);
         if (impostosAproximados.compareTo(totalImpostos) > 0) {
@@ -331,6 +499,129 @@ public class RentabilidadeService {
         response.setDataAtualizacao(LocalDateTime.now());
     }
 
+    /**
+     * Calcula TWR (subperíodos entre compras e vendas, valorizados pelo preço de cada uma) e XIRR
+     * do ativo. Só compra e venda têm preço de mercado: eventos societários (bonificação,
+     * desdobramento, grupamento) apenas ajustam a quantidade, a subscrição entra como aporte e a
+     * amortização como devolução de capital no subperíodo corrente. O XIRR substitui a
+     * anualização linear quando converge.
+     */
+    private void calcularRetornosPonderados(RentabilidadeResponse response, List<Transacao> transacoes) {
+        if (transacoes.isEmpty()) {
+            return;
+        }
+        List<Transacao> ordenadas = new ArrayList<>(transacoes);
+        ordenadas.sort(Comparator.comparing(Transacao::getDataTransacao));
+
+        int total = ordenadas.size();
+        double[] valorInicial = new double[total + 1];
+        double[] valorFinal = new double[total + 1];
+        int subperiodos = 0;
+        double quantidade = 0.0;
+        double valorAposFluxo = 0.0;
+        double proventosSubperiodo = 0.0;
+
+        for (Transacao transacao : ordenadas) {
+            TipoTransacao tipo = transacao.getTipoTransacao();
+            if (tipo.isProvento()) {
+                proventosSubperiodo += transacao.getValorTotal().doubleValue();
+                continue;
+            }
+            if (tipo != TipoTransacao.COMPRA && tipo != TipoTransacao.VENDA) {
+                // Sem preço de mercado (preço zero ou nominal): não fecha subperíodo
+                double quantidadeEvento = transacao.getQuantidade().doubleValue();
+                if (tipo == TipoTransacao.SUBSCRICAO) {
+                    quantidade += quantidadeEvento;
+                    valorAposFluxo += transacao.getValorTotal().doubleValue();
+                } else if (tipo == TipoTransacao.AMORTIZACAO) {
+                    quantidade -= quantidadeEvento;
+                    proventosSubperiodo += transacao.getValorTotal().doubleValue();
+                } else if (tipo.isEntrada()) {
+                    quantidade += quantidadeEvento;
+                } else if (tipo.isSaida()) {
+                    quantidade -= quantidadeEvento;
+                }
+                continue;
+            }
+
+            // Fecha o subperíodo anterior ao preço desta transação
+            double preco = transacao.getPrecoUnitario().doubleValue();
+            if (valorAposFluxo > 0.0) {
+                valorInicial[subperiodos] = valorAposFluxo;
+                valorFinal[subperiodos] = quantidade * preco + proventosSubperiodo;
+                subperiodos++;
+            }
+            proventosSubperiodo = 0.0;
+
+            if (tipo == TipoTransacao.COMPRA) {
+                quantidade += transacao.getQuantidade().doubleValue();
+            } else {
+                quantidade -= transacao.getQuantidade().doubleValue();
+            }
+            valorAposFluxo = quantidade * preco;
+        }
+
+        // Último subperíodo até hoje, ao preço atual
+        if (valorAposFluxo > 0.0 && response.getPrecoAtual() != null) {
+            valorInicial[subperiodos] = valorAposFluxo;
+            valorFinal[subperiodos] = quantidade * response.getPrecoAtual().doubleValue() + proventosSubperiodo;
+            subperiodos++;
+        }
+        if (subperiodos > 0) {
+            double twr = CalculadoraRetorno.calcularTWR(valorInicial, valorFinal, subperiodos);
+            response.setRentabilidadeTWR(BigDecimal.valueOf(twr * 100).setScale(4, RoundingMode.HALF_UP));
+        }
+
+        BigDecimal xirr = calcularXIRR(ordenadas, response.getValorAtualMercado());
+        if (xirr != null) {
+            response.setRentabilidadeXIRR(xirr);
+            response.setRentabilidadePercentualAnual(xirr);
+        }
+    }
+
+    /**
+     * XIRR em percentual anual: aportes negativos, vendas e proventos positivos e o valor atual
+     * como resgate final hoje. Retorna null se não houver troca de sinal nos fluxos.
+     */
+    private BigDecimal calcularXIRR(List<Transacao> ordenadas, BigDecimal valorAtual) {
+        if (ordenadas.isEmpty()) {
+            return null;
+        }
+        int total = ordenadas.size();
+        double[] fluxos = new double[total + 1];
+        double[] anos = new double[total + 1];
+        LocalDate inicio = ordenadas.get(0).getDataTransacao().toLocalDate();
+        int quantidadeFluxos = 0;
+
+        for (Transacao transacao : ordenadas) {
+            TipoTransacao tipo = transacao.getTipoTransacao();
+            double valor = transacao.getValorTotal().doubleValue();
+            double fluxo;
+            if (tipo == TipoTransacao.COMPRA || tipo == TipoTransacao.SUBSCRICAO) {
+                fluxo = -valor;
+            } else if (tipo == TipoTransacao.VENDA || tipo == TipoTransacao.AMORTIZACAO || tipo.isProvento()) {
+                fluxo = valor;
+            } else {
+                continue; // Eventos sem movimentação financeira
+            }
+            fluxos[quantidadeFluxos] = fluxo;
+            anos[quantidadeFluxos] = ChronoUnit.DAYS.between(inicio, transacao.getDataTransacao().toLocalDate()) / 365.0;
+            quantidadeFluxos++;
+        }
+
+        if (valorAtual != null && valorAtual.compareTo(BigDecimal.ZERO) > 0) {
+            fluxos[quantidadeFluxos] = valorAtual.doubleValue();
+            anos[quantidadeFluxos] = ChronoUnit.DAYS.between(inicio, LocalDate.now()) / 365.0;
+            quantidadeFluxos++;
+        }
+
+        double xirr = CalculadoraRetorno.calcularXIRR(fluxos, anos, quantidadeFluxos);
+        if (Double.isNaN(xirr) || Double.isInfinite(xirr)) {
+            return null;
+        }
+        return BigDecimal.valueOf(xirr * 100).setScale(4, RoundingMode.HALF_UP);
+    }
+
     /**
      * Calcula rentabilidade da carteira
      */
@@ -366,86 +657,73 @@ public class RentabilidadeService {
     }
 
     /**
-     * Calcula distribuição por tipo de ativo
+     * Calcula distribuição por tipo de ativo (uma passada pelos ativos, todos os tipos)
      */
     private void calcularDistribuicaoPorTipo(CarteiraRentabilidadeResponse response, List<Ativo> ativos) {
-        BigDecimal valorTotal = response.getValorAtualMercado() != null ? response.getValorAtualMercado() : BigDecimal.ZERO;
-        
-        if (valorTotal != null && valorTotal.compareTo(BigDecimal.ZERO) > 0) {
-            // Ações
-            BigDecimal valorAcoes = ativos.stream()
-                    .filter(a -> a.getTipo() == TipoAtivo.ACAO)
-                    .map(a -> a.getQuantidade().multiply(a.getPrecoAtual() != null ? a.getPrecoAtual() : a.getPrecoCompra()))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            response.setPercentualAcoes(valorAcoes.divide(valorTotal, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
-
-            // FIIs
-            BigDecimal valorFIIs = ativos.stream()
-                    .filter(a -> a.getTipo() == TipoAtivo.FII)
-                    .map(a -> a.getQuantidade().multiply(a.getPrecoAtual() != null ? a.getPrecoAtual() : a.getPrecoCompra()))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            response.setPercentualFIIs(valorFIIs.divide(valorTotal, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
-
-            // ETFs
-            BigDecimal valorETFs = ativos.stream()
-                    .filter(a -> a.getTipo() == TipoAtivo.ETF)
-                    .map(a -> a.getQuantidade().multiply(a.getPrecoAtual() != null ? a.getPrecoAtual() : a.getPrecoCompra()))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            response.setPercentualETFs(valorETFs.divide(valorTotal, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
-
-            // Renda Fixa
-            BigDecimal valorRendaFixa = ativos.stream()
-                    .filter(a -> a.getTipo() == TipoAtivo.CDB || a.getTipo() == TipoAtivo.LCI || 
-                               a.getTipo() == TipoAtivo.LCA || a.getTipo() == TipoAtivo.TESOURO)
-                    .map(a -> a.getQuantidade().multiply(a.getPrecoAtual() != null ? a.getPrecoAtual() : a.getPrecoCompra()))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            response.setPercentualRendaFixa(valorRendaFixa.divide(valorTotal, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
-
-            // Cripto
-            BigDecimal valorCripto = ativos.stream()
-                    .filter(a -> a.getTipo() == TipoAtivo.CRIPTOMOEDA)
-                    .map(a -> a.getQuantidade().multiply(a.getPrecoAtual() != null ? a.getPrecoAtual() : a.getPrecoCompra()))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            response.setPercentualCripto(valorCripto.divide(valorTotal, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
+        aplicarDistribuicao(response, CalculadoraDistribuicao.calcularValores(ativos));
+    }
+
+    /**
+     * Apenas a distribuição por tipo da carteira, agregada no banco (GROUP BY tipo), sem calcular a rentabilidade
+     */
+    @Transactional(readOnly = true)
+    public CarteiraRentabilidadeResponse calcularDistribuicaoCarteira(Long carteiraId) {
+        Carteira carteira = carteiraRepository.findById(carteiraId)
+                .orElseThrow(() -> new RuntimeException("Carteira não encontrada: " + carteiraId));
+
+        CarteiraRentabilidadeResponse response = new CarteiraRentabilidadeResponse(carteira.getId(), carteira.getNome());
+        EnumMap<TipoAtivo, BigDecimal> valores = CalculadoraDistribuicao.calcularValores(ativoRepository.somarValorPorTipo(carteiraId));
+        response.setValorAtualMercado(CalculadoraDistribuicao.calcularTotal(valores));
+        aplicarDistribuicao(response, valores);
+        return response;
+    }
+
+    private void aplicarDistribuicao(CarteiraRentabilidadeResponse response, EnumMap<TipoAtivo, BigDecimal> valores) {
+        BigDecimal valorTotal = CalculadoraDistribuicao.calcularTotal(valores);
+        if (valorTotal.compareTo(BigDecimal.ZERO) <= 0) {
+            return;
         }
+
+        response.setDistribuicaoPorTipo(CalculadoraDistribuicao.calcularPercentuais(valores, valorTotal));
+        response.setPercentualAcoes(CalculadoraDistribuicao.calcularPercentualGrupo(valores, EnumSet.of(TipoAtivo.ACAO), valorTotal));
+        response.setPercentualFIIs(CalculadoraDistribuicao.calcularPercentualGrupo(valores, EnumSet.of(TipoAtivo.FII), valorTotal));
+        response.setPercentualETFs(CalculadoraDistribuicao.calcularPercentualGrupo(valores, EnumSet.of(TipoAtivo.ETF), valorTotal));
+        response.setPercentualRendaFixa(CalculadoraDistribuicao.calcularPercentualGrupo(valores, CalculadoraDistribuicao.RENDA_FIXA, valorTotal));
+        response.setPercentualCripto(CalculadoraDistribuicao.calcularPercentualGrupo(valores, EnumSet.of(TipoAtivo.CRIPTOMOEDA), valorTotal));
     }
 
     /**
-     * Calcula métricas de risco (simplificado)
+     * Calcula métricas de risco a partir da série diária da cota (janela configurada).
+     * Valores em percentual: volatilidade anualizada, drawdown máximo e VaR 95% diário.
      */
-    private void calcularMetricasRisco(CarteiraRentabilidadeResponse response, List<RentabilidadeResponse> ativos) {
-        // Volatilidade (simplificada)
-        if (ativos.size() > 1) {
-            BigDecimal somaVariacoes = ativos.stream()
-                    .filter(a -> a.getVariacaoPercentual() != null)
-                    .map(RentabilidadeResponse::getVariacaoPercentual)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            BigDecimal mediaVariacoes = somaVariacoes.divide(BigDecimal.valueOf(ativos.size()), 4, RoundingMode.HALF_UP);
-            
-            BigDecimal somaQuadrados = ativos.stream()
-                    .filter(a -> a.getVariacaoPercentual() != null)
-                    .map(a -> a.getVariacaoPercentual().subtract(mediaVariacoes).pow(2))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            BigDecimal variancia = somaQuadrados.divide(BigDecimal.valueOf(ativos.size() - 1), 4, RoundingMode.HALF_UP);
-            BigDecimal volatilidade = new BigDecimal(Math.sqrt(variancia.doubleValue()));
-            response.setVolatilidade(volatilidade);
+    private void calcularMetricasRisco(CarteiraRentabilidadeResponse response, CalculadoraRisco.Metricas metricas) {
+        if (metricas == null || metricas.getAmostras() < 2) {
+            return; // Histórico insuficiente
         }
+
+        response.setVolatilidade(paraPercentual(metricas.getVolatilidadeAnual()));
+        response.setSharpeRatio(BigDecimal.valueOf(metricas.getSharpeRatio()).setScale(4, RoundingMode.HALF_UP));
+        response.setMaxDrawdown(paraPercentual(metricas.getDrawdownMaximo()));
+        response.setVar95(paraPercentual(riscoCarteiraService.getVar95(metricas)));
+    }
+
+    private BigDecimal paraPercentual(double valor) {
+        return BigDecimal.valueOf(valor * 100).setScale(4, RoundingMode.HALF_UP);
     }
 
     /**
-     * Calcula performance por período
+     * Calcula performance por período a partir da série diária de valor da carteira
+     * (retorno ponderado pelo tempo entre o índice da cota no início do período e o atual)
      */
-    private void calcularPerformancePorPeriodo(CarteiraRentabilidadeResponse response, Carteira carteira) {
-        // Implementação simplificada - em um sistema real, seria necessário histórico de preços
-        // Por enquanto, usamos a rentabilidade total como base
-        if (response.getRentabilidadePercentualLiquida() != null) {
-            response.setRentabilidadeMes(response.getRentabilidadePercentualLiquida().divide(BigDecimal.valueOf(12), 4, RoundingMode.HALF_UP));
-            response.setRentabilidadeTrimestre(response.getRentabilidadePercentualLiquida().divide(BigDecimal.valueOf(4), 4, RoundingMode.HALF_UP));
-            response.setRentabilidadeSemestre(response.getRentabilidadePercentualLiquida().divide(BigDecimal.valueOf(2), 4, RoundingMode.HALF_UP));
-            response.setRentabilidadeAno(response.getRentabilidadePercentualLiquida());
-            response.setRentabilidadeYTD(response.getRentabilidadePercentualLiquida());
+    private void calcularPerformancePorPeriodo(CarteiraRentabilidadeResponse response, Map<String, BigDecimal> retornos) {
+        if (retornos == null || retornos.isEmpty()) {
+            return;
         }
+        response.setRentabilidadeMes(retornos.get("mes"));
+        response.setRentabilidadeTrimestre(retornos.get("trimestre"));
+        response.setRentabilidadeSemestre(retornos.get("semestre"));
+        response.setRentabilidadeAno(retornos.get("ano"));
+        response.setRentabilidadeYTD(retornos.get("ytd"));
+        response.setRentabilidadeTWR(retornos.get("total"));
     }
 }
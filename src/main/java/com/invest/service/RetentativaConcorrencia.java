@@ -0,0 +1,111 @@
+package com.invest.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Executa uma escrita em transação própria, repetindo-a quando perde uma corrida
+ *
+ * Duas transações simultâneas na mesma posição (mesma carteira e ativo) são detectadas pela
+ * versão do Ativo (@Version) ou, na criação do ativo, pela chave única (carteira_id, codigo).
+ * A transação que perdeu é desfeita e refeita do zero, relendo a posição já gravada, até
+ * transacoes.concorrencia.max-tentativas vezes, com espera crescente e aleatória entre elas.
+ */
+@Component
+public class RetentativaConcorrencia {
+
+    // Chave única (carteira_id, codigo) de Ativo
+    private static final String CONSTRAINT_POSICAO = "uk_ativos_carteira_codigo";
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${transacoes.concorrencia.max-tentativas:5}")
+    private int maxTentativas;
+
+    @Value("${transacoes.concorrencia.espera-ms:20}")
+    private long esperaMs;
+
+    /**
+     * Executa a operação em uma nova transação, repetindo em conflito de concorrência.
+     * Se já houver uma transação ativa, a operação participa dela e não é repetida
+     * (a transação externa já estaria marcada para rollback).
+     */
+    public <T> T executar(Supplier<T> operacao) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return operacao.get();
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                return transactionTemplate.execute(status -> operacao.get());
+            } catch (RuntimeException e) {
+                if (!isConflito(e)) {
+                    throw e;
+                }
+                if (tentativa >= maxTentativas) {
+                    System.err.println("❌ Conflito de concorrência após " + tentativa + " tentativas: "
+                            + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+                    throw e;
+                }
+                aguardar(tentativa);
+            }
+        }
+    }
+
+    /**
+     * Executa a operação sem retorno em uma nova transação, repetindo em conflito de concorrência
+     */
+    public void executar(Runnable operacao) {
+        executar(() -> {
+            operacao.run();
+            return null;
+        });
+    }
+
+    /**
+     * Versão do ativo alterada por outra transação, lock/deadlock no banco ou ativo criado
+     * simultaneamente (chave única da posição). Outras violações de integridade não se repetem.
+     */
+    private boolean isConflito(RuntimeException e) {
+        if (e instanceof ConcurrencyFailureException || e instanceof DuplicateKeyException) {
+            return true;
+        }
+        if (e instanceof DataIntegrityViolationException) {
+            for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+                if (causa instanceof ConstraintViolationException violacao && isConstraintPosicao(violacao.getConstraintName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Algumas versões do banco informam o nome qualificado pela tabela (ativos.uk_...)
+    private static boolean isConstraintPosicao(String nome) {
+        return nome != null && (nome.equalsIgnoreCase(CONSTRAINT_POSICAO)
+                || nome.toLowerCase().endsWith("." + CONSTRAINT_POSICAO));
+    }
+
+    private void aguardar(int tentativa) {
+        try {
+            Thread.sleep(esperaMs * tentativa + ThreadLocalRandom.current().nextLong(esperaMs + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Retentativa interrompida");
+        }
+    }
+}
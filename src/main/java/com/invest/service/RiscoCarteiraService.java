@@ -0,0 +1,163 @@
+package com.invest.service;
+
+import com.invest.model.ValorDiarioCarteira;
+import com.invest.service.external.GoogleSheetsService;
+import com.invest.utils.CalculadoraRisco;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Métricas de risco da carteira a partir da série diária do índice da cota
+ *
+ * Volatilidade, Sharpe, drawdown máximo e VaR 95% são calculados sobre a janela configurada
+ * (CalculadoraRisco) e guardados por carteira junto com a versão da carteira, a versão das
+ * cotações e a data: enquanto nenhuma delas mudar, a consulta não toca no banco.
+ */
+@Service
+public class RiscoCarteiraService {
+
+    // A série tem um ponto por dia corrido
+    private static final int PERIODOS_POR_ANO = 365;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    @Lazy
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Value("${rentabilidade.risco.janela-dias:365}")
+    private int janelaDias;
+
+    @Value("${rentabilidade.risco.taxa-livre-risco:0.1075}")
+    private double taxaLivreRisco;
+
+    // Abaixo dessa quantidade de retornos o VaR histórico é pouco confiável: usa o paramétrico
+    @Value("${rentabilidade.risco.amostras-minimas-var-historico:60}")
+    private int amostrasMinimasVarHistorico;
+
+    private final Map<Long, EntradaRisco> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Métricas de risco da carteira (recalculadas apenas quando a versão muda)
+     */
+    public CalculadoraRisco.Metricas calcularRisco(Long carteiraId) {
+        return calcularRisco(List.of(carteiraId)).get(carteiraId);
+    }
+
+    /**
+     * Métricas de risco de várias carteiras: as que não estão em cache têm os índices da cota
+     * buscados em uma única consulta
+     */
+    public Map<Long, CalculadoraRisco.Metricas> calcularRisco(Collection<Long> carteiraIds) {
+        long versaoCotacoes = googleSheetsService.getVersaoCotacoes();
+        LocalDate hoje = LocalDate.now();
+
+        Map<Long, CalculadoraRisco.Metricas> resultado = new HashMap<>();
+        Map<Long, Long> versoesPendentes = new HashMap<>();
+        for (Long carteiraId : carteiraIds) {
+            long versaoCarteira = rentabilidadeCacheService.getVersaoCarteira(carteiraId);
+            EntradaRisco entrada = cache.get(carteiraId);
+            if (entrada != null && entrada.versaoCarteira == versaoCarteira
+                    && entrada.versaoCotacoes == versaoCotacoes && entrada.data.equals(hoje)) {
+                resultado.put(carteiraId, entrada.metricas);
+            } else {
+                versoesPendentes.put(carteiraId, versaoCarteira);
+            }
+        }
+        if (versoesPendentes.isEmpty()) {
+            return resultado;
+        }
+
+        Map<Long, double[]> indicesPorCarteira = serieValorCarteiraService.getIndicesCota(
+                versoesPendentes.keySet(), hoje.minusDays(janelaDias), hoje);
+        for (Map.Entry<Long, Long> pendente : versoesPendentes.entrySet()) {
+            double[] indices = indicesPorCarteira.getOrDefault(pendente.getKey(), new double[0]);
+            CalculadoraRisco.Metricas metricas = CalculadoraRisco.calcular(indices, indices.length, PERIODOS_POR_ANO, taxaLivreRisco);
+            cache.put(pendente.getKey(), new EntradaRisco(pendente.getValue(), versaoCotacoes, hoje, metricas));
+            resultado.put(pendente.getKey(), metricas);
+        }
+        return resultado;
+    }
+
+    /**
+     * Métricas de risco do conjunto de carteiras (ex: todas as carteiras de um investidor).
+     * O retorno diário consolidado é a média dos retornos da cota de cada carteira ponderada
+     * pelo valor da carteira no dia anterior, o que preserva a correlação entre elas.
+     */
+    public CalculadoraRisco.Metricas calcularRiscoConsolidado(List<Long> carteiraIds) {
+        LocalDate hoje = LocalDate.now();
+        LocalDate inicio = hoje.minusDays(janelaDias);
+        int dias = janelaDias + 1;
+        double[] retornoPonderado = new double[dias];
+        double[] valorBase = new double[dias];
+
+        // Séries de todas as carteiras em uma única consulta
+        for (List<ValorDiarioCarteira> serie : serieValorCarteiraService.getSeries(carteiraIds, inicio, hoje).values()) {
+            for (int i = 1; i < serie.size(); i++) {
+                ValorDiarioCarteira anterior = serie.get(i - 1);
+                ValorDiarioCarteira atual = serie.get(i);
+                double valorAnterior = anterior.getValorMercado().doubleValue();
+                double indiceAnterior = anterior.getIndiceCota().doubleValue();
+                if (valorAnterior <= 0.0 || indiceAnterior <= 0.0) {
+                    continue;
+                }
+                int dia = (int) ChronoUnit.DAYS.between(inicio, atual.getData());
+                retornoPonderado[dia] += valorAnterior * (atual.getIndiceCota().doubleValue() / indiceAnterior - 1.0);
+                valorBase[dia] += valorAnterior;
+            }
+        }
+
+        // Índice consolidado a partir do primeiro dia com alguma carteira investida
+        double[] indices = new double[dias + 1];
+        int total = 0;
+        for (int dia = 0; dia < dias; dia++) {
+            if (total == 0) {
+                if (valorBase[dia] <= 0.0) {
+                    continue;
+                }
+                indices[total++] = 1.0;
+            }
+            double retorno = valorBase[dia] > 0.0 ? retornoPonderado[dia] / valorBase[dia] : 0.0;
+            indices[total] = indices[total - 1] * (1.0 + retorno);
+            total++;
+        }
+        return CalculadoraRisco.calcular(indices, total, PERIODOS_POR_ANO, taxaLivreRisco);
+    }
+
+    /**
+     * VaR 95% diário: histórico quando há amostras suficientes, senão paramétrico
+     */
+    public double getVar95(CalculadoraRisco.Metricas metricas) {
+        return metricas.getAmostras() >= amostrasMinimasVarHistorico
+                ? metricas.getVar95Historico()
+                : metricas.getVar95Parametrico();
+    }
+
+    private static class EntradaRisco {
+        private final long versaoCarteira;
+        private final long versaoCotacoes;
+        private final LocalDate data;
+        private final CalculadoraRisco.Metricas metricas;
+
+        EntradaRisco(long versaoCarteira, long versaoCotacoes, LocalDate data, CalculadoraRisco.Metricas metricas) {
+            this.versaoCarteira = versaoCarteira;
+            this.versaoCotacoes = versaoCotacoes;
+            this.data = data;
+            this.metricas = metricas;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package com.invest.service;
+
+import com.invest.model.TipoTransacao;
+import com.invest.model.Transacao;
+import com.invest.model.ValorDiarioCarteira;
+import com.invest.repository.TransacaoRepository;
+import com.invest.repository.ValorDiarioCarteiraRepository;
+import com.invest.service.external.GoogleSheetsService;
+import com.invest.service.historico.HistoricoCotacoesStore;
+import com.invest.service.historico.PontoCotacao;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Série diária de valor patrimonial (NAV) por carteira
+ *
+ * Cada dia guarda o valor de mercado ao fechamento, o fluxo líquido (compras menos vendas e
+ * proventos) e o índice da cota, que acumula o retorno diário descontando os fluxos:
+ * indice(d) = indice(d-1) * (valor(d) - fluxo(d)) / valor(d-1).
+ *
+ * A série é estendida sob demanda a partir do último ponto gravado (um ponto novo por dia) e uma
+ * transação retroativa apaga apenas os pontos a partir da sua data. Cada ponto guarda a posição
+ * dos ativos ao fim do dia: a extensão parte dela e lê só as transações posteriores ao ponto.
+ * O ponto de hoje é gravado como provisório (preços intradiários) e refeito com o fechamento
+ * quando o dia termina. Assim, o retorno de qualquer período é a razão entre dois índices já
+ * gravados, sem reprocessar o histórico.
+ */
+@Service
+public class SerieValorCarteiraService {
+
+    private static final int ESCALA_INDICE = 8;
+
+    @Autowired
+    private ValorDiarioCarteiraRepository valorDiarioRepository;
+
+    @Autowired
+    private TransacaoRepository transacaoRepository;
+
+    @Autowired
+    private HistoricoCotacoesStore historicoCotacoesStore;
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Participa da transação de quem chamou (uma única conexão por requisição) ou abre uma, se não houver
+    private TransactionTemplate transactionTemplate;
+
+    // Espera máxima pelo recálculo da mesma carteira em outra requisição
+    @Value("${rentabilidade.serie.lock-espera-ms:30000}")
+    private long lockEsperaMs;
+
+    // Um recálculo por carteira de cada vez
+    private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    // Data a partir da qual a série da carteira ficou inválida (aplicada após o commit da escrita)
+    private final Map<Long, LocalDate> invalidacoesPendentes = new ConcurrentHashMap<>();
+
+    // Versão das cotações usada no ponto de hoje de cada carteira (o ponto do dia é provisório)
+    private final Map<Long, Long> versaoCotacoesHoje = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+    }
+
+    /**
+     * Retornos percentuais da carteira em mês, trimestre, semestre, 12 meses, no ano (YTD) e desde o início.
+     * Chaves: mes, trimestre, semestre, ano, ytd, total. Vazio se a carteira não tem transações.
+     */
+    public Map<String, BigDecimal> calcularRetornosPorPeriodo(Long carteiraId) {
+        return calcularRetornosPorPeriodo(List.of(carteiraId)).getOrDefault(carteiraId, new HashMap<>());
+    }
+
+    /**
+     * Retornos por período de várias carteiras com um número fixo de consultas: últimos pontos,
+     * transações das séries desatualizadas e índices nas datas base de todas as carteiras.
+     * Carteiras sem transações não aparecem no mapa.
+     */
+    public Map<Long, Map<String, BigDecimal>> calcularRetornosPorPeriodo(Collection<Long> carteiraIds) {
+        if (carteiraIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        LocalDate hoje = LocalDate.now();
+        Map<String, LocalDate> datasBase = new LinkedHashMap<>();
+        datasBase.put("mes", hoje.minusMonths(1));
+        datasBase.put("trimestre", hoje.minusMonths(3));
+        datasBase.put("semestre", hoje.minusMonths(6));
+        datasBase.put("ano", hoje.minusYears(1));
+        datasBase.put("ytd", hoje.withDayOfYear(1).minusDays(1));
+
+        return executarComLock(carteiraIds, () -> {
+            Map<Long, Map<String, BigDecimal>> retornosPorCarteira = new HashMap<>();
+            Map<Long, ValorDiarioCarteira> ultimos = atualizarSeries(carteiraIds, hoje);
+            if (ultimos.isEmpty()) {
+                return retornosPorCarteira;
+            }
+
+            // A série tem um ponto por dia corrido desde a primeira transação: sem ponto na data base,
+            // a carteira é mais nova que o período e o retorno é desde o início (índice 1)
+            Map<Long, Map<LocalDate, BigDecimal>> indicesBase = new HashMap<>();
+            for (ValorDiarioCarteira ponto : valorDiarioRepository.findByCarteiraIdInAndDataIn(ultimos.keySet(), datasBase.values())) {
+                indicesBase.computeIfAbsent(ponto.getCarteiraId(), id -> new HashMap<>()).put(ponto.getData(), ponto.getIndiceCota());
+            }
+
+            for (Map.Entry<Long, ValorDiarioCarteira> entry : ultimos.entrySet()) {
+                BigDecimal indiceAtual = entry.getValue().getIndiceCota();
+                Map<LocalDate, BigDecimal> indices = indicesBase.getOrDefault(entry.getKey(), Map.of());
+                Map<String, BigDecimal> retornos = new HashMap<>();
+                datasBase.forEach((periodo, data) ->
+                        retornos.put(periodo, calcularRetorno(indices.getOrDefault(data, BigDecimal.ONE), indiceAtual)));
+                retornos.put("total", indiceAtual.subtract(BigDecimal.ONE)
+                        .multiply(BigDecimal.valueOf(100))
+                        .setScale(4, RoundingMode.HALF_UP));
+                retornosPorCarteira.put(entry.getKey(), retornos);
+            }
+            return retornosPorCarteira;
+        });
+    }
+
+    /**
+     * Pontos da série no período (estende a série até hoje antes de consultar)
+     */
+    public List<ValorDiarioCarteira> getSerie(Long carteiraId, LocalDate inicio, LocalDate fim) {
+        return getSeries(List.of(carteiraId), inicio, fim).getOrDefault(carteiraId, new ArrayList<>());
+    }
+
+    /**
+     * Pontos das séries de várias carteiras no período, em uma única consulta após estendê-las até hoje
+     */
+    public Map<Long, List<ValorDiarioCarteira>> getSeries(Collection<Long> carteiraIds, LocalDate inicio, LocalDate fim) {
+        if (carteiraIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        LocalDate hoje = LocalDate.now();
+        return executarComLock(carteiraIds, () -> {
+            atualizarSeries(carteiraIds, hoje);
+            Map<Long, List<ValorDiarioCarteira>> series = new HashMap<>();
+            for (ValorDiarioCarteira ponto : valorDiarioRepository
+                    .findByCarteiraIdInAndDataBetweenOrderByCarteiraIdAscDataAsc(carteiraIds, inicio, fim)) {
+                series.computeIfAbsent(ponto.getCarteiraId(), id -> new ArrayList<>()).add(ponto);
+            }
+            return series;
+        });
+    }
+
+    /**
+     * Índices da cota no período como array primitivo (estende a série até hoje antes de consultar)
+     */
+    public double[] getIndicesCota(Long carteiraId, LocalDate inicio, LocalDate fim) {
+        return getIndicesCota(List.of(carteiraId), inicio, fim).getOrDefault(carteiraId, new double[0]);
+    }
+
+    /**
+     * Índices da cota de várias carteiras no período, em uma única consulta após estender as séries
+     */
+    public Map<Long, double[]> getIndicesCota(Collection<Long> carteiraIds, LocalDate inicio, LocalDate fim) {
+        if (carteiraIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        LocalDate hoje = LocalDate.now();
+        return executarComLock(carteiraIds, () -> {
+            atualizarSeries(carteiraIds, hoje);
+            Map<Long, List<BigDecimal>> indicesPorCarteira = new HashMap<>();
+            for (Object[] linha : valorDiarioRepository.findIndicesCota(carteiraIds, inicio, fim)) {
+                indicesPorCarteira.computeIfAbsent((Long) linha[0], id -> new ArrayList<>()).add((BigDecimal) linha[1]);
+            }
+
+            Map<Long, double[]> resultado = new HashMap<>();
+            indicesPorCarteira.forEach((carteiraId, indices) -> {
+                double[] valores = new double[indices.size()];
+                for (int i = 0; i < valores.length; i++) {
+                    valores[i] = indices.get(i).doubleValue();
+                }
+                resultado.put(carteiraId, valores);
+            });
+            return resultado;
+        });
+    }
+
+    /**
+     * Invalida a série a partir de uma data (transação criada, alterada ou removida nessa data).
+     * Os pontos são apagados na transação de quem chamou e, após o commit, a data fica marcada
+     * para que um recálculo concorrente com dados antigos também seja descartado.
+     */
+    public void invalidarAPartirDe(Long carteiraId, LocalDate data) {
+        if (carteiraId == null || data == null) {
+            return;
+        }
+        valorDiarioRepository.deleteByCarteiraIdAPartirDe(carteiraId, data);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    registrarInvalidacao(carteiraId, data);
+                }
+            });
+        } else {
+            registrarInvalidacao(carteiraId, data);
+        }
+    }
+
+    /**
+     * Remove toda a série de uma carteira (carteira excluída)
+     */
+    public void removerSerie(Long carteiraId) {
+        valorDiarioRepository.deleteByCarteiraId(carteiraId);
+        invalidacoesPendentes.remove(carteiraId);
+        versaoCotacoesHoje.remove(carteiraId);
+    }
+
+    private void registrarInvalidacao(Long carteiraId, LocalDate data) {
+        invalidacoesPendentes.merge(carteiraId, data, (atual, nova) -> nova.isBefore(atual) ? nova : atual);
+        versaoCotacoesHoje.remove(carteiraId);
+    }
+
+    /**
+     * Executa com o lock de cada carteira (adquiridos em ordem de ID, sem risco de deadlock entre lotes).
+     * Dentro da transação de quem chamou, os pontos gravados só ficam visíveis no commit: os locks
+     * são mantidos até o fim da transação, para outra requisição não recalcular os mesmos dias.
+     */
+    private <T> T executarComLock(Collection<Long> carteiraIds, Supplier<T> acao) {
+        List<ReentrantLock> adquiridos = new ArrayList<>();
+        boolean liberarNoFim = TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive();
+        if (liberarNoFim) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    liberar(adquiridos);
+                }
+            });
+        }
+        try {
+            for (Long carteiraId : new TreeSet<>(carteiraIds)) {
+                ReentrantLock lock = locks.computeIfAbsent(carteiraId, id -> new ReentrantLock());
+                if (!lock.tryLock(lockEsperaMs, TimeUnit.MILLISECONDS)) {
+                    throw new CannotAcquireLockException("Série da carteira em recálculo por outra requisição: " + carteiraId);
+                }
+                adquiridos.add(lock);
+            }
+            return transactionTemplate.execute(status -> acao.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Recálculo da série interrompido");
+        } finally {
+            if (!liberarNoFim) {
+                liberar(adquiridos);
+            }
+        }
+    }
+
+    private static void liberar(List<ReentrantLock> adquiridos) {
+        for (int i = adquiridos.size() - 1; i >= 0; i--) {
+            adquiridos.get(i).unlock();
+        }
+        adquiridos.clear();
+    }
+
+    private BigDecimal calcularRetorno(BigDecimal indiceBase, BigDecimal indiceAtual) {
+        if (indiceBase.compareTo(BigDecimal.ZERO) <= 0) {
+            return BigDecimal.ZERO;
+        }
+        return indiceAtual.divide(indiceBase, ESCALA_INDICE, RoundingMode.HALF_UP)
+                .subtract(BigDecimal.ONE)
+                .multiply(BigDecimal.valueOf(100))
+                .setScale(4, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Estende as séries até hoje e retorna o último ponto de cada carteira (carteiras sem transações
+     * ficam de fora). Só calcula os dias após o último ponto definitivo; o ponto provisório é refeito
+     * quando as cotações mudam no mesmo dia ou, depois que o dia acaba, com os preços de fechamento.
+     * Consultas fixas para qualquer quantidade de carteiras: últimos pontos e, se alguma série está
+     * desatualizada, as transações dessas carteiras posteriores ao último ponto (uma consulta por
+     * data de início; o histórico inteiro só para séries novas ou pontos sem posição gravada).
+     */
+    private Map<Long, ValorDiarioCarteira> atualizarSeries(Collection<Long> carteiraIds, LocalDate hoje) {
+        for (Long carteiraId : carteiraIds) {
+            LocalDate invalidoDesde = invalidacoesPendentes.remove(carteiraId);
+            if (invalidoDesde != null) {
+                valorDiarioRepository.deleteByCarteiraIdAPartirDe(carteiraId, invalidoDesde);
+            }
+        }
+
+        long versaoCotacoes = googleSheetsService.getVersaoCotacoes();
+        Map<Long, ValorDiarioCarteira> ultimos = new HashMap<>();
+        for (ValorDiarioCarteira ponto : valorDiarioRepository.findUltimosPontos(carteiraIds)) {
+            ultimos.put(ponto.getCarteiraId(), ponto);
+        }
+
+        List<Long> pendentes = new ArrayList<>();
+        List<Long> provisorias = new ArrayList<>();
+        for (Long carteiraId : carteiraIds) {
+            ValorDiarioCarteira ultimo = ultimos.get(carteiraId);
+            if (ultimo != null && (ultimo.isProvisorio() || !ultimo.getData().isBefore(hoje))) {
+                if (!ultimo.getData().isBefore(hoje) && Long.valueOf(versaoCotacoes).equals(versaoCotacoesHoje.get(carteiraId))) {
+                    continue; // Série em dia
+                }
+                // Cotações mudaram ou o dia do ponto provisório já fechou: refaz a partir dele
+                provisorias.add(carteiraId);
+            }
+            pendentes.add(carteiraId);
+        }
+        if (pendentes.isEmpty()) {
+            return ultimos;
+        }
+
+        if (!provisorias.isEmpty()) {
+            valorDiarioRepository.deleteProvisorios(provisorias, hoje);
+            provisorias.forEach(ultimos::remove);
+            for (ValorDiarioCarteira ponto : valorDiarioRepository.findUltimosPontos(provisorias)) {
+                ultimos.put(ponto.getCarteiraId(), ponto);
+            }
+        }
+
+        // Com a posição do último ponto, basta ler as transações a partir do dia seguinte a ele
+        Map<LocalDate, List<Long>> incrementais = new TreeMap<>();
+        List<Long> completas = new ArrayList<>();
+        for (Long carteiraId : pendentes) {
+            ValorDiarioCarteira base = ultimos.get(carteiraId);
+            if (base != null && base.getPosicoes() != null) {
+                incrementais.computeIfAbsent(base.getData().plusDays(1), d -> new ArrayList<>()).add(carteiraId);
+            } else {
+                completas.add(carteiraId);
+            }
+        }
+        List<Transacao> transacoes = new ArrayList<>();
+        if (!completas.isEmpty()) {
+            transacoes.addAll(transacaoRepository.findByCarteiraIdInOrderByDataTransacao(completas));
+        }
+        incrementais.forEach((inicio, ids) ->
+                transacoes.addAll(transacaoRepository.findByCarteiraIdInAPartirDe(ids, inicio.atStartOfDay())));
+
+        // getId() do proxy da carteira não dispara consulta
+        Map<Long, List<Transacao>> transacoesPorCarteira = new HashMap<>();
+        for (Transacao transacao : transacoes) {
+            transacoesPorCarteira.computeIfAbsent(transacao.getCarteira().getId(), id -> new ArrayList<>()).add(transacao);
+        }
+
+        List<ValorDiarioCarteira> novos = new ArrayList<>();
+        for (Long carteiraId : pendentes) {
+            List<ValorDiarioCarteira> pontos = calcularPontos(carteiraId, ultimos.get(carteiraId),
+                    transacoesPorCarteira.getOrDefault(carteiraId, List.of()), hoje);
+            if (!pontos.isEmpty()) {
+                novos.addAll(pontos);
+                ultimos.put(carteiraId, pontos.get(pontos.size() - 1));
+            }
+            versaoCotacoesHoje.put(carteiraId, versaoCotacoes);
+        }
+        valorDiarioRepository.saveAll(novos);
+        return ultimos;
+    }
+
+    /**
+     * Calcula os pontos do dia seguinte ao ponto base até hoje, partindo da posição gravada no ponto
+     * base (ou, sem ela, reaplicando as transações anteriores) e das transações da carteira em ordem
+     * de data; vazio se a carteira não tem posição nem transações ou a série já está em dia
+     */
+    private List<ValorDiarioCarteira> calcularPontos(Long carteiraId, ValorDiarioCarteira base,
+                                                     List<Transacao> transacoes, LocalDate hoje) {
+        List<ValorDiarioCarteira> pontos = new ArrayList<>();
+        boolean posicaoBase = base != null && base.getPosicoes() != null;
+        if (transacoes.isEmpty() && !posicaoBase) {
+            return pontos;
+        }
+
+        LocalDate inicio = base != null
+                ? base.getData().plusDays(1)
+                : transacoes.get(0).getDataTransacao().toLocalDate();
+        if (inicio.isAfter(hoje)) {
+            return pontos;
+        }
+
+        // Posição e último preço conhecido de cada ativo antes do início (apenas quantidades, sem valorização)
+        Map<String, BigDecimal> quantidades = new HashMap<>();
+        Map<String, BigDecimal> precos = new HashMap<>();
+        if (posicaoBase) {
+            lerPosicoes(base.getPosicoes(), quantidades, precos);
+        }
+        int indice = 0;
+        while (indice < transacoes.size() && transacoes.get(indice).getDataTransacao().toLocalDate().isBefore(inicio)) {
+            // Com a posição do ponto base, as transações anteriores já estão nela
+            if (!posicaoBase) {
+                aplicarTransacao(transacoes.get(indice), quantidades, precos);
+            }
+            indice++;
+        }
+
+        // Fechamentos diários de cada ativo no período, a partir da série histórica de cotações
+        List<String> codigos = new ArrayList<>(quantidades.keySet());
+        for (Transacao transacao : transacoes) {
+            codigos.add(transacao.getCodigoAtivo());
+        }
+        Map<String, TreeMap<LocalDate, BigDecimal>> fechamentos = new HashMap<>();
+        for (String codigo : codigos) {
+            if (!fechamentos.containsKey(codigo)) {
+                fechamentos.put(codigo, historicoCotacoesStore.buscarFechamentosDiarios(codigo, inicio, hoje));
+                PontoCotacao anterior = historicoCotacoesStore.buscarUltimoAte(codigo, inicio.atStartOfDay().minusNanos(1));
+                if (anterior != null) {
+                    precos.put(codigo, anterior.getPreco());
+                }
+            }
+        }
+
+        double valorAnterior = base != null ? base.getValorMercado().doubleValue() : 0.0;
+        double indiceCota = base != null ? base.getIndiceCota().doubleValue() : 1.0;
+
+        for (LocalDate dia = inicio; !dia.isAfter(hoje); dia = dia.plusDays(1)) {
+            BigDecimal fluxo = BigDecimal.ZERO;
+            while (indice < transacoes.size() && transacoes.get(indice).getDataTransacao().toLocalDate().equals(dia)) {
+                Transacao transacao = transacoes.get(indice);
+                aplicarTransacao(transacao, quantidades, precos);
+                fluxo = fluxo.add(calcularFluxo(transacao));
+                indice++;
+            }
+
+            // Fechamento do dia prevalece sobre o preço das transações
+            for (Map.Entry<String, TreeMap<LocalDate, BigDecimal>> entry : fechamentos.entrySet()) {
+                BigDecimal fechamento = entry.getValue().get(dia);
+                if (fechamento != null) {
+                    precos.put(entry.getKey(), fechamento);
+                }
+            }
+
+            BigDecimal valor = BigDecimal.ZERO;
+            for (Map.Entry<String, BigDecimal> entry : quantidades.entrySet()) {
+                BigDecimal preco = precos.get(entry.getKey());
+                if (preco != null && entry.getValue().compareTo(BigDecimal.ZERO) > 0) {
+                    valor = valor.add(entry.getValue().multiply(preco));
+                }
+            }
+
+            // Retorno do dia descontando o fluxo; sem valor anterior, mede contra o próprio aporte
+            double valorDia = valor.doubleValue();
+            double fluxoDia = fluxo.doubleValue();
+            double fator = valorAnterior > 0 ? (valorDia - fluxoDia) / valorAnterior
+                    : fluxoDia > 0 ? valorDia / fluxoDia : 1.0;
+            if (fator > 0) {
+                indiceCota *= fator;
+            }
+
+            ValorDiarioCarteira ponto = new ValorDiarioCarteira(carteiraId, dia,
+                    valor.setScale(2, RoundingMode.HALF_UP),
+                    fluxo.setScale(2, RoundingMode.HALF_UP),
+                    BigDecimal.valueOf(indiceCota).setScale(ESCALA_INDICE, RoundingMode.HALF_UP));
+            // O dia corrente ainda não tem fechamento
+            ponto.setProvisorio(dia.equals(hoje));
+            ponto.setPosicoes(escreverPosicoes(quantidades, precos));
+            pontos.add(ponto);
+            valorAnterior = valorDia;
+        }
+
+        return pontos;
+    }
+
+    /**
+     * Posição do fim do dia no formato de ValorDiarioCarteira.posicoes (só ativos com quantidade)
+     */
+    private static String escreverPosicoes(Map<String, BigDecimal> quantidades, Map<String, BigDecimal> precos) {
+        StringBuilder texto = new StringBuilder();
+        for (Map.Entry<String, BigDecimal> entry : new TreeMap<>(quantidades).entrySet()) {
+            if (entry.getValue().signum() == 0) {
+                continue;
+            }
+            BigDecimal preco = precos.get(entry.getKey());
+            texto.append(entry.getKey()).append('=').append(entry.getValue().toPlainString())
+                    .append('@').append(preco != null ? preco.toPlainString() : "").append(';');
+        }
+        return texto.toString();
+    }
+
+    private static void lerPosicoes(String texto, Map<String, BigDecimal> quantidades, Map<String, BigDecimal> precos) {
+        for (String item : texto.split(";")) {
+            int igual = item.lastIndexOf('=');
+            int arroba = item.lastIndexOf('@');
+            if (igual <= 0 || arroba < igual) {
+                continue;
+            }
+            String codigo = item.substring(0, igual);
+            quantidades.put(codigo, new BigDecimal(item.substring(igual + 1, arroba)));
+            if (arroba + 1 < item.length()) {
+                precos.put(codigo, new BigDecimal(item.substring(arroba + 1)));
+            }
+        }
+    }
+
+    /**
+     * Atualiza quantidade e último preço do ativo. Proventos não alteram a quantidade.
+     */
+    private void aplicarTransacao(Transacao transacao, Map<String, BigDecimal> quantidades, Map<String, BigDecimal> precos) {
+        TipoTransacao tipo = transacao.getTipoTransacao();
+        String codigo = transacao.getCodigoAtivo();
+        if (tipo.isProvento()) {
+            return;
+        }
+        if (tipo.isEntrada()) {
+            quantidades.merge(codigo, transacao.getQuantidade(), BigDecimal::add);
+        } else if (tipo.isSaida()) {
+            quantidades.merge(codigo, transacao.getQuantidade().negate(), BigDecimal::add);
+        }
+        if (tipo == TipoTransacao.COMPRA || tipo == TipoTransacao.VENDA) {
+            precos.put(codigo, transacao.getPrecoUnitario());
+        }
+    }
+
+    /**
+     * Fluxo externo da transação: compra é aporte (+); venda, amortização e provento são saídas (-)
+     */
+    private BigDecimal calcularFluxo(Transacao transacao) {
+        TipoTransacao tipo = transacao.getTipoTransacao();
+        BigDecimal valor = transacao.getValorTotal() != null ? transacao.getValorTotal()
+                : transacao.getQuantidade().multiply(transacao.getPrecoUnitario());
+        if (tipo == TipoTransacao.COMPRA || tipo == TipoTransacao.SUBSCRICAO) {
+            return valor;
+        }
+        if (tipo == TipoTransacao.VENDA || tipo == TipoTransacao.AMORTIZACAO || tipo.isProvento()) {
+            return valor.negate();
+        }
+        return BigDecimal.ZERO; // Bonificação, desdobramento, grupamento: só mudam a quantidade
+    }
+}
@@ -2,12 +2,15 @@ package com.invest.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.invest.dto.TransacaoRequest;
@@ -18,6 +21,7 @@ import com.invest.model.Transacao;
 import com.invest.repository.AtivoRepository;
 import com.invest.repository.CarteiraRepository;
 import com.invest.repository.TransacaoRepository;
+import com.invest.utils.CalculadoraPosicao;
 
 /**
  * Service para lógica de negócio das transações
@@ -39,10 +43,31 @@ public class TransacaoService {
     @Lazy
     private CarteiraService carteiraService;
 
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @Autowired
+    private IndicePosicoesAtivo indicePosicoesAtivo;
+
+    @Autowired
+    private ProjecaoPosicoesService projecaoPosicoesService;
+
+    @Autowired
+    private RetentativaConcorrencia retentativaConcorrencia;
+
     /**
      * Cria uma nova transação
+     * Em conflito com outra escrita na mesma posição, é refeita em nova transação (RetentativaConcorrencia)
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Transacao createTransacao(Long carteiraId, TransacaoRequest request) {
+        return retentativaConcorrencia.executar(() -> criarTransacao(carteiraId, request));
+    }
+
+    private Transacao criarTransacao(Long carteiraId, TransacaoRequest request) {
         Carteira carteira = carteiraRepository.findById(carteiraId)
                 .orElseThrow(() -> new RuntimeException("Carteira não encontrada: " + carteiraId));
 
@@ -62,6 +87,8 @@ public class TransacaoService {
 
         // Busca ou cria ativo relacionado
         Ativo ativo = buscarOuCriarAtivo(carteira, request);
+        BigDecimal valorAntes = carteiraService.calcularValorMercadoPosicao(ativo);
+        BigDecimal custoAntes = carteiraService.calcularCustoPosicao(ativo);
         
         // Para novos ativos, atualiza a posição ANTES de salvar a transação
         // para garantir que o ativo tenha valores válidos (quantidade > 0)
@@ -69,31 +96,62 @@ public class TransacaoService {
         if (isNovoAtivo) {
             atualizarPosicaoAtivo(ativo, transacao);
         }
+
+        // Transação retroativa (já há transações posteriores do ativo): a posição é reconstruída pelo livro
+        boolean retroativa = !isNovoAtivo && transacaoRepository.existsByCarteiraAndCodigoAtivoAndDataTransacaoAfter(
+                carteira, transacao.getCodigoAtivo(), transacao.getDataTransacao());
         
         transacao.setAtivo(ativo);
         Transacao savedTransacao = transacaoRepository.save(transacao);
 
-        // Para ativos existentes, atualiza a posição após salvar a transação
-        if (!isNovoAtivo) {
-            atualizarPosicaoAtivo(ativo, transacao);
-        }
+        if (retroativa) {
+            reconstruirPosicoes(carteira, List.of(ativo.getCodigo()), List.of(ativo));
+        } else {
+            // Para ativos existentes, atualiza a posição após salvar a transação
+            if (!isNovoAtivo) {
+                atualizarPosicaoAtivo(ativo, transacao);
+            }
 
-        // Recalcula o valor atual da carteira após criar a transação
-        carteiraService.calcularValorAtualCarteira(carteira);
-        carteiraRepository.save(carteira);
+            // Aplica ao valor da carteira apenas a variação da posição alterada
+            atualizarValoresCarteira(carteira, ativo, valorAntes, custoAntes);
+        }
+        rentabilidadeCacheService.invalidarCarteira(carteira.getId());
+        serieValorCarteiraService.invalidarAPartirDe(carteira.getId(), savedTransacao.getDataTransacao().toLocalDate());
 
         return savedTransacao;
     }
 
     /**
      * Atualiza uma transação existente
+     * Em conflito com outra escrita na mesma posição, é refeita em nova transação
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Transacao updateTransacao(Long id, TransacaoRequest request) {
+        return retentativaConcorrencia.executar(() -> atualizarTransacao(id, request));
+    }
+
+    private Transacao atualizarTransacao(Long id, TransacaoRequest request) {
         Transacao transacao = transacaoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Transação não encontrada: " + id));
 
-        // Reverte posição anterior
-        reverterPosicaoAtivo(transacao);
+        // Data original: a série diária é invalidada a partir da menor entre a antiga e a nova
+        LocalDateTime dataAnterior = transacao.getDataTransacao();
+        Carteira carteira = transacao.getCarteira();
+
+        // Ativos afetados: o da transação e, se o código mudou, o do novo código
+        String codigoAnterior = transacao.getCodigoAtivo();
+        boolean mudouAtivo = !codigoAnterior.equalsIgnoreCase(request.getCodigoAtivo());
+        List<Ativo> ativosAfetados = new ArrayList<>();
+        if (transacao.getAtivo() != null) {
+            ativosAfetados.add(transacao.getAtivo());
+        }
+        Ativo ativoNovo = null;
+        if (mudouAtivo) {
+            ativoNovo = ativoRepository.findByCodigoAndCarteira(request.getCodigoAtivo(), carteira).orElse(null);
+            if (ativoNovo != null) {
+                ativosAfetados.add(ativoNovo);
+            }
+        }
 
         // Atualiza dados
         transacao.setTipoTransacao(request.getTipoTransacao());
@@ -108,36 +166,49 @@ public class TransacaoService {
         transacao.setDataLiquidacao(request.getDataLiquidacao());
         transacao.setObservacoes(request.getObservacoes());
 
+        if (mudouAtivo) {
+            transacao.setAtivo(ativoNovo); // Sem ativo ainda: criado e vinculado pela reconstrução
+        }
+
         Transacao savedTransacao = transacaoRepository.save(transacao);
 
-        // Atualiza posição do ativo
-        atualizarPosicaoAtivo(transacao.getAtivo(), transacao);
+        // Reconstrói pelo livro: desfaz quantidade e preço médio da versão anterior da transação
+        List<String> codigos = mudouAtivo ? List.of(codigoAnterior, request.getCodigoAtivo()) : List.of(codigoAnterior);
+        reconstruirPosicoes(carteira, codigos, ativosAfetados);
+        if (mudouAtivo && ativoNovo == null) {
+            ativoRepository.findByCodigoAndCarteira(request.getCodigoAtivo(), carteira).ifPresent(savedTransacao::setAtivo);
+        }
 
-        // Recalcula o valor atual da carteira após atualizar a transação
-        Carteira carteira = savedTransacao.getCarteira();
-        carteiraService.calcularValorAtualCarteira(carteira);
-        carteiraRepository.save(carteira);
+        rentabilidadeCacheService.invalidarCarteira(carteira.getId());
+        LocalDateTime dataAlterada = savedTransacao.getDataTransacao().isBefore(dataAnterior)
+                ? savedTransacao.getDataTransacao() : dataAnterior;
+        serieValorCarteiraService.invalidarAPartirDe(carteira.getId(), dataAlterada.toLocalDate());
 
         return savedTransacao;
     }
 
     /**
      * Deleta uma transação
+     * Em conflito com outra escrita na mesma posição, é refeita em nova transação
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void deleteTransacao(Long id) {
+        retentativaConcorrencia.executar(() -> excluirTransacao(id));
+    }
+
+    private void excluirTransacao(Long id) {
         Transacao transacao = transacaoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Transação não encontrada: " + id));
 
         Carteira carteira = transacao.getCarteira();
+        List<Ativo> ativosAfetados = transacao.getAtivo() != null ? List.of(transacao.getAtivo()) : List.of();
 
-        // Reverte posição do ativo
-        reverterPosicaoAtivo(transacao);
+        transacaoRepository.delete(transacao);
 
-        transacaoRepository.deleteById(id);
-
-        // Recalcula o valor atual da carteira após deletar a transação
-        carteiraService.calcularValorAtualCarteira(carteira);
-        carteiraRepository.save(carteira);
+        // Reconstrói pelo livro sem a transação excluída
+        reconstruirPosicoes(carteira, List.of(transacao.getCodigoAtivo()), ativosAfetados);
+        rentabilidadeCacheService.invalidarCarteira(carteira.getId());
+        serieValorCarteiraService.invalidarAPartirDe(carteira.getId(), transacao.getDataTransacao().toLocalDate());
     }
 
     /**
@@ -251,10 +322,12 @@ public class TransacaoService {
         ativo.setDataAtualizacao(LocalDateTime.now());
         
         // Garante que o ativo tenha valores válidos antes de salvar
-        // Se quantidade for zero ou negativa, não salva (mas isso não deveria acontecer)
-        if (ativo.getQuantidade().compareTo(BigDecimal.ZERO) > 0 && 
+        // Quantidade zero é a posição encerrada por uma venda total (como na reconstrução pelo livro);
+        // negativa é venda maior que a posição e não é gravada
+        if (ativo.getQuantidade().compareTo(BigDecimal.ZERO) >= 0 && 
             ativo.getPrecoCompra().compareTo(BigDecimal.ZERO) > 0) {
             ativoRepository.save(ativo);
+            registrarPosicao(ativo);
         } else {
             throw new RuntimeException("Ativo com valores inválidos: quantidade=" + 
                 ativo.getQuantidade() + ", precoCompra=" + ativo.getPrecoCompra());
@@ -262,48 +335,67 @@ public class TransacaoService {
     }
 
     /**
-     * Reverte posição do ativo (para atualizações/deleções)
+     * Soma à carteira a variação de valor de mercado e de custo da posição alterada em um UPDATE
+     * atômico: o custo da escrita não depende de quantos ativos a carteira tem. Carteiras que ainda
+     * não têm os valores inicializados são recalculadas por completo uma única vez.
+     * Divergências de arredondamento são corrigidas por ReconciliacaoValorCarteiraService.
      */
-    private void reverterPosicaoAtivo(Transacao transacao) {
-        if (transacao.getAtivo() != null) {
-            Ativo ativo = transacao.getAtivo();
-            
-            if (transacao.getTipoTransacao().isEntrada()) {
-                ativo.setQuantidade(ativo.getQuantidade().subtract(transacao.getQuantidade()));
-            } else if (transacao.getTipoTransacao().isSaida()) {
-                ativo.setQuantidade(ativo.getQuantidade().add(transacao.getQuantidade()));
-            }
-            
-            ativo.setDataAtualizacao(LocalDateTime.now());
-            ativoRepository.save(ativo);
+    private void atualizarValoresCarteira(Carteira carteira, Ativo ativo, BigDecimal valorAntes, BigDecimal custoAntes) {
+        BigDecimal variacaoValor = carteiraService.calcularValorMercadoPosicao(ativo).subtract(valorAntes);
+        BigDecimal variacaoInvestido = carteiraService.calcularCustoPosicao(ativo).subtract(custoAntes);
+        aplicarVariacaoCarteira(carteira, variacaoValor, variacaoInvestido);
+    }
+
+    /**
+     * Reconstrói pelo livro de transações a posição dos códigos alterados (ProjecaoPosicoesService)
+     * e aplica à carteira a diferença entre as posições reconstruídas e as anteriores.
+     * Os ativos informados ainda não foram alterados e são recarregados após a reconstrução.
+     */
+    private void reconstruirPosicoes(Carteira carteira, List<String> codigos, List<Ativo> ativosAnteriores) {
+        BigDecimal valorAntes = BigDecimal.ZERO;
+        BigDecimal custoAntes = BigDecimal.ZERO;
+        for (Ativo ativo : ativosAnteriores) {
+            valorAntes = valorAntes.add(carteiraService.calcularValorMercadoPosicao(ativo));
+            custoAntes = custoAntes.add(carteiraService.calcularCustoPosicao(ativo));
+        }
+
+        Map<String, ProjecaoPosicoesService.Resultado> resultados =
+                projecaoPosicoesService.reconstruirCodigos(carteira.getId(), codigos);
+        ativosAnteriores.forEach(projecaoPosicoesService::sincronizar);
+
+        BigDecimal valorDepois = BigDecimal.ZERO;
+        BigDecimal custoDepois = BigDecimal.ZERO;
+        for (ProjecaoPosicoesService.Resultado resultado : resultados.values()) {
+            valorDepois = valorDepois.add(resultado.getValorMercado());
+            custoDepois = custoDepois.add(resultado.getCusto());
+        }
+        aplicarVariacaoCarteira(carteira, valorDepois.subtract(valorAntes), custoDepois.subtract(custoAntes));
+    }
+
+    private void aplicarVariacaoCarteira(Carteira carteira, BigDecimal variacaoValor, BigDecimal variacaoInvestido) {
+        int atualizadas = carteiraRepository.somarVariacaoValores(carteira.getId(), variacaoValor, variacaoInvestido, LocalDateTime.now());
+        if (atualizadas == 0) {
+            carteiraService.calcularValorAtualCarteira(carteira);
+            carteiraRepository.save(carteira);
         }
     }
 
+    /**
+     * Atualiza o índice código → posições com a quantidade atual do ativo (aplicado após o commit)
+     */
+    private void registrarPosicao(Ativo ativo) {
+        indicePosicoesAtivo.registrarPosicao(ativo.getCarteira().getId(), ativo.getId(), ativo.getCodigo(), ativo.getQuantidade());
+    }
+
     /**
      * Calcula preço médio ponderado
      * Para primeira compra, retorna o preço unitário da transação
      * Para compras subsequentes, calcula a média ponderada
      */
     private BigDecimal calcularPrecoMedio(Ativo ativo, Transacao transacao) {
-        // Se é a primeira compra (quantidade atual é zero ou negativa após subtração)
         BigDecimal quantidadeAntesDaTransacao = ativo.getQuantidade().subtract(transacao.getQuantidade());
-        
-        if (quantidadeAntesDaTransacao.compareTo(BigDecimal.ZERO) <= 0) {
-            // Primeira compra: preço médio é o preço da transação
-            return transacao.getPrecoUnitario();
-        }
-        
-        // Compra subsequente: calcula média ponderada
-        BigDecimal valorAtual = quantidadeAntesDaTransacao.multiply(ativo.getPrecoCompra());
-        BigDecimal valorNovaCompra = transacao.getQuantidade().multiply(transacao.getPrecoUnitario());
-        BigDecimal quantidadeTotal = quantidadeAntesDaTransacao.add(transacao.getQuantidade());
-
-        if (quantidadeTotal.compareTo(BigDecimal.ZERO) == 0) {
-            return transacao.getPrecoUnitario(); // Fallback: retorna preço da transação
-        }
-
-        return valorAtual.add(valorNovaCompra)
-                        .divide(quantidadeTotal, 4, java.math.RoundingMode.HALF_UP);
+        return CalculadoraPosicao.calcularPrecoMedio(quantidadeAntesDaTransacao, ativo.getPrecoCompra(),
+                transacao.getQuantidade(), transacao.getPrecoUnitario());
     }
 
     /**
@@ -0,0 +1,284 @@
+package com.invest.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import com.invest.model.Ativo;
+import com.invest.repository.AtivoRepository;
+import com.invest.service.external.CotacoesSnapshot;
+import com.invest.service.external.GoogleSheetsService;
+
+/**
+ * Service responsável pela valorização das carteiras em tempo real via WebSocket
+ * Clientes assinam /topic/carteiras/{id}/valorizacao e recebem valor de mercado e resultado
+ * da carteira sempre que o preço de um ativo que ela possui muda.
+ *
+ * Só as carteiras com assinantes ficam em memória, com suas posições e um índice invertido
+ * código → carteiras. A cada novo snapshot, CotacaoStreamingService informa os códigos cujo
+ * preço mudou e cada carteira afetada soma apenas quantidade x (preço novo - preço anterior)
+ * das posições alteradas, sem recalcular a carteira inteira. Quando uma transação altera a
+ * carteira (versão em RentabilidadeCacheService), as posições são recarregadas do banco.
+ */
+@Service
+public class ValorizacaoCarteiraStreamingService {
+
+    public static final String PREFIXO_TOPICO = "/topic/carteiras/";
+    public static final String SUFIXO_TOPICO = "/valorizacao";
+    public static final String FILA_SNAPSHOT = "/queue/carteiras";
+
+    @Autowired
+    private AtivoRepository ativoRepository;
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Autowired
+    private RentabilidadeCacheService rentabilidadeCacheService;
+
+    @Autowired
+    private CarteiraService carteiraService;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private AssinaturaCotacoesRegistry assinaturaRegistry;
+
+    // carteiraId → posições e totais da carteira monitorada
+    private final Map<Long, EstadoCarteira> carteiras = new ConcurrentHashMap<>();
+
+    // código do ativo → carteiras monitoradas que o possuem (índice invertido)
+    private final Map<String, Set<Long>> carteirasPorCodigo = new ConcurrentHashMap<>();
+
+    /**
+     * Tópico STOMP da valorização de uma carteira
+     */
+    public static String getTopicoCarteira(Long carteiraId) {
+        return PREFIXO_TOPICO + carteiraId + SUFIXO_TOPICO;
+    }
+
+    /**
+     * Passa a monitorar a carteira assinada e envia o estado atual apenas para a sessão
+     * que assinou (/user/queue/carteiras); os demais assinantes recebem somente atualizações.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Long carteiraId = extrairCarteiraId(accessor.getDestination());
+        if (carteiraId == null || accessor.getSessionId() == null) {
+            return;
+        }
+
+        Map<String, Object> mensagem;
+        synchronized (this) {
+            EstadoCarteira estado = carteiras.get(carteiraId);
+            if (estado == null || estado.versaoCarteira != rentabilidadeCacheService.getVersaoCarteira(carteiraId)) {
+                estado = carregar(carteiraId);
+            }
+            mensagem = criarMensagem("SNAPSHOT", carteiraId, estado, List.of());
+        }
+        enviarParaSessao(accessor.getSessionId(), FILA_SNAPSHOT, mensagem);
+    }
+
+    /**
+     * Indica se alguma carteira monitorada possui o ativo (o tick só repassa esses códigos)
+     */
+    public boolean isMonitorado(String codigo) {
+        return carteirasPorCodigo.containsKey(codigo);
+    }
+
+    /**
+     * Aplica os preços que mudaram no último snapshot às carteiras monitoradas e publica a
+     * nova valorização de cada carteira afetada. Chamado por CotacaoStreamingService a cada
+     * nova versão das cotações.
+     */
+    public synchronized void aplicarCotacoes(Map<String, BigDecimal> precosAlterados) {
+        if (carteiras.isEmpty()) {
+            return;
+        }
+
+        // Carteiras sem assinantes saem do índice; carteiras alteradas por transações são recarregadas
+        Map<Long, List<String>> alteradosPorCarteira = new HashMap<>();
+        for (Long carteiraId : new ArrayList<>(carteiras.keySet())) {
+            if (!assinaturaRegistry.temAssinantes(getTopicoCarteira(carteiraId))) {
+                remover(carteiraId);
+            } else if (carteiras.get(carteiraId).versaoCarteira != rentabilidadeCacheService.getVersaoCarteira(carteiraId)) {
+                carregar(carteiraId); // Já com os preços atuais
+                alteradosPorCarteira.put(carteiraId, new ArrayList<>());
+            }
+        }
+
+        // Índice invertido: cada código alterado aponta só para as carteiras que o possuem
+        for (Map.Entry<String, BigDecimal> entry : precosAlterados.entrySet()) {
+            Set<Long> ids = carteirasPorCodigo.get(entry.getKey());
+            if (ids == null) {
+                continue;
+            }
+            for (Long carteiraId : ids) {
+                EstadoCarteira estado = carteiras.get(carteiraId);
+                if (estado != null && estado.atualizarPreco(entry.getKey(), entry.getValue())) {
+                    alteradosPorCarteira.computeIfAbsent(carteiraId, id -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+        }
+
+        for (Map.Entry<Long, List<String>> entry : alteradosPorCarteira.entrySet()) {
+            String topico = getTopicoCarteira(entry.getKey());
+            EstadoCarteira estado = carteiras.get(entry.getKey());
+            messagingTemplate.convertAndSend(topico, criarMensagem("ATUALIZACAO", entry.getKey(), estado, entry.getValue()));
+            assinaturaRegistry.registrarEnvio(topico);
+        }
+    }
+
+    /**
+     * Quantidade de carteiras e de códigos monitorados
+     */
+    public Map<String, Object> getEstatisticas() {
+        Map<String, Object> estatisticas = new HashMap<>();
+        estatisticas.put("carteirasMonitoradas", carteiras.size());
+        estatisticas.put("ativosMonitorados", carteirasPorCodigo.size());
+        return estatisticas;
+    }
+
+    /**
+     * Carrega as posições da carteira com os preços do snapshot atual e atualiza o índice
+     */
+    private EstadoCarteira carregar(Long carteiraId) {
+        // Versão lida antes das posições: uma transação concorrente força nova recarga depois
+        long versaoCarteira = rentabilidadeCacheService.getVersaoCarteira(carteiraId);
+        CotacoesSnapshot snapshot = googleSheetsService.getSnapshot();
+
+        EstadoCarteira estado = new EstadoCarteira(versaoCarteira);
+        for (Ativo ativo : ativoRepository.findByCarteiraId(carteiraId)) {
+            if (ativo.getQuantidade() == null || ativo.getQuantidade().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            String codigo = ativo.getCodigo().toUpperCase();
+            BigDecimal preco = snapshot.getPreco(codigo);
+            if (preco == null) {
+                preco = ativo.getPrecoAtual() != null ? ativo.getPrecoAtual() : ativo.getPrecoCompra();
+            }
+            if (preco == null) {
+                preco = BigDecimal.ZERO; // Sem cotação nem preço médio: vale zero, como em CarteiraService
+            }
+            // Mesmo custo da posição usado no valor investido da carteira (zero sem preço médio)
+            estado.adicionarPosicao(codigo, ativo.getQuantidade(), carteiraService.calcularCustoPosicao(ativo), preco);
+        }
+
+        remover(carteiraId);
+        carteiras.put(carteiraId, estado);
+        for (String codigo : estado.posicoes.keySet()) {
+            carteirasPorCodigo.computeIfAbsent(codigo, c -> ConcurrentHashMap.newKeySet()).add(carteiraId);
+        }
+        return estado;
+    }
+
+    private void remover(Long carteiraId) {
+        EstadoCarteira estado = carteiras.remove(carteiraId);
+        if (estado == null) {
+            return;
+        }
+        for (String codigo : estado.posicoes.keySet()) {
+            carteirasPorCodigo.computeIfPresent(codigo, (c, ids) -> {
+                ids.remove(carteiraId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private Map<String, Object> criarMensagem(String tipo, Long carteiraId, EstadoCarteira estado, List<String> ativosAlterados) {
+        BigDecimal resultado = estado.valorMercado.subtract(estado.custo);
+        Map<String, Object> mensagem = new HashMap<>();
+        mensagem.put("tipo", tipo);
+        mensagem.put("carteiraId", carteiraId);
+        mensagem.put("valorAtualMercado", estado.valorMercado.setScale(2, RoundingMode.HALF_UP));
+        mensagem.put("valorInvestido", estado.custo.setScale(2, RoundingMode.HALF_UP));
+        mensagem.put("resultado", resultado.setScale(2, RoundingMode.HALF_UP));
+        mensagem.put("resultadoPercentual", estado.custo.compareTo(BigDecimal.ZERO) > 0
+                ? resultado.divide(estado.custo, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
+                : BigDecimal.ZERO);
+        mensagem.put("ativosAlterados", ativosAlterados);
+        mensagem.put("versaoCotacoes", googleSheetsService.getVersaoCotacoes());
+        mensagem.put("timestamp", System.currentTimeMillis());
+        return mensagem;
+    }
+
+    private Long extrairCarteiraId(String destino) {
+        if (destino == null || !destino.startsWith(PREFIXO_TOPICO) || !destino.endsWith(SUFIXO_TOPICO)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(destino.substring(PREFIXO_TOPICO.length(), destino.length() - SUFIXO_TOPICO.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Envia uma mensagem para uma única sessão WebSocket (destino /user{destino})
+     */
+    private void enviarParaSessao(String sessionId, String destino, Object payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destino, payload, headers.getMessageHeaders());
+    }
+
+    /**
+     * Posições de uma carteira monitorada e seus totais (alterados apenas sob o lock do service)
+     */
+    private static class EstadoCarteira {
+        private final long versaoCarteira;
+        private final Map<String, Posicao> posicoes = new HashMap<>();
+        private BigDecimal valorMercado = BigDecimal.ZERO;
+        private BigDecimal custo = BigDecimal.ZERO;
+
+        EstadoCarteira(long versaoCarteira) {
+            this.versaoCarteira = versaoCarteira;
+        }
+
+        void adicionarPosicao(String codigo, BigDecimal quantidade, BigDecimal custoPosicao, BigDecimal preco) {
+            Posicao posicao = posicoes.computeIfAbsent(codigo, c -> new Posicao(preco));
+            posicao.quantidade = posicao.quantidade.add(quantidade);
+            valorMercado = valorMercado.add(quantidade.multiply(posicao.preco));
+            custo = custo.add(custoPosicao);
+        }
+
+        /**
+         * Reavalia só a posição do código: soma quantidade x variação do preço
+         * @return false se o preço não mudou para esta carteira
+         */
+        boolean atualizarPreco(String codigo, BigDecimal preco) {
+            Posicao posicao = posicoes.get(codigo);
+            if (posicao == null || posicao.preco.compareTo(preco) == 0) {
+                return false;
+            }
+            valorMercado = valorMercado.add(posicao.quantidade.multiply(preco.subtract(posicao.preco)));
+            posicao.preco = preco;
+            return true;
+        }
+    }
+
+    private static class Posicao {
+        private BigDecimal quantidade = BigDecimal.ZERO;
+        private BigDecimal preco;
+
+        Posicao(BigDecimal preco) {
+            this.preco = preco;
+        }
+    }
+}
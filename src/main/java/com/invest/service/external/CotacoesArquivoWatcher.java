@@ -0,0 +1,129 @@
+package com.invest.service.external;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observa o arquivo externo de cotações (cotacoes.arquivo) em uma thread de fundo
+ * e pede ao GoogleSheetsService para publicar um novo snapshot quando ele muda.
+ *
+ * Eventos em sequência (escrita em partes, arquivo temporário + rename) são agrupados:
+ * a recarga só acontece depois de um intervalo sem novos eventos (cotacoes.watch.debounce-ms).
+ */
+@Component
+public class CotacoesArquivoWatcher {
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Value("${cotacoes.watch.debounce-ms:500}")
+    private long debounceMs;
+
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean executando = false;
+
+    @PostConstruct
+    public void iniciar() {
+        Path arquivo = googleSheetsService.getArquivoExterno();
+        if (arquivo == null) {
+            return; // Sem arquivo externo: usa apenas o JSON do classpath
+        }
+
+        Path diretorio = arquivo.getParent();
+        if (diretorio == null || !Files.isDirectory(diretorio)) {
+            System.err.println("⚠️ Diretório do arquivo de cotações não encontrado: " + diretorio);
+            return;
+        }
+
+        try {
+            watchService = diretorio.getFileSystem().newWatchService();
+            // Rename atômico sobre o arquivo aparece como ENTRY_CREATE
+            diretorio.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("❌ Erro ao observar arquivo de cotações: " + e.getMessage());
+            return;
+        }
+
+        executando = true;
+        thread = new Thread(() -> observar(arquivo.getFileName()), "cotacoes-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("ℹ️ Observando alterações em " + arquivo);
+    }
+
+    @PreDestroy
+    public void parar() {
+        executando = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Ignora erro ao encerrar
+            }
+        }
+    }
+
+    /**
+     * Laço da thread de fundo: espera eventos do diretório, aguarda o arquivo estabilizar e recarrega
+     */
+    private void observar(Path nomeArquivo) {
+        try {
+            while (executando) {
+                WatchKey key = watchService.take();
+                boolean alterado = processarEventos(key, nomeArquivo);
+
+                if (!alterado) {
+                    continue;
+                }
+
+                // Debounce: continua drenando enquanto chegarem eventos dentro do intervalo
+                WatchKey proxima;
+                while ((proxima = watchService.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    processarEventos(proxima, nomeArquivo);
+                }
+
+                if (!googleSheetsService.recarregarCotacoes()) {
+                    // Arquivo ainda inconsistente: tenta mais uma vez após o intervalo
+                    Thread.sleep(debounceMs);
+                    googleSheetsService.recarregarCotacoes();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Encerramento da aplicação
+        }
+    }
+
+    /**
+     * Consome os eventos da chave e indica se algum deles se refere ao arquivo de cotações
+     */
+    private boolean processarEventos(WatchKey key, Path nomeArquivo) {
+        boolean alterado = false;
+        for (WatchEvent<?> evento : key.pollEvents()) {
+            if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                alterado = true; // Eventos perdidos: recarrega por segurança
+            } else if (nomeArquivo.equals(evento.context())) {
+                alterado = true;
+            }
+        }
+        key.reset();
+        return alterado;
+    }
+}
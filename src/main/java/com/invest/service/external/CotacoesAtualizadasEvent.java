@@ -0,0 +1,26 @@
+package com.invest.service.external;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Evento publicado pelo GoogleSheetsService sempre que um novo snapshot de cotações é carregado
+ */
+public class CotacoesAtualizadasEvent extends ApplicationEvent {
+
+    private final CotacoesSnapshot anterior;
+    private final CotacoesSnapshot atual;
+
+    public CotacoesAtualizadasEvent(Object source, CotacoesSnapshot anterior, CotacoesSnapshot atual) {
+        super(source);
+        this.anterior = anterior;
+        this.atual = atual;
+    }
+
+    public CotacoesSnapshot getAnterior() {
+        return anterior;
+    }
+
+    public CotacoesSnapshot getAtual() {
+        return atual;
+    }
+}
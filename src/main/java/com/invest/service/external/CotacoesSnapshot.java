@@ -0,0 +1,81 @@
+package com.invest.service.external;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fotografia imutável das cotações carregadas do cotacoes.json
+ *
+ * Contém o mapa código → preço e o índice código → cotação completa, ambos montados
+ * em uma única leitura do arquivo.
+ *
+ * Publicada de uma só vez pelo GoogleSheetsService: leitores acessam o mapa diretamente,
+ * sem cópia e sem lock. Uma recarga gera um novo snapshot com versão incrementada.
+ */
+public final class CotacoesSnapshot {
+
+    private static final CotacoesSnapshot VAZIO =
+            new CotacoesSnapshot(0L, 0L, Collections.emptyMap(), Collections.emptyMap());
+
+    private final long versao;
+    private final long lastModified;
+    private final LocalDateTime dataCarga;
+    private final Map<String, BigDecimal> precos;
+    private final Map<String, Map<String, Object>> cotacoesCompletas;
+
+    public CotacoesSnapshot(long versao, long lastModified, Map<String, BigDecimal> precos,
+                            Map<String, Map<String, Object>> cotacoesCompletas) {
+        this.versao = versao;
+        this.lastModified = lastModified;
+        this.dataCarga = LocalDateTime.now();
+        this.precos = Collections.unmodifiableMap(new HashMap<>(precos));
+
+        Map<String, Map<String, Object>> indice = new HashMap<>();
+        cotacoesCompletas.forEach((codigo, cotacao) -> indice.put(codigo, Collections.unmodifiableMap(cotacao)));
+        this.cotacoesCompletas = Collections.unmodifiableMap(indice);
+    }
+
+    /**
+     * Snapshot vazio usado antes da primeira carga
+     */
+    public static CotacoesSnapshot vazio() {
+        return VAZIO;
+    }
+
+    public long getVersao() {
+        return versao;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public LocalDateTime getDataCarga() {
+        return dataCarga;
+    }
+
+    /**
+     * Mapa código → preço (somente leitura)
+     */
+    public Map<String, BigDecimal> getPrecos() {
+        return precos;
+    }
+
+    public BigDecimal getPreco(String codigo) {
+        return precos.get(codigo);
+    }
+
+    /**
+     * Cotação completa (preço, variação, máximo, mínimo, nome, data/hora) do código, ou null
+     */
+    public Map<String, Object> getCotacaoCompleta(String codigo) {
+        return cotacoesCompletas.get(codigo);
+    }
+
+    public int getTotal() {
+        return precos.size();
+    }
+}
@@ -2,22 +2,34 @@ package com.invest.service.external;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Serviço para leitura de cotações de ativos a partir de um arquivo JSON local.
  * 
  * O arquivo cotacoes.json é gerado por script Python a partir da planilha Google Sheets.
+ * As cotações ficam em memória (CotacoesSnapshot) e só são relidas quando o arquivo muda;
+ * requisições nunca acessam o disco.
  */
 @Service
 public class GoogleSheetsService {
@@ -28,11 +40,29 @@ public class GoogleSheetsService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     private static final String JSON_PATH = "classpath:data/cotacoes.json";
 
-    // Cache simples (para evitar leitura frequente do disco)
-    private Map<String, BigDecimal> cotacoesCache = null;
-    private long lastModified = 0;
+    // Caminho do cotacoes.json gerado externamente (ex: pelo atualiza_cotacoes.py).
+    // Vazio = usa apenas o arquivo empacotado no classpath.
+    @Value("${cotacoes.arquivo:}")
+    private String caminhoArquivoExterno;
+
+    // Snapshot imutável publicado atomicamente (leitores nunca copiam nem bloqueiam)
+    private final AtomicReference<CotacoesSnapshot> snapshot = new AtomicReference<>(CotacoesSnapshot.vazio());
+
+    // Garante que apenas uma thread recarrega o arquivo por vez
+    private final ReentrantLock recargaLock = new ReentrantLock();
+
+    /**
+     * Carga inicial das cotações na subida da aplicação
+     */
+    @PostConstruct
+    public void carregarInicial() {
+        recarregarCotacoes();
+    }
 
     /**
      * Busca o preço atual de um ativo pelo código (ex: PETR4, MGLU3)
@@ -44,31 +74,30 @@ public class GoogleSheetsService {
             return null;
         }
 
-        try {
-            // Recarrega o cache se necessário
-            recarregarCotacoesSeNecessario();
-
-            String codigoUpper = codigoAtivo.toUpperCase().trim();
-            return cotacoesCache.get(codigoUpper);
-
-        } catch (Exception e) {
-            System.err.println("Erro ao buscar preço do ativo " + codigoAtivo + ": " + e.getMessage());
-            return null;
-        }
+        String codigoUpper = codigoAtivo.toUpperCase().trim();
+        return snapshot.get().getPreco(codigoUpper);
     }
 
     /**
      * Retorna todas as cotações disponíveis
-     * @return Mapa com código do ativo e preço
+     * @return Mapa (somente leitura) com código do ativo e preço
      */
     public Map<String, BigDecimal> getAllCotacoes() {
-        try {
-            recarregarCotacoesSeNecessario();
-            return new HashMap<>(cotacoesCache);
-        } catch (Exception e) {
-            System.err.println("Erro ao buscar todas as cotações: " + e.getMessage());
-            return new HashMap<>();
-        }
+        return snapshot.get().getPrecos();
+    }
+
+    /**
+     * Retorna o snapshot atual das cotações (não acessa o disco)
+     */
+    public CotacoesSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Versão atual das cotações carregadas (incrementada a cada recarga do arquivo)
+     */
+    public long getVersaoCotacoes() {
+        return snapshot.get().getVersao();
     }
 
     /**
@@ -81,103 +110,79 @@ public class GoogleSheetsService {
             return null;
         }
 
-        try {
-            Resource resource = resourceLoader.getResource(JSON_PATH);
-            JsonNode rootNode = objectMapper.readTree(resource.getInputStream());
-            String codigoUpper = codigoAtivo.toUpperCase().trim();
-
-            for (JsonNode ativo : rootNode) {
-                String codigo = null;
-                if (ativo.has("Código")) {
-                    codigo = ativo.get("Código").asText().trim().toUpperCase();
-                }
-
-                if (codigo != null && codigo.equals(codigoUpper)) {
-                    Map<String, Object> cotacaoMap = new HashMap<>();
-                    cotacaoMap.put("codigo", codigo);
-
-                    // Preço
-                    if (ativo.has("Preço")) {
-                        String precoStr = ativo.get("Preço").asText().replace(",", ".").trim();
-                        try {
-                            cotacaoMap.put("precoAtual", new BigDecimal(precoStr).setScale(2, RoundingMode.HALF_UP));
-                        } catch (NumberFormatException e) {
-                            // Ignora se não conseguir converter
-                        }
-                    }
-
-                    // Variação
-                    if (ativo.has("Variação")) {
-                        String variacaoStr = ativo.get("Variação").asText().replace(",", ".").trim();
-                        try {
-                            cotacaoMap.put("variacao", new BigDecimal(variacaoStr).setScale(2, RoundingMode.HALF_UP));
-                        } catch (NumberFormatException e) {
-                            // Ignora se não conseguir converter
-                        }
-                    }
-
-                    // Máximo
-                    if (ativo.has("Máximo")) {
-                        String maxStr = ativo.get("Máximo").asText().replace(",", ".").trim();
-                        try {
-                            cotacaoMap.put("precoMaximo", new BigDecimal(maxStr).setScale(2, RoundingMode.HALF_UP));
-                        } catch (NumberFormatException e) {
-                            // Ignora se não conseguir converter
-                        }
-                    }
-
-                    // Mínimo
-                    if (ativo.has("Mínimo")) {
-                        String minStr = ativo.get("Mínimo").asText().replace(",", ".").trim();
-                        try {
-                            cotacaoMap.put("precoMinimo", new BigDecimal(minStr).setScale(2, RoundingMode.HALF_UP));
-                        } catch (NumberFormatException e) {
-                            // Ignora se não conseguir converter
-                        }
-                    }
-
-                    // Nome
-                    if (ativo.has("Nome")) {
-                        cotacaoMap.put("nome", ativo.get("Nome").asText());
-                    }
-
-                    // Data/Hora
-                    if (ativo.has("Data/Hora")) {
-                        cotacaoMap.put("dataHora", ativo.get("Data/Hora").asText());
-                    }
-
-                    return cotacaoMap;
-                }
-            }
+        // Consulta no índice montado na carga do arquivo (sem reler o JSON)
+        String codigoUpper = codigoAtivo.toUpperCase().trim();
+        return snapshot.get().getCotacaoCompleta(codigoUpper);
+    }
 
-            return null;
-        } catch (Exception e) {
-            System.err.println("Erro ao buscar cotação completa do ativo " + codigoAtivo + ": " + e.getMessage());
+    /**
+     * Arquivo externo de cotações configurado em cotacoes.arquivo, ou null se não houver
+     */
+    public Path getArquivoExterno() {
+        if (caminhoArquivoExterno == null || caminhoArquivoExterno.trim().isEmpty()) {
             return null;
         }
+        return Paths.get(caminhoArquivoExterno.trim()).toAbsolutePath().normalize();
     }
 
     /**
-     * Atualiza o cache de cotações se o arquivo foi modificado
+     * Relê o arquivo de cotações e publica um novo snapshot.
+     * Chamado na subida, pelo CotacoesArquivoWatcher quando o arquivo muda, ou manualmente.
+     * Apenas uma thread recarrega por vez; se a leitura falhar (ex: arquivo escrito pela metade),
+     * o snapshot anterior continua valendo.
+     * @return true se um novo snapshot foi publicado
      */
-    private void recarregarCotacoesSeNecessario() throws IOException {
-        Resource resource = resourceLoader.getResource(JSON_PATH);
-        long currentLastModified = resource.lastModified(); // Só funciona se o recurso for um arquivo real
+    public boolean recarregarCotacoes() {
+        recargaLock.lock();
+        try {
+            Resource resource = getResourceCotacoes();
+            CotacoesSnapshot atual = snapshot.get();
+            CotacoesSnapshot novo = carregarSnapshot(resource, atual.getVersao() + 1, resource.lastModified());
+            snapshot.set(novo);
+            eventPublisher.publishEvent(new CotacoesAtualizadasEvent(this, atual, novo));
+            return true;
+        } catch (Exception e) {
+            System.err.println("Erro ao recarregar cotações: " + e.getMessage());
+            return false;
+        } finally {
+            recargaLock.unlock();
+        }
+    }
 
-        if (cotacoesCache == null || currentLastModified > lastModified) {
-            cotacoesCache = carregarCotacoes(resource);
-            lastModified = currentLastModified;
+    /**
+     * Usa o arquivo externo se configurado e existente; senão, o JSON empacotado no classpath
+     */
+    private Resource getResourceCotacoes() {
+        Path arquivoExterno = getArquivoExterno();
+        if (arquivoExterno != null && Files.isRegularFile(arquivoExterno)) {
+            return new FileSystemResource(arquivoExterno);
         }
+        return resourceLoader.getResource(JSON_PATH);
     }
 
     /**
-     * Lê o arquivo JSON e retorna um mapa de código → preço
+     * Lê o arquivo JSON uma única vez e monta o snapshot com o mapa código → preço
+     * e o índice código → cotação completa
      */
-    private Map<String, BigDecimal> carregarCotacoes(Resource resource) throws IOException {
-        JsonNode rootNode = objectMapper.readTree(resource.getInputStream());
+    private CotacoesSnapshot carregarSnapshot(Resource resource, long versao, long lastModified) throws IOException {
+        JsonNode rootNode;
+        try (InputStream inputStream = resource.getInputStream()) {
+            rootNode = objectMapper.readTree(inputStream);
+        }
+        // Arquivo vazio ou truncado durante a escrita: mantém o snapshot anterior
+        if (rootNode == null || !rootNode.isArray()) {
+            throw new IOException("Conteúdo inválido em " + resource.getDescription());
+        }
         Map<String, BigDecimal> cotacoes = new HashMap<>();
+        Map<String, Map<String, Object>> cotacoesCompletas = new HashMap<>();
 
         for (JsonNode ativo : rootNode) {
+            // Cotação completa (indexada pelo campo "Código"; vale a primeira ocorrência)
+            if (ativo.has("Código")) {
+                String codigoCompleto = ativo.get("Código").asText().trim().toUpperCase();
+                cotacoesCompletas.computeIfAbsent(codigoCompleto, c -> montarCotacaoCompleta(ativo, c));
+            }
+
             // Tenta encontrar código em diferentes campos possíveis
             String codigo = null;
             if (ativo.has("Código")) {
@@ -209,7 +214,68 @@ public class GoogleSheetsService {
             }
         }
 
-        return cotacoes;
+        return new CotacoesSnapshot(versao, lastModified, cotacoes, cotacoesCompletas);
+    }
+
+    /**
+     * Monta o mapa com todos os dados de uma cotação (preço, variação, máximo, mínimo, nome e data/hora)
+     */
+    private Map<String, Object> montarCotacaoCompleta(JsonNode ativo, String codigo) {
+        Map<String, Object> cotacaoMap = new HashMap<>();
+        cotacaoMap.put("codigo", codigo);
+
+        // Preço
+        BigDecimal preco = converterValor(ativo, "Preço");
+        if (preco != null) {
+            cotacaoMap.put("precoAtual", preco);
+        }
+
+        // Variação
+        BigDecimal variacao = converterValor(ativo, "Variação");
+        if (variacao != null) {
+            cotacaoMap.put("variacao", variacao);
+        }
+
+        // Máximo
+        BigDecimal maximo = converterValor(ativo, "Máximo");
+        if (maximo != null) {
+            cotacaoMap.put("precoMaximo", maximo);
+        }
+
+        // Mínimo
+        BigDecimal minimo = converterValor(ativo, "Mínimo");
+        if (minimo != null) {
+            cotacaoMap.put("precoMinimo", minimo);
+        }
+
+        // Nome
+        if (ativo.has("Nome")) {
+            cotacaoMap.put("nome", ativo.get("Nome").asText());
+        }
+
+        // Data/Hora
+        if (ativo.has("Data/Hora")) {
+            cotacaoMap.put("dataHora", ativo.get("Data/Hora").asText());
+        }
+
+        return cotacaoMap;
+    }
+
+    /**
+     * Converte um campo numérico do JSON (com vírgula decimal) para BigDecimal com 2 casas
+     * @return valor convertido ou null se o campo não existir ou não for numérico
+     */
+    private BigDecimal converterValor(JsonNode ativo, String campo) {
+        if (!ativo.has(campo)) {
+            return null;
+        }
+        String valorStr = ativo.get(campo).asText().replace(",", ".").trim();
+        try {
+            return new BigDecimal(valorStr).setScale(2, RoundingMode.HALF_UP);
+        } catch (NumberFormatException e) {
+            // Ignora se não conseguir converter
+            return null;
+        }
     }
 
     public List<List<Object>> readFromSheet() {
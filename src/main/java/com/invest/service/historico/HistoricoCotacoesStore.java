@@ -0,0 +1,322 @@
+package com.invest.service.historico;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.invest.service.external.CotacoesAtualizadasEvent;
+import com.invest.service.external.CotacoesSnapshot;
+import com.invest.service.external.GoogleSheetsService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Série histórica de cotações em disco, somente de inclusão (append-only)
+ *
+ * Cada snapshot carregado pelo GoogleSheetsService é gravado em um arquivo por ativo
+ * ({diretorio}/{CODIGO}.dat) com registros de tamanho fixo: timestamp (long, ms) e preço
+ * em centavos (long). Os registros ficam em ordem de tempo, então consultas por período
+ * fazem busca binária sobre o arquivo mapeado em memória, sem banco de dados.
+ *
+ * Só é gravado um ponto quando o preço muda ou no primeiro snapshot do dia, de modo que
+ * o preço em uma data é o último ponto até ela.
+ */
+@Component
+public class HistoricoCotacoesStore {
+
+    // timestamp (8 bytes) + preço em centavos (8 bytes)
+    private static final int TAMANHO_REGISTRO = 16;
+
+    private static final ZoneId ZONA = ZoneId.systemDefault();
+    private static final Pattern CODIGO_VALIDO = Pattern.compile("[A-Z0-9._-]{1,20}");
+
+    @Autowired
+    private GoogleSheetsService googleSheetsService;
+
+    @Value("${cotacoes.historico.diretorio:data/historico}")
+    private String diretorio;
+
+    private Path base;
+    private volatile boolean habilitado = false;
+
+    private final Map<String, Segmento> segmentos = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void iniciar() {
+        if (diretorio == null || diretorio.trim().isEmpty()) {
+            return; // Histórico desabilitado
+        }
+        try {
+            base = Paths.get(diretorio.trim()).toAbsolutePath().normalize();
+            Files.createDirectories(base);
+            habilitado = true;
+        } catch (IOException e) {
+            System.err.println("❌ Não foi possível criar o diretório do histórico de cotações: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        segmentos.values().forEach(Segmento::fechar);
+    }
+
+    /**
+     * A carga inicial acontece antes dos listeners estarem registrados: grava o snapshot atual na subida
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onAplicacaoPronta() {
+        registrarSnapshot(googleSheetsService.getSnapshot());
+    }
+
+    @EventListener
+    public void onCotacoesAtualizadas(CotacoesAtualizadasEvent event) {
+        registrarSnapshot(event.getAtual());
+    }
+
+    /**
+     * Anexa os preços do snapshot à série de cada ativo
+     */
+    public void registrarSnapshot(CotacoesSnapshot snapshot) {
+        if (!habilitado || snapshot.getTotal() == 0) {
+            return;
+        }
+
+        long timestamp = snapshot.getDataCarga().atZone(ZONA).toInstant().toEpochMilli();
+        for (Map.Entry<String, BigDecimal> entry : snapshot.getPrecos().entrySet()) {
+            Segmento segmento = getSegmento(entry.getKey(), true);
+            if (segmento == null) {
+                continue;
+            }
+            try {
+                segmento.anexar(timestamp, paraCentavos(entry.getValue()));
+            } catch (IOException e) {
+                System.err.println("Erro ao gravar histórico de " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Pontos do ativo no período [inicio, fim]
+     */
+    public List<PontoCotacao> buscar(String codigo, LocalDateTime inicio, LocalDateTime fim) {
+        List<PontoCotacao> pontos = new ArrayList<>();
+        ByteBuffer dados = lerSegmento(codigo);
+        if (dados == null) {
+            return pontos;
+        }
+
+        long de = inicio.atZone(ZONA).toInstant().toEpochMilli();
+        long ate = fim.atZone(ZONA).toInstant().toEpochMilli();
+        int total = dados.limit() / TAMANHO_REGISTRO;
+        for (int i = primeiroIndiceAPartirDe(dados, total, de); i < total; i++) {
+            long timestamp = dados.getLong(i * TAMANHO_REGISTRO);
+            if (timestamp > ate) {
+                break;
+            }
+            pontos.add(new PontoCotacao(timestamp, dados.getLong(i * TAMANHO_REGISTRO + 8)));
+        }
+        return pontos;
+    }
+
+    /**
+     * Último ponto do ativo até o instante informado (preço vigente naquele momento), ou null
+     */
+    public PontoCotacao buscarUltimoAte(String codigo, LocalDateTime ate) {
+        ByteBuffer dados = lerSegmento(codigo);
+        if (dados == null) {
+            return null;
+        }
+
+        int total = dados.limit() / TAMANHO_REGISTRO;
+        long limite = ate.atZone(ZONA).toInstant().toEpochMilli();
+        int indice = primeiroIndiceAPartirDe(dados, total, limite + 1) - 1;
+        if (indice < 0) {
+            return null;
+        }
+        return new PontoCotacao(dados.getLong(indice * TAMANHO_REGISTRO), dados.getLong(indice * TAMANHO_REGISTRO + 8));
+    }
+
+    /**
+     * Preço de fechamento (último ponto) de cada dia do período que tem registro
+     */
+    public TreeMap<LocalDate, BigDecimal> buscarFechamentosDiarios(String codigo, LocalDate inicio, LocalDate fim) {
+        TreeMap<LocalDate, BigDecimal> fechamentos = new TreeMap<>();
+        for (PontoCotacao ponto : buscar(codigo, inicio.atStartOfDay(), fim.plusDays(1).atStartOfDay().minusNanos(1))) {
+            fechamentos.put(ponto.getDataHora().toLocalDate(), ponto.getPreco());
+        }
+        return fechamentos;
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Segmento do ativo; sem criar, retorna null se o arquivo ainda não existe
+     * (consultas por códigos desconhecidos não criam arquivos nem mantêm canais abertos)
+     */
+    private Segmento getSegmento(String codigo, boolean criar) {
+        if (!habilitado || codigo == null) {
+            return null;
+        }
+        String codigoUpper = codigo.toUpperCase().trim();
+        if (!CODIGO_VALIDO.matcher(codigoUpper).matches()) {
+            return null; // Evita nomes de arquivo inválidos
+        }
+        Segmento segmento = segmentos.get(codigoUpper);
+        if (segmento != null) {
+            return segmento;
+        }
+        Path arquivo = base.resolve(codigoUpper + ".dat");
+        if (!criar && !Files.exists(arquivo)) {
+            return null;
+        }
+        return segmentos.computeIfAbsent(codigoUpper, c -> new Segmento(arquivo));
+    }
+
+    private ByteBuffer lerSegmento(String codigo) {
+        Segmento segmento = getSegmento(codigo, false);
+        if (segmento == null) {
+            return null;
+        }
+        try {
+            return segmento.leitura();
+        } catch (IOException e) {
+            System.err.println("Erro ao ler histórico de " + codigo + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Busca binária: índice do primeiro registro com timestamp >= alvo (ou total se não houver)
+     */
+    private static int primeiroIndiceAPartirDe(ByteBuffer dados, int total, long alvo) {
+        int inicio = 0;
+        int fim = total;
+        while (inicio < fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (dados.getLong(meio * TAMANHO_REGISTRO) < alvo) {
+                inicio = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return inicio;
+    }
+
+    private static long paraCentavos(BigDecimal preco) {
+        return preco.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Arquivo de um ativo: escrita por append e leitura via arquivo mapeado em memória
+     */
+    private static class Segmento {
+
+        private final Path arquivo;
+        private FileChannel canal;
+        private MappedByteBuffer mapa;
+        private long tamanhoMapeado = -1;
+        private long ultimoTimestamp = Long.MIN_VALUE;
+        private long ultimoPreco = Long.MIN_VALUE;
+        private final ByteBuffer registro = ByteBuffer.allocate(TAMANHO_REGISTRO);
+
+        Segmento(Path arquivo) {
+            this.arquivo = arquivo;
+        }
+
+        synchronized void anexar(long timestamp, long precoCentavos) throws IOException {
+            abrir();
+            if (timestamp <= ultimoTimestamp) {
+                return; // Mantém a série ordenada (snapshot já gravado)
+            }
+            if (precoCentavos == ultimoPreco && mesmoDia(timestamp, ultimoTimestamp)) {
+                return; // Preço não mudou no dia
+            }
+
+            registro.clear();
+            registro.putLong(timestamp).putLong(precoCentavos).flip();
+            long posicao = canal.size();
+            while (registro.hasRemaining()) {
+                posicao += canal.write(registro, posicao);
+            }
+            ultimoTimestamp = timestamp;
+            ultimoPreco = precoCentavos;
+        }
+
+        /**
+         * Visão somente leitura dos registros gravados (remapeia quando o arquivo cresce)
+         */
+        synchronized ByteBuffer leitura() throws IOException {
+            abrir();
+            long tamanho = (canal.size() / TAMANHO_REGISTRO) * TAMANHO_REGISTRO;
+            if (mapa == null || tamanho != tamanhoMapeado) {
+                mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+                tamanhoMapeado = tamanho;
+            }
+            return mapa.duplicate();
+        }
+
+        synchronized void fechar() {
+            try {
+                if (canal != null) {
+                    canal.close();
+                }
+            } catch (IOException e) {
+                // Ignora erro ao encerrar
+            }
+        }
+
+        private void abrir() throws IOException {
+            if (canal != null) {
+                return;
+            }
+            canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // Descarta um registro incompleto no fim (gravação interrompida) e recupera o último ponto
+            long tamanho = (canal.size() / TAMANHO_REGISTRO) * TAMANHO_REGISTRO;
+            if (tamanho != canal.size()) {
+                canal.truncate(tamanho);
+            }
+            if (tamanho > 0) {
+                ByteBuffer ultimo = ByteBuffer.allocate(TAMANHO_REGISTRO);
+                canal.read(ultimo, tamanho - TAMANHO_REGISTRO);
+                ultimo.flip();
+                ultimoTimestamp = ultimo.getLong();
+                ultimoPreco = ultimo.getLong();
+            }
+        }
+
+        private static boolean mesmoDia(long timestampA, long timestampB) {
+            if (timestampB == Long.MIN_VALUE) {
+                return false;
+            }
+            return LocalDate.ofInstant(Instant.ofEpochMilli(timestampA), ZONA)
+                    .equals(LocalDate.ofInstant(Instant.ofEpochMilli(timestampB), ZONA));
+        }
+    }
+}
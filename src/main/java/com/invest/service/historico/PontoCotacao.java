@@ -0,0 +1,39 @@
+package com.invest.service.historico;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Ponto da série histórica de cotações: instante da carga e preço (em centavos)
+ */
+public class PontoCotacao {
+
+    private final long timestamp;
+    private final long precoCentavos;
+
+    public PontoCotacao(long timestamp, long precoCentavos) {
+        this.timestamp = timestamp;
+        this.precoCentavos = precoCentavos;
+    }
+
+    /**
+     * Instante da carga em milissegundos desde epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getPrecoCentavos() {
+        return precoCentavos;
+    }
+
+    public LocalDateTime getDataHora() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    public BigDecimal getPreco() {
+        return BigDecimal.valueOf(precoCentavos, 2);
+    }
+}
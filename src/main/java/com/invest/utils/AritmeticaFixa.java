@@ -0,0 +1,130 @@
+package com.invest.utils;
+
+import java.math.BigDecimal;
+
+/**
+ * Utilitário de aritmética em ponto fixo sobre long para somas e produtos de valores monetários
+ * Responsabilidade única: evitar um BigDecimal por operação nos laços de cálculo
+ *
+ * Os valores são convertidos uma vez para long na escala informada (preço: 2, quantidade: 4,
+ * preço x quantidade: 6), na entrada do cálculo; as operações seguintes só usam long, sem
+ * alocação. Todas detectam estouro (Math.*Exact) e lançam ArithmeticException, para que o
+ * chamador refaça o cálculo em BigDecimal.
+ */
+public final class AritmeticaFixa {
+
+    public static final int ESCALA_PRECO = 2;
+    public static final int ESCALA_QUANTIDADE = 4;
+    public static final int ESCALA_PRODUTO = ESCALA_PRECO + ESCALA_QUANTIDADE;
+
+    private static final long[] POTENCIAS_DE_DEZ = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+
+    private AritmeticaFixa() {
+        throw new UnsupportedOperationException("Esta classe não pode ser instanciada");
+    }
+
+    /**
+     * Converte para long na escala informada
+     * @throws ArithmeticException se o valor tiver mais casas decimais que a escala ou não couber em long
+     */
+    public static long paraFixo(BigDecimal valor, int escala) {
+        int escalaValor = valor.scale();
+        if (escalaValor > escala) {
+            throw new ArithmeticException("Escala " + escalaValor + " maior que a do cálculo: " + escala);
+        }
+        int deslocamento = escala - escalaValor;
+        if (deslocamento >= POTENCIAS_DE_DEZ.length) {
+            throw new ArithmeticException("Valor fora do intervalo do cálculo: " + valor);
+        }
+        // O ajuste de escala é feito em long, sem criar outro BigDecimal
+        return Math.multiplyExact(valor.unscaledValue().longValueExact(), POTENCIAS_DE_DEZ[deslocamento]);
+    }
+
+    /**
+     * Converte um valor em ponto fixo de volta para BigDecimal
+     */
+    public static BigDecimal paraBigDecimal(long valor, int escala) {
+        return BigDecimal.valueOf(valor, escala);
+    }
+
+    public static long somar(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtrair(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Produto de dois valores em ponto fixo (a escala do resultado é a soma das escalas)
+     */
+    public static long multiplicar(long a, long b) {
+        return Math.multiplyExact(a, b);
+    }
+
+    /**
+     * Soma de BigDecimal acumulada em long
+     *
+     * O resultado é idêntico (valor e escala) ao de somar as parcelas com BigDecimal.add a partir
+     * de BigDecimal.ZERO. Parcelas já em ponto fixo entram por adicionar(long, int) sem alocação;
+     * se uma parcela não couber na escala ou a soma estourar, o acumulado passa a ser BigDecimal
+     * a partir daquele ponto.
+     */
+    public static final class Soma {
+
+        private final int escala;
+        private long valor;
+        private int escalaResultado;
+        private BigDecimal fallback;
+
+        public Soma(int escala) {
+            this.escala = escala;
+        }
+
+        /**
+         * Adiciona uma parcela em BigDecimal (convertida uma única vez para ponto fixo)
+         */
+        public void adicionar(BigDecimal parcela) {
+            if (fallback == null) {
+                try {
+                    adicionar(paraFixo(parcela, escala), parcela.scale());
+                    return;
+                } catch (ArithmeticException e) {
+                    fallback = acumuladoEmBigDecimal();
+                }
+            }
+            fallback = fallback.add(parcela);
+        }
+
+        /**
+         * Adiciona uma parcela já em ponto fixo na escala da soma
+         * @param escalaParcela escala original da parcela, no máximo a da soma (define a escala do resultado, como em BigDecimal.add)
+         */
+        public void adicionar(long parcela, int escalaParcela) {
+            if (fallback == null) {
+                try {
+                    valor = Math.addExact(valor, parcela);
+                    escalaResultado = Math.max(escalaResultado, escalaParcela);
+                    return;
+                } catch (ArithmeticException e) {
+                    fallback = acumuladoEmBigDecimal();
+                }
+            }
+            // A escala do acumulado já é >= 0: só a escala original positiva afeta o resultado
+            fallback = fallback.add(BigDecimal.valueOf(parcela, escala).setScale(Math.max(escalaParcela, 0)));
+        }
+
+        public BigDecimal getResultado() {
+            return fallback != null ? fallback : acumuladoEmBigDecimal();
+        }
+
+        private BigDecimal acumuladoEmBigDecimal() {
+            // Todas as parcelas tinham escala <= escalaResultado: a redução de escala é exata
+            return BigDecimal.valueOf(valor, escala).setScale(escalaResultado);
+        }
+    }
+}
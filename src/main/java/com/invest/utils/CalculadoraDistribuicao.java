@@ -0,0 +1,111 @@
+package com.invest.utils;
+
+import com.invest.model.Ativo;
+import com.invest.model.TipoAtivo;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utilitário para a distribuição da carteira por tipo de ativo
+ * Responsabilidade única: valor e percentual de cada TipoAtivo
+ *
+ * Os valores são acumulados em uma única passada pelos ativos (ou vêm prontos de um GROUP BY
+ * no banco) em um EnumMap com todos os tipos, inclusive os sem posição (zero). O total é a
+ * soma dos tipos, então os percentuais sempre somam 100%.
+ */
+public final class CalculadoraDistribuicao {
+
+    private static final BigDecimal CEM = BigDecimal.valueOf(100);
+
+    /** Tipos agrupados em percentualRendaFixa */
+    public static final Set<TipoAtivo> RENDA_FIXA = EnumSet.of(
+            TipoAtivo.CDB, TipoAtivo.LCI, TipoAtivo.LCA, TipoAtivo.DEBENTURE, TipoAtivo.TESOURO);
+
+    private CalculadoraDistribuicao() {
+        throw new UnsupportedOperationException("Esta classe não pode ser instanciada");
+    }
+
+    /**
+     * Valor de mercado por tipo (quantidade x preço atual, ou preço de compra sem cotação)
+     */
+    public static EnumMap<TipoAtivo, BigDecimal> calcularValores(List<Ativo> ativos) {
+        EnumMap<TipoAtivo, BigDecimal> valores = criarMapaZerado();
+        for (Ativo ativo : ativos) {
+            if (ativo.getTipo() == null || ativo.getQuantidade() == null) {
+                continue;
+            }
+            BigDecimal preco = ativo.getPrecoAtual() != null ? ativo.getPrecoAtual() : ativo.getPrecoCompra();
+            if (preco != null) {
+                valores.merge(ativo.getTipo(), ativo.getQuantidade().multiply(preco), BigDecimal::add);
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Valores por tipo a partir das linhas [tipo, valor] de AtivoRepository.somarValorPorTipo
+     */
+    public static EnumMap<TipoAtivo, BigDecimal> calcularValores(Iterable<Object[]> linhas) {
+        EnumMap<TipoAtivo, BigDecimal> valores = criarMapaZerado();
+        for (Object[] linha : linhas) {
+            if (linha[0] != null && linha[1] != null) {
+                valores.merge((TipoAtivo) linha[0], (BigDecimal) linha[1], BigDecimal::add);
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Soma dos valores de todos os tipos
+     */
+    public static BigDecimal calcularTotal(Map<TipoAtivo, BigDecimal> valores) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal valor : valores.values()) {
+            total = total.add(valor);
+        }
+        return total;
+    }
+
+    /**
+     * Percentual (0 a 100, 4 casas na divisão) de cada tipo sobre o total; vazio se o total for zero
+     */
+    public static EnumMap<TipoAtivo, BigDecimal> calcularPercentuais(Map<TipoAtivo, BigDecimal> valores, BigDecimal total) {
+        EnumMap<TipoAtivo, BigDecimal> percentuais = new EnumMap<>(TipoAtivo.class);
+        if (total.compareTo(BigDecimal.ZERO) <= 0) {
+            return percentuais;
+        }
+        for (Map.Entry<TipoAtivo, BigDecimal> entrada : valores.entrySet()) {
+            percentuais.put(entrada.getKey(), percentual(entrada.getValue(), total));
+        }
+        return percentuais;
+    }
+
+    /**
+     * Percentual de um grupo de tipos sobre o total
+     */
+    public static BigDecimal calcularPercentualGrupo(Map<TipoAtivo, BigDecimal> valores, Set<TipoAtivo> tipos, BigDecimal total) {
+        BigDecimal soma = BigDecimal.ZERO;
+        for (TipoAtivo tipo : tipos) {
+            soma = soma.add(valores.getOrDefault(tipo, BigDecimal.ZERO));
+        }
+        return percentual(soma, total);
+    }
+
+    private static BigDecimal percentual(BigDecimal valor, BigDecimal total) {
+        return valor.divide(total, 4, RoundingMode.HALF_UP).multiply(CEM);
+    }
+
+    private static EnumMap<TipoAtivo, BigDecimal> criarMapaZerado() {
+        EnumMap<TipoAtivo, BigDecimal> valores = new EnumMap<>(TipoAtivo.class);
+        for (TipoAtivo tipo : TipoAtivo.values()) {
+            valores.put(tipo, BigDecimal.ZERO);
+        }
+        return valores;
+    }
+}
@@ -9,7 +9,6 @@ import java.math.RoundingMode;
 import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -51,10 +50,13 @@ public final class CalculadoraImpostos {
         for (Map.Entry<YearMonth, List<Transacao>> entry : vendasPorMes.entrySet()) {
             List<Transacao> vendasMes = entry.getValue();
 
-            BigDecimal totalVendidoMes = vendasMes.stream()
-                    .map(Transacao::getValorTotal)
-                    .filter(Objects::nonNull)
-                    .reduce(ZERO, BigDecimal::add);
+            AritmeticaFixa.Soma somaVendidoMes = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRECO);
+            for (Transacao venda : vendasMes) {
+                if (venda.getValorTotal() != null) {
+                    somaVendidoMes.adicionar(venda.getValorTotal());
+                }
+            }
+            BigDecimal totalVendidoMes = somaVendidoMes.getResultado();
 
             BigDecimal ganhoAcoes = ganhoLiquidoPorTipo(vendasMes, TipoAtivo.ACAO);
             BigDecimal ganhoFii = ganhoLiquidoPorTipo(vendasMes, TipoAtivo.FII);
@@ -82,7 +84,47 @@ public final class CalculadoraImpostos {
         return totalImposto.setScale(SCALE, RoundingMode.HALF_UP);
     }
 
+    /**
+     * Ganho líquido das vendas do tipo no mês: calculado em ponto fixo (escala 6) e refeito em
+     * BigDecimal se algum valor não couber. O resultado só é comparado e multiplicado antes do
+     * arredondamento final para 2 casas, então as duas formas produzem o mesmo imposto.
+     */
     private static BigDecimal ganhoLiquidoPorTipo(List<Transacao> vendasMes, TipoAtivo tipoAtivo) {
+        try {
+            return ganhoLiquidoPorTipoFixo(vendasMes, tipoAtivo);
+        } catch (ArithmeticException e) {
+            return ganhoLiquidoPorTipoDecimal(vendasMes, tipoAtivo);
+        }
+    }
+
+    private static BigDecimal ganhoLiquidoPorTipoFixo(List<Transacao> vendasMes, TipoAtivo tipoAtivo) {
+        long ganho = 0L;
+        for (Transacao venda : vendasMes) {
+            if (venda.getTipoAtivo() != tipoAtivo) {
+                continue;
+            }
+            BigDecimal receitaVenda = venda.getValorLiquido() != null ? venda.getValorLiquido() : venda.getValorTotal();
+            if (receitaVenda == null) {
+                continue;
+            }
+
+            if (venda.getAtivo() == null || venda.getAtivo().getPrecoCompra() == null) {
+                continue;
+            }
+
+            long custo = AritmeticaFixa.multiplicar(
+                    AritmeticaFixa.paraFixo(venda.getQuantidade(), AritmeticaFixa.ESCALA_QUANTIDADE),
+                    AritmeticaFixa.paraFixo(venda.getAtivo().getPrecoCompra(), AritmeticaFixa.ESCALA_PRECO));
+            long ganhoTransacao = AritmeticaFixa.subtrair(
+                    AritmeticaFixa.paraFixo(receitaVenda, AritmeticaFixa.ESCALA_PRODUTO), custo);
+            if (ganhoTransacao > 0) {
+                ganho = AritmeticaFixa.somar(ganho, ganhoTransacao);
+            }
+        }
+        return AritmeticaFixa.paraBigDecimal(ganho, AritmeticaFixa.ESCALA_PRODUTO);
+    }
+
+    private static BigDecimal ganhoLiquidoPorTipoDecimal(List<Transacao> vendasMes, TipoAtivo tipoAtivo) {
         BigDecimal ganho = ZERO;
         for (Transacao venda : vendasMes) {
             if (venda.getTipoAtivo() != tipoAtivo) {
@@ -0,0 +1,105 @@
+package com.invest.utils;
+
+import com.invest.model.TipoTransacao;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+/**
+ * Utilitário para a posição de um ativo a partir das transações
+ * Responsabilidade única: quantidade, preço médio e resultado realizado após cada transação
+ *
+ * Mesmas regras do TransacaoService: entradas somam quantidade, saídas subtraem e só a
+ * compra altera o preço médio (média ponderada); a venda realiza quantidade x (preço - preço
+ * médio). Permite reconstruir uma posição reaplicando as transações em ordem de data, sempre
+ * com o mesmo resultado para a mesma sequência.
+ */
+public final class CalculadoraPosicao {
+
+    private CalculadoraPosicao() {
+        throw new UnsupportedOperationException("Esta classe não pode ser instanciada");
+    }
+
+    /**
+     * Preço médio ponderado após uma compra, na escala da coluna preco_compra
+     * Arredondado a cada compra, como o valor gravado no ativo: a reconstrução pelo livro
+     * parte do mesmo preço médio que a atualização direta usa na compra seguinte.
+     * Sem posição anterior (quantidade zero ou negativa), é o preço da compra
+     */
+    public static BigDecimal calcularPrecoMedio(BigDecimal quantidadeAnterior, BigDecimal precoMedioAnterior,
+                                                BigDecimal quantidade, BigDecimal precoUnitario) {
+        if (quantidadeAnterior == null || precoMedioAnterior == null
+                || quantidadeAnterior.compareTo(BigDecimal.ZERO) <= 0) {
+            return precoUnitario.setScale(AritmeticaFixa.ESCALA_PRECO, RoundingMode.HALF_UP);
+        }
+
+        BigDecimal quantidadeTotal = quantidadeAnterior.add(quantidade);
+        if (quantidadeTotal.compareTo(BigDecimal.ZERO) == 0) {
+            return precoUnitario.setScale(AritmeticaFixa.ESCALA_PRECO, RoundingMode.HALF_UP);
+        }
+
+        return quantidadeAnterior.multiply(precoMedioAnterior)
+                .add(quantidade.multiply(precoUnitario))
+                .divide(quantidadeTotal, AritmeticaFixa.ESCALA_PRECO, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Aplica uma transação à posição (proventos e demais entradas somam quantidade, como no TransacaoService)
+     */
+    public static void aplicar(Posicao posicao, TipoTransacao tipo, BigDecimal quantidade,
+                               BigDecimal precoUnitario, LocalDateTime data) {
+        if (tipo == null || quantidade == null) {
+            return;
+        }
+        if (tipo.isEntrada()) {
+            if (tipo == TipoTransacao.COMPRA && precoUnitario != null) {
+                posicao.precoMedio = calcularPrecoMedio(posicao.quantidade, posicao.precoMedio, quantidade, precoUnitario);
+                if (posicao.dataPrimeiraCompra == null) {
+                    posicao.dataPrimeiraCompra = data;
+                }
+            }
+            posicao.quantidade = posicao.quantidade.add(quantidade);
+        } else if (tipo.isSaida()) {
+            if (tipo == TipoTransacao.VENDA && precoUnitario != null && posicao.precoMedio != null) {
+                posicao.resultadoRealizado = posicao.resultadoRealizado
+                        .add(quantidade.multiply(precoUnitario.subtract(posicao.precoMedio)));
+            }
+            posicao.quantidade = posicao.quantidade.subtract(quantidade);
+        }
+        posicao.transacoes++;
+    }
+
+    /**
+     * Posição acumulada de um ativo (quantidade pode ficar negativa se houver vendas sem compra)
+     */
+    public static final class Posicao {
+        private BigDecimal quantidade = BigDecimal.ZERO;
+        private BigDecimal precoMedio;
+        private BigDecimal resultadoRealizado = BigDecimal.ZERO;
+        private LocalDateTime dataPrimeiraCompra;
+        private int transacoes;
+
+        public BigDecimal getQuantidade() {
+            return quantidade;
+        }
+
+        /** Preço médio das compras (null se ainda não houve compra) */
+        public BigDecimal getPrecoMedio() {
+            return precoMedio;
+        }
+
+        /** Lucro ou prejuízo das vendas em relação ao preço médio da época */
+        public BigDecimal getResultadoRealizado() {
+            return resultadoRealizado;
+        }
+
+        public LocalDateTime getDataPrimeiraCompra() {
+            return dataPrimeiraCompra;
+        }
+
+        public int getTransacoes() {
+            return transacoes;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.invest.utils;
+
+/**
+ * Utilitário para retornos ponderados pelo tempo (TWR) e pelo capital (XIRR)
+ * Responsabilidade única: cálculos sobre arrays primitivos de fluxos e valores
+ *
+ * O XIRR usa Newton-Raphson protegido por um intervalo que contém a raiz: quando o passo de
+ * Newton sai do intervalo, é substituído por bissecção. Assim converge sempre, em no máximo
+ * MAX_ITERACOES avaliações, sem alocar durante as iterações.
+ */
+public final class CalculadoraRetorno {
+
+    public static final int MAX_ITERACOES = 100;
+
+    private static final double TOLERANCIA = 1e-10;
+    private static final double TAXA_MINIMA = -0.9999;
+    private static final double TAXA_MAXIMA_INICIAL = 10.0;
+    private static final int MAX_EXPANSOES = 8;
+
+    private CalculadoraRetorno() {
+        throw new UnsupportedOperationException("Esta classe não pode ser instanciada");
+    }
+
+    /**
+     * Retorno ponderado pelo tempo: produto dos retornos de cada subperíodo entre fluxos
+     * @param valorInicial valor logo após o fluxo que abre cada subperíodo
+     * @param valorFinal valor (mais proventos) logo antes do fluxo que fecha cada subperíodo
+     * @param total quantidade de subperíodos válidos nos arrays
+     * @return retorno acumulado em decimal (0.10 = 10%)
+     */
+    public static double calcularTWR(double[] valorInicial, double[] valorFinal, int total) {
+        double acumulado = 1.0;
+        for (int i = 0; i < total; i++) {
+            if (valorInicial[i] > 0.0) {
+                acumulado *= valorFinal[i] / valorInicial[i];
+            }
+        }
+        return acumulado - 1.0;
+    }
+
+    /**
+     * Taxa interna de retorno anual para fluxos datados (XIRR)
+     * @param fluxos valores dos fluxos do ponto de vista do investidor (aporte negativo, resgate positivo)
+     * @param anos momento de cada fluxo em anos desde o primeiro fluxo
+     * @param total quantidade de fluxos válidos nos arrays
+     * @return taxa anual em decimal, ou NaN se os fluxos não tiverem troca de sinal
+     */
+    public static double calcularXIRR(double[] fluxos, double[] anos, int total) {
+        if (total < 2) {
+            return Double.NaN;
+        }
+
+        double inferior = TAXA_MINIMA;
+        double superior = TAXA_MAXIMA_INICIAL;
+        double vplInferior = calcularVPL(fluxos, anos, total, inferior);
+        double vplSuperior = calcularVPL(fluxos, anos, total, superior);
+        for (int i = 0; i < MAX_EXPANSOES && vplInferior * vplSuperior > 0.0; i++) {
+            superior = superior * 2.0 + 1.0;
+            vplSuperior = calcularVPL(fluxos, anos, total, superior);
+        }
+        if (Double.isNaN(vplInferior * vplSuperior) || vplInferior * vplSuperior > 0.0) {
+            return Double.NaN; // Sem raiz no intervalo (ex: só aportes)
+        }
+
+        double taxa = Math.min(Math.max(0.1, inferior), superior);
+        for (int iteracao = 0; iteracao < MAX_ITERACOES; iteracao++) {
+            // VPL e derivada em uma passada
+            double vpl = 0.0;
+            double derivada = 0.0;
+            double logBase = Math.log1p(taxa);
+            for (int i = 0; i < total; i++) {
+                double desconto = Math.exp(-anos[i] * logBase);
+                vpl += fluxos[i] * desconto;
+                derivada -= anos[i] * fluxos[i] * desconto / (1.0 + taxa);
+            }
+            if (Math.abs(vpl) < TOLERANCIA) {
+                return taxa;
+            }
+
+            // Mantém o intervalo com troca de sinal
+            if (vpl * vplInferior < 0.0) {
+                superior = taxa;
+            } else {
+                inferior = taxa;
+                vplInferior = vpl;
+            }
+
+            double proxima = derivada != 0.0 ? taxa - vpl / derivada : Double.NaN;
+            if (!(proxima > inferior && proxima < superior)) {
+                proxima = (inferior + superior) / 2.0; // Passo de Newton fora do intervalo: bissecção
+            }
+            if (Math.abs(proxima - taxa) < TOLERANCIA) {
+                return proxima;
+            }
+            taxa = proxima;
+        }
+        return taxa;
+    }
+
+    private static double calcularVPL(double[] fluxos, double[] anos, int total, double taxa) {
+        double logBase = Math.log1p(taxa);
+        double vpl = 0.0;
+        for (int i = 0; i < total; i++) {
+            vpl += fluxos[i] * Math.exp(-anos[i] * logBase);
+        }
+        return vpl;
+    }
+}
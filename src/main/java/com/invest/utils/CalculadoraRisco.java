@@ -0,0 +1,133 @@
+package com.invest.utils;
+
+import java.util.Arrays;
+
+/**
+ * Utilitário para métricas de risco sobre uma série de índices (cota) em double
+ * Responsabilidade única: volatilidade, Sharpe, drawdown máximo e VaR 95%
+ *
+ * Média e variância são acumuladas em uma única passada (algoritmo de Welford), junto com o
+ * pico e o drawdown máximo; apenas o VaR histórico precisa ordenar uma cópia dos retornos.
+ */
+public final class CalculadoraRisco {
+
+    // Quantil da normal padrão para 95% (VaR paramétrico)
+    private static final double Z_95 = 1.6448536269514722;
+
+    private CalculadoraRisco() {
+        throw new UnsupportedOperationException("Esta classe não pode ser instanciada");
+    }
+
+    /**
+     * Calcula as métricas de risco a partir dos índices diários da cota
+     * @param indices índices da cota em ordem cronológica
+     * @param total quantidade de posições válidas em indices
+     * @param periodosPorAno períodos da série em um ano (anualização)
+     * @param taxaLivreRiscoAnual taxa livre de risco anual em decimal (ex: 0.10 = 10%)
+     * @return métricas calculadas (vazias se houver menos de dois retornos)
+     */
+    public static Metricas calcular(double[] indices, int total, int periodosPorAno, double taxaLivreRiscoAnual) {
+        if (indices == null || total < 3) {
+            return Metricas.VAZIA;
+        }
+
+        double[] retornos = new double[total - 1];
+        int n = 0;
+        double media = 0.0;
+        double m2 = 0.0;
+        double pico = indices[0];
+        double drawdownMaximo = 0.0;
+
+        for (int i = 1; i < total; i++) {
+            double anterior = indices[i - 1];
+            double atual = indices[i];
+            if (anterior <= 0.0 || atual <= 0.0) {
+                continue;
+            }
+
+            // Welford: média e soma dos quadrados dos desvios em uma passada
+            double retorno = atual / anterior - 1.0;
+            retornos[n++] = retorno;
+            double delta = retorno - media;
+            media += delta / n;
+            m2 += delta * (retorno - media);
+
+            if (atual > pico) {
+                pico = atual;
+            } else {
+                double drawdown = (pico - atual) / pico;
+                if (drawdown > drawdownMaximo) {
+                    drawdownMaximo = drawdown;
+                }
+            }
+        }
+
+        if (n < 2) {
+            return Metricas.VAZIA;
+        }
+
+        double desvio = Math.sqrt(m2 / (n - 1));
+        double volatilidadeAnual = desvio * Math.sqrt(periodosPorAno);
+        double retornoAnual = media * periodosPorAno;
+        double sharpe = volatilidadeAnual > 0.0 ? (retornoAnual - taxaLivreRiscoAnual) / volatilidadeAnual : 0.0;
+
+        // VaR histórico: perda no 5º percentil dos retornos (posto mais próximo)
+        Arrays.sort(retornos, 0, n);
+        int posicao = Math.max(0, (int) Math.ceil(0.05 * n) - 1);
+        double varHistorico = Math.max(0.0, -retornos[posicao]);
+
+        // VaR paramétrico: supõe retornos normais com a média e o desvio observados
+        double varParametrico = Math.max(0.0, -(media - Z_95 * desvio));
+
+        return new Metricas(n, volatilidadeAnual, sharpe, drawdownMaximo, varHistorico, varParametrico);
+    }
+
+    /**
+     * Resultado do cálculo (valores em decimal: 0.05 = 5%)
+     */
+    public static final class Metricas {
+
+        public static final Metricas VAZIA = new Metricas(0, 0.0, 0.0, 0.0, 0.0, 0.0);
+
+        private final int amostras;
+        private final double volatilidadeAnual;
+        private final double sharpeRatio;
+        private final double drawdownMaximo;
+        private final double var95Historico;
+        private final double var95Parametrico;
+
+        public Metricas(int amostras, double volatilidadeAnual, double sharpeRatio, double drawdownMaximo,
+                        double var95Historico, double var95Parametrico) {
+            this.amostras = amostras;
+            this.volatilidadeAnual = volatilidadeAnual;
+            this.sharpeRatio = sharpeRatio;
+            this.drawdownMaximo = drawdownMaximo;
+            this.var95Historico = var95Historico;
+            this.var95Parametrico = var95Parametrico;
+        }
+
+        public int getAmostras() {
+            return amostras;
+        }
+
+        public double getVolatilidadeAnual() {
+            return volatilidadeAnual;
+        }
+
+        public double getSharpeRatio() {
+            return sharpeRatio;
+        }
+
+        public double getDrawdownMaximo() {
+            return drawdownMaximo;
+        }
+
+        public double getVar95Historico() {
+            return var95Historico;
+        }
+
+        public double getVar95Parametrico() {
+            return var95Parametrico;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.invest.service;
+
+import com.invest.dto.TransacaoRequest;
+import com.invest.model.*;
+import com.invest.repository.AtivoRepository;
+import com.invest.repository.CarteiraRepository;
+import com.invest.repository.InvestidorRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uma venda total encerra a posição: o ativo fica com quantidade zero e o preço médio,
+ * tanto pela venda direta quanto pela reconstrução a partir do livro, e continua
+ * podendo ser atualizado pelo JPA (validação da quantidade).
+ *
+ * Usa SQL nativo do MariaDB (UPDATE com JOIN), por isso roda só contra um banco de teste:
+ * mvn test -Dteste.mariadb.url=jdbc:mariadb://localhost:3306/investment_test
+ * (opcionais: -Dteste.mariadb.usuario, -Dteste.mariadb.senha)
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "teste.mariadb.url", matches = ".+")
+class ProjecaoPosicoesServiceTest {
+
+    private static final String CODIGO = "ZERA3";
+
+    @Autowired
+    private ProjecaoPosicoesService projecaoPosicoesService;
+
+    @Autowired
+    private TransacaoService transacaoService;
+
+    @Autowired
+    private InvestidorRepository investidorRepository;
+
+    @Autowired
+    private CarteiraRepository carteiraRepository;
+
+    @Autowired
+    private AtivoRepository ativoRepository;
+
+    @DynamicPropertySource
+    static void banco(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("teste.mariadb.url"));
+        registry.add("spring.datasource.username", () -> System.getProperty("teste.mariadb.usuario", "root"));
+        registry.add("spring.datasource.password", () -> System.getProperty("teste.mariadb.senha", "senha"));
+    }
+
+    @Test
+    void reconstrucaoDeCompraSeguidaDeVendaTotalEncerraAPosicao() {
+        Long carteiraId = novaCarteira();
+        LocalDateTime base = LocalDateTime.now().minusDays(10);
+
+        transacaoService.createTransacao(carteiraId, request(TipoTransacao.COMPRA, "100", "10.00", base));
+        Transacao venda = transacaoService.createTransacao(carteiraId,
+                request(TipoTransacao.VENDA, "40", "12.00", base.plusDays(5)));
+
+        // A edição para venda total é aplicada pela reconstrução do livro (gravação via JDBC)
+        transacaoService.updateTransacao(venda.getId(), request(TipoTransacao.VENDA, "100", "12.00", base.plusDays(5)));
+
+        Ativo ativo = ativoDaCarteira(carteiraId);
+        assertThat(ativo.getQuantidade()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(ativo.getPrecoCompra()).isEqualByComparingTo(new BigDecimal("10.00"));
+
+        // Reaplicar o livro não encontra divergência
+        Map<String, Object> relatorio = projecaoPosicoesService.reconstruirCarteira(carteiraId);
+        assertThat(relatorio.get("ativosAlterados")).isEqualTo(0);
+        assertThat(relatorio.get("quantidadesAjustadas")).isEqualTo(0);
+
+        // A posição encerrada continua válida para atualizações pelo JPA
+        ativo.setPrecoAtual(new BigDecimal("13.00"));
+        ativoRepository.saveAndFlush(ativo);
+        assertThat(ativoDaCarteira(carteiraId).getPrecoAtual()).isEqualByComparingTo(new BigDecimal("13.00"));
+    }
+
+    @Test
+    void vendaTotalDiretaTemOMesmoResultadoQueAReconstrucao() {
+        Long carteiraId = novaCarteira();
+        LocalDateTime base = LocalDateTime.now().minusDays(10);
+
+        transacaoService.createTransacao(carteiraId, request(TipoTransacao.COMPRA, "100", "10.00", base));
+        transacaoService.createTransacao(carteiraId, request(TipoTransacao.VENDA, "100", "12.00", base.plusDays(5)));
+
+        Ativo ativo = ativoDaCarteira(carteiraId);
+        assertThat(ativo.getQuantidade()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(ativo.getPrecoCompra()).isEqualByComparingTo(new BigDecimal("10.00"));
+
+        Map<String, Object> relatorio = projecaoPosicoesService.reconstruirCarteira(carteiraId);
+        assertThat(relatorio.get("ativosAlterados")).isEqualTo(0);
+    }
+
+    private Long novaCarteira() {
+        long sufixo = System.nanoTime();
+        Investidor investidor = investidorRepository.save(
+                new Investidor("Investidor Projeção", "projecao" + sufixo + "@invest.com", "senha123"));
+        Carteira carteira = new Carteira("Projeção " + sufixo, ObjetivoCarteira.OUTROS, PerfilRisco.MODERADO_RISCO);
+        carteira.setInvestidor(investidor);
+        return carteiraRepository.save(carteira).getId();
+    }
+
+    private Ativo ativoDaCarteira(Long carteiraId) {
+        List<Ativo> ativos = ativoRepository.findByCarteira(carteiraRepository.findById(carteiraId).orElseThrow());
+        assertThat(ativos).hasSize(1);
+        assertThat(ativos.get(0).getCodigo()).isEqualTo(CODIGO);
+        return ativos.get(0);
+    }
+
+    private TransacaoRequest request(TipoTransacao tipo, String quantidade, String preco, LocalDateTime data) {
+        TransacaoRequest request = new TransacaoRequest();
+        request.setTipoTransacao(tipo);
+        request.setCodigoAtivo(CODIGO);
+        request.setNomeAtivo("Ativo Projeção");
+        request.setTipoAtivo(TipoAtivo.ACAO);
+        request.setQuantidade(new BigDecimal(quantidade));
+        request.setPrecoUnitario(new BigDecimal(preco));
+        request.setDataTransacao(data);
+        return request;
+    }
+}
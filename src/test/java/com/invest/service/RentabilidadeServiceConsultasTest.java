@@ -0,0 +1,118 @@
+package com.invest.service;
+
+import com.invest.model.*;
+import com.invest.utils.CalculadoraRisco;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * A rentabilidade da carteira deve executar o mesmo número de comandos SQL
+ * independente da quantidade de ativos (transações carregadas de uma vez)
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(RentabilidadeService.class)
+class RentabilidadeServiceConsultasTest {
+
+    @Autowired
+    private RentabilidadeService rentabilidadeService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @MockBean
+    private RiscoCarteiraService riscoCarteiraService;
+
+    private Investidor investidor;
+
+    @BeforeEach
+    void setUp() {
+        when(riscoCarteiraService.calcularRisco(anyLong())).thenReturn(CalculadoraRisco.Metricas.VAZIA);
+        when(serieValorCarteiraService.calcularRetornosPorPeriodo(anyLong())).thenReturn(Map.of());
+        investidor = entityManager.persist(new Investidor("Investidor Teste", "teste@invest.com", "senha123"));
+    }
+
+    @Test
+    void quantidadeDeComandosNaoCresceComOsAtivos() {
+        Long carteiraPequena = criarCarteira("Pequena", 3);
+        Long carteiraGrande = criarCarteira("Grande", 60);
+
+        long comandosPequena = contarComandos(carteiraPequena);
+        long comandosGrande = contarComandos(carteiraGrande);
+
+        assertThat(comandosPequena).isPositive();
+        assertThat(comandosGrande).isEqualTo(comandosPequena);
+    }
+
+    @Test
+    void resultadoIncluiTodosOsAtivosComSuasTransacoes() {
+        Long carteiraId = criarCarteira("Completa", 10);
+        entityManager.clear();
+
+        var response = rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+
+        assertThat(response.getAtivos()).hasSize(10);
+        // Cada ativo: compra de 10 a 20,00 e de 5 a 26,00
+        assertThat(response.getValorTotalCompras()).isEqualByComparingTo(new BigDecimal("3300.00"));
+        assertThat(response.getAtivos()).allSatisfy(ativo ->
+                assertThat(ativo.getValorTotalCompras()).isEqualByComparingTo(new BigDecimal("330.00")));
+    }
+
+    private long contarComandos(Long carteiraId) {
+        entityManager.clear();
+        Statistics estatisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+        rentabilidadeService.calcularRentabilidadeCarteira(carteiraId);
+        return estatisticas.getPrepareStatementCount();
+    }
+
+    private Long criarCarteira(String nome, int quantidadeAtivos) {
+        Carteira carteira = new Carteira(nome, ObjetivoCarteira.OUTROS, PerfilRisco.MODERADO_RISCO);
+        carteira.setInvestidor(investidor);
+        entityManager.persist(carteira);
+
+        for (int i = 0; i < quantidadeAtivos; i++) {
+            String codigo = nome.toUpperCase().substring(0, 3) + i;
+            Ativo ativo = new Ativo(codigo, "Ativo " + codigo, TipoAtivo.ACAO, new BigDecimal("15"), new BigDecimal("22.00"));
+            ativo.setPrecoAtual(new BigDecimal("25.00"));
+            ativo.setCarteira(carteira);
+            entityManager.persist(ativo);
+
+            entityManager.persist(transacao(carteira, ativo, new BigDecimal("10"), new BigDecimal("20.00")));
+            entityManager.persist(transacao(carteira, ativo, new BigDecimal("5"), new BigDecimal("26.00")));
+        }
+        entityManager.flush();
+        return carteira.getId();
+    }
+
+    private Transacao transacao(Carteira carteira, Ativo ativo, BigDecimal quantidade, BigDecimal preco) {
+        Transacao transacao = new Transacao(TipoTransacao.COMPRA, ativo.getCodigo(), ativo.getNome(),
+                ativo.getTipo(), quantidade, preco);
+        transacao.setCarteira(carteira);
+        transacao.setAtivo(ativo);
+        return transacao;
+    }
+}
@@ -0,0 +1,143 @@
+package com.invest.service;
+
+import com.invest.dto.RentabilidadeResponse;
+import com.invest.model.*;
+import com.invest.repository.AtivoRepository;
+import com.invest.repository.TransacaoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * TWR e XIRR por ativo: eventos societários não fecham subperíodo e o cálculo
+ * escala para carteiras com muitos fluxos (benchmark com 10 mil transações)
+ */
+@ExtendWith(MockitoExtension.class)
+class RentabilidadeServiceRetornosTest {
+
+    private static final long ATIVO_ID = 1L;
+
+    @Mock
+    private AtivoRepository ativoRepository;
+
+    @Mock
+    private TransacaoRepository transacaoRepository;
+
+    @InjectMocks
+    private RentabilidadeService rentabilidadeService;
+
+    private Carteira carteira;
+    private Ativo ativo;
+
+    @BeforeEach
+    void setUp() {
+        carteira = new Carteira("Teste", ObjetivoCarteira.OUTROS, PerfilRisco.MODERADO_RISCO);
+        ativo = new Ativo("PETR4", "Petrobras", TipoAtivo.ACAO, new BigDecimal("200"), new BigDecimal("5.00"));
+        ativo.setId(ATIVO_ID);
+        ativo.setCarteira(carteira);
+        when(ativoRepository.findById(ATIVO_ID)).thenReturn(Optional.of(ativo));
+    }
+
+    @Test
+    void desdobramentoSemPrecoNaoZeraOTwr() {
+        LocalDateTime inicio = LocalDateTime.now().minusDays(200);
+        List<Transacao> transacoes = List.of(
+                transacao(TipoTransacao.COMPRA, "100", "10.00", inicio),
+                // Desdobramento 1:2 registrado com preço zero
+                transacao(TipoTransacao.DESDOBRAMENTO, "100", "0.00", inicio.plusDays(50)),
+                transacao(TipoTransacao.COMPRA, "50", "5.50", inicio.plusDays(100)));
+        ativo.setQuantidade(new BigDecimal("250"));
+        ativo.setPrecoAtual(new BigDecimal("6.05"));
+        when(transacaoRepository.findByCarteiraAndCodigoAtivo(carteira, "PETR4")).thenReturn(transacoes);
+
+        RentabilidadeResponse response = rentabilidadeService.calcularRentabilidadeAtivo(ATIVO_ID);
+
+        // 1000 -> 200 x 5,50 = 1100 (+10%); 1375 -> 250 x 6,05 = 1512,50 (+10%): TWR = 21%
+        assertThat(response.getRentabilidadeTWR()).isEqualByComparingTo("21.0000");
+    }
+
+    @Test
+    void grupamentoEBonificacaoApenasAjustamQuantidade() {
+        LocalDateTime inicio = LocalDateTime.now().minusDays(300);
+        List<Transacao> transacoes = List.of(
+                transacao(TipoTransacao.COMPRA, "1000", "1.00", inicio),
+                // Grupamento 10:1: a quantidade cai de 1000 para 100
+                transacao(TipoTransacao.GRUPAMENTO, "900", "0.00", inicio.plusDays(30)),
+                // Bonificação de 10% com preço nominal
+                transacao(TipoTransacao.BONIFICACAO, "10", "0.01", inicio.plusDays(60)));
+        ativo.setQuantidade(new BigDecimal("110"));
+        ativo.setPrecoAtual(new BigDecimal("10.00"));
+        when(transacaoRepository.findByCarteiraAndCodigoAtivo(carteira, "PETR4")).thenReturn(transacoes);
+
+        RentabilidadeResponse response = rentabilidadeService.calcularRentabilidadeAtivo(ATIVO_ID);
+
+        // 1000 -> 110 x 10,00 = 1100
+        assertThat(response.getRentabilidadeTWR()).isEqualByComparingTo("10.0000");
+    }
+
+    @Test
+    void benchmarkAtivoCom10MilFluxos() {
+        Random random = new Random(42);
+        int totalFluxos = 10_000;
+        LocalDateTime inicio = LocalDateTime.now().minusDays(totalFluxos);
+        List<Transacao> transacoes = new ArrayList<>(totalFluxos);
+        double preco = 20.0;
+        long quantidade = 0;
+        for (int i = 0; i < totalFluxos; i++) {
+            preco = Math.max(1.0, preco * (1.0 + (random.nextGaussian() * 0.01)));
+            BigDecimal precoDia = BigDecimal.valueOf(preco).setScale(2, java.math.RoundingMode.HALF_UP);
+            LocalDateTime data = inicio.plusDays(i);
+            if (i % 50 == 49) {
+                transacoes.add(transacao(TipoTransacao.DIVIDENDO, "1", "15.00", data));
+            } else if (quantidade > 20 && random.nextInt(4) == 0) {
+                transacoes.add(transacao(TipoTransacao.VENDA, "10", precoDia.toPlainString(), data));
+                quantidade -= 10;
+            } else {
+                transacoes.add(transacao(TipoTransacao.COMPRA, "10", precoDia.toPlainString(), data));
+                quantidade += 10;
+            }
+        }
+        ativo.setQuantidade(BigDecimal.valueOf(quantidade));
+        ativo.setPrecoAtual(BigDecimal.valueOf(preco).setScale(2, java.math.RoundingMode.HALF_UP));
+        when(transacaoRepository.findByCarteiraAndCodigoAtivo(carteira, "PETR4")).thenReturn(transacoes);
+
+        // Aquecimento do JIT antes de medir
+        for (int i = 0; i < 5; i++) {
+            rentabilidadeService.calcularRentabilidadeAtivo(ATIVO_ID);
+        }
+        int execucoes = 20;
+        long inicioMedicao = System.nanoTime();
+        RentabilidadeResponse response = null;
+        for (int i = 0; i < execucoes; i++) {
+            response = rentabilidadeService.calcularRentabilidadeAtivo(ATIVO_ID);
+        }
+        double msPorExecucao = (System.nanoTime() - inicioMedicao) / 1_000_000.0 / execucoes;
+        System.out.printf("📊 TWR + XIRR de %d fluxos: %.2f ms por cálculo%n", totalFluxos, msPorExecucao);
+
+        assertThat(response.getRentabilidadeTWR()).isNotNull();
+        assertThat(response.getRentabilidadeXIRR()).isNotNull();
+        // Limite folgado: só pega regressões de complexidade (ex: quadrática nos fluxos)
+        assertThat(msPorExecucao).isLessThan(500.0);
+    }
+
+    private Transacao transacao(TipoTransacao tipo, String quantidade, String preco, LocalDateTime data) {
+        Transacao transacao = new Transacao(tipo, "PETR4", "Petrobras", TipoAtivo.ACAO,
+                new BigDecimal(quantidade), new BigDecimal(preco));
+        transacao.setDataTransacao(data);
+        transacao.setCarteira(carteira);
+        return transacao;
+    }
+}
@@ -0,0 +1,89 @@
+package com.invest.service;
+
+import com.invest.model.ValorDiarioCarteira;
+import com.invest.repository.TransacaoRepository;
+import com.invest.repository.ValorDiarioCarteiraRepository;
+import com.invest.service.external.GoogleSheetsService;
+import com.invest.service.historico.HistoricoCotacoesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A série é estendida a partir da posição gravada no último ponto: só as transações
+ * posteriores a ele são lidas, sem reprocessar o histórico da carteira
+ */
+@ExtendWith(MockitoExtension.class)
+class SerieValorCarteiraServiceTest {
+
+    private static final Long CARTEIRA_ID = 1L;
+
+    @Mock
+    private ValorDiarioCarteiraRepository valorDiarioRepository;
+
+    @Mock
+    private TransacaoRepository transacaoRepository;
+
+    @Mock
+    private HistoricoCotacoesStore historicoCotacoesStore;
+
+    @Mock
+    private GoogleSheetsService googleSheetsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private SerieValorCarteiraService serieValorCarteiraService;
+
+    @BeforeEach
+    void setUp() {
+        serieValorCarteiraService.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pontoDeHojePartDaPosicaoDoUltimoPontoSemReprocessarOHistorico() {
+        LocalDate hoje = LocalDate.now();
+        ValorDiarioCarteira ontem = new ValorDiarioCarteira(CARTEIRA_ID, hoje.minusDays(1),
+                new BigDecimal("3000.00"), BigDecimal.ZERO, new BigDecimal("1.10000000"));
+        ontem.setPosicoes("PETR4=100@30.00;");
+
+        when(googleSheetsService.getVersaoCotacoes()).thenReturn(1L);
+        when(valorDiarioRepository.findUltimosPontos(anyCollection())).thenReturn(List.of(ontem));
+        when(transacaoRepository.findByCarteiraIdInAPartirDe(List.of(CARTEIRA_ID), hoje.atStartOfDay())).thenReturn(List.of());
+        when(historicoCotacoesStore.buscarFechamentosDiarios(anyString(), any(), any())).thenReturn(new TreeMap<>());
+
+        serieValorCarteiraService.calcularRetornosPorPeriodo(CARTEIRA_ID);
+
+        verify(transacaoRepository, never()).findByCarteiraIdInOrderByDataTransacao(anyCollection());
+        ArgumentCaptor<List<ValorDiarioCarteira>> salvos = ArgumentCaptor.forClass(List.class);
+        verify(valorDiarioRepository).saveAll(salvos.capture());
+        assertThat(salvos.getValue()).hasSize(1);
+
+        ValorDiarioCarteira ponto = salvos.getValue().get(0);
+        assertThat(ponto.getData()).isEqualTo(hoje);
+        assertThat(ponto.isProvisorio()).isTrue();
+        assertThat(ponto.getValorMercado()).isEqualByComparingTo("3000.00");
+        assertThat(ponto.getIndiceCota()).isEqualByComparingTo("1.10000000");
+        assertThat(ponto.getPosicoes()).isEqualTo("PETR4=100@30.00;");
+    }
+}
@@ -0,0 +1,117 @@
+package com.invest.service;
+
+import com.invest.dto.TransacaoRequest;
+import com.invest.model.*;
+import com.invest.repository.AtivoRepository;
+import com.invest.repository.CarteiraRepository;
+import com.invest.repository.InvestidorRepository;
+import com.invest.repository.TransacaoRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Escritores simultâneos na mesma posição não podem perder atualizações: cada transação
+ * que perde a corrida (versão do ativo ou chave única) é refeita até ser gravada.
+ *
+ * Usa SQL nativo do MariaDB (UPDATE com JOIN), por isso roda só contra um banco de teste:
+ * mvn test -Dteste.mariadb.url=jdbc:mariadb://localhost:3306/investment_test
+ * (opcionais: -Dteste.mariadb.usuario, -Dteste.mariadb.senha)
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "teste.mariadb.url", matches = ".+")
+class TransacaoServiceConcorrenciaTest {
+
+    private static final int ESCRITORES = 64;
+
+    @Autowired
+    private TransacaoService transacaoService;
+
+    @Autowired
+    private InvestidorRepository investidorRepository;
+
+    @Autowired
+    private CarteiraRepository carteiraRepository;
+
+    @Autowired
+    private AtivoRepository ativoRepository;
+
+    @Autowired
+    private TransacaoRepository transacaoRepository;
+
+    @DynamicPropertySource
+    static void banco(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("teste.mariadb.url"));
+        registry.add("spring.datasource.username", () -> System.getProperty("teste.mariadb.usuario", "root"));
+        registry.add("spring.datasource.password", () -> System.getProperty("teste.mariadb.senha", "senha"));
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "32");
+        // Todos disputam a mesma posição: o limite padrão de tentativas é pensado para uso real
+        registry.add("transacoes.concorrencia.max-tentativas", () -> "100");
+    }
+
+    @Test
+    void escritoresSimultaneosNaMesmaPosicaoNaoPerdemAtualizacoes() throws Exception {
+        long sufixo = System.nanoTime();
+        Investidor investidor = investidorRepository.save(
+                new Investidor("Investidor Concorrência", "concorrencia" + sufixo + "@invest.com", "senha123"));
+        Carteira carteira = new Carteira("Concorrência " + sufixo, ObjetivoCarteira.OUTROS, PerfilRisco.MODERADO_RISCO);
+        carteira.setInvestidor(investidor);
+        Long carteiraId = carteiraRepository.save(carteira).getId();
+
+        // Datas distintas fora de ordem: parte das compras chega depois de uma mais recente (retroativa)
+        LocalDateTime base = LocalDateTime.now().minusDays(10);
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(ESCRITORES);
+        List<Future<Transacao>> futuros = new ArrayList<>();
+        try {
+            for (int i = 0; i < ESCRITORES; i++) {
+                TransacaoRequest request = compra(base.plusMinutes((i * 37L) % ESCRITORES));
+                futuros.add(executor.submit(() -> {
+                    largada.await();
+                    return transacaoService.createTransacao(carteiraId, request);
+                }));
+            }
+            largada.countDown();
+            for (Future<Transacao> futuro : futuros) {
+                assertThat(futuro.get(2, TimeUnit.MINUTES).getId()).isNotNull();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Carteira gravada = carteiraRepository.findById(carteiraId).orElseThrow();
+        List<Ativo> ativos = ativoRepository.findByCarteira(gravada);
+        assertThat(ativos).hasSize(1);
+        assertThat(ativos.get(0).getQuantidade()).isEqualByComparingTo(BigDecimal.valueOf(ESCRITORES));
+        assertThat(ativos.get(0).getPrecoCompra()).isEqualByComparingTo(new BigDecimal("10.00"));
+        assertThat(transacaoRepository.countByCarteira(gravada)).isEqualTo(ESCRITORES);
+        assertThat(gravada.getValorInvestido()).isEqualByComparingTo(new BigDecimal("640.00"));
+    }
+
+    private TransacaoRequest compra(LocalDateTime data) {
+        TransacaoRequest request = new TransacaoRequest();
+        request.setTipoTransacao(TipoTransacao.COMPRA);
+        request.setCodigoAtivo("CONC3");
+        request.setNomeAtivo("Ativo Concorrência");
+        request.setTipoAtivo(TipoAtivo.ACAO);
+        request.setQuantidade(BigDecimal.ONE);
+        request.setPrecoUnitario(new BigDecimal("10.00"));
+        request.setDataTransacao(data);
+        return request;
+    }
+}
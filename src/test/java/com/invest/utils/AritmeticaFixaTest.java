@@ -0,0 +1,138 @@
+package com.invest.utils;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Propriedades do ponto fixo: para parcelas aleatórias (escalas, sinais e magnitudes variadas,
+ * inclusive as que estouram long), o resultado é idêntico ao cálculo em BigDecimal
+ */
+class AritmeticaFixaTest {
+
+    private static final int PARCELAS_POR_CASO = 200;
+
+    @RepeatedTest(500)
+    void somaIgualABigDecimalAdd(RepetitionInfo repeticao) {
+        Random random = new Random(repeticao.getCurrentRepetition());
+        int escala = random.nextBoolean() ? AritmeticaFixa.ESCALA_PRECO : AritmeticaFixa.ESCALA_PRODUTO;
+
+        List<BigDecimal> parcelas = gerarParcelas(random, escala);
+        AritmeticaFixa.Soma soma = new AritmeticaFixa.Soma(escala);
+        BigDecimal esperado = BigDecimal.ZERO;
+        for (BigDecimal parcela : parcelas) {
+            soma.adicionar(parcela);
+            esperado = esperado.add(parcela);
+        }
+
+        // equals compara valor e escala
+        assertThat(soma.getResultado()).isEqualTo(esperado);
+    }
+
+    @RepeatedTest(500)
+    void somaDeParcelasEmPontoFixoIgualASomaDeBigDecimal(RepetitionInfo repeticao) {
+        Random random = new Random(10_000L + repeticao.getCurrentRepetition());
+        int escala = AritmeticaFixa.ESCALA_PRODUTO;
+
+        AritmeticaFixa.Soma somaFixa = new AritmeticaFixa.Soma(escala);
+        AritmeticaFixa.Soma somaBigDecimal = new AritmeticaFixa.Soma(escala);
+        BigDecimal esperado = BigDecimal.ZERO;
+        for (int i = 0; i < PARCELAS_POR_CASO; i++) {
+            BigDecimal parcela = gerarValor(random, random.nextInt(escala + 1), random.nextInt(10) == 0 ? 18 : 12);
+            somaFixa.adicionar(AritmeticaFixa.paraFixo(parcela, escala), parcela.scale());
+            somaBigDecimal.adicionar(parcela);
+            esperado = esperado.add(parcela);
+        }
+
+        assertThat(somaFixa.getResultado()).isEqualTo(esperado);
+        assertThat(somaBigDecimal.getResultado()).isEqualTo(esperado);
+    }
+
+    @RepeatedTest(200)
+    void produtoIgualAMultiplicacaoEmBigDecimal(RepetitionInfo repeticao) {
+        Random random = new Random(20_000L + repeticao.getCurrentRepetition());
+        for (int i = 0; i < PARCELAS_POR_CASO; i++) {
+            BigDecimal quantidade = gerarValor(random, random.nextInt(AritmeticaFixa.ESCALA_QUANTIDADE + 1), 10);
+            BigDecimal preco = gerarValor(random, random.nextInt(AritmeticaFixa.ESCALA_PRECO + 1), 8);
+
+            long produto = AritmeticaFixa.multiplicar(
+                    AritmeticaFixa.paraFixo(quantidade, AritmeticaFixa.ESCALA_QUANTIDADE),
+                    AritmeticaFixa.paraFixo(preco, AritmeticaFixa.ESCALA_PRECO));
+
+            assertThat(AritmeticaFixa.paraBigDecimal(produto, AritmeticaFixa.ESCALA_PRODUTO))
+                    .isEqualByComparingTo(quantidade.multiply(preco));
+        }
+    }
+
+    @RepeatedTest(200)
+    void paraFixoIgualAoDeslocamentoEmBigDecimal(RepetitionInfo repeticao) {
+        Random random = new Random(30_000L + repeticao.getCurrentRepetition());
+        for (int i = 0; i < PARCELAS_POR_CASO; i++) {
+            int escala = random.nextInt(AritmeticaFixa.ESCALA_PRODUTO + 1);
+            BigDecimal valor = gerarValor(random, random.nextInt(escala + 1), random.nextInt(20) + 1);
+
+            BigDecimal deslocado = valor.movePointRight(escala);
+            if (deslocado.unscaledValue().bitLength() < 64) {
+                assertThat(AritmeticaFixa.paraFixo(valor, escala)).isEqualTo(deslocado.longValueExact());
+            } else {
+                assertThatThrownBy(() -> AritmeticaFixa.paraFixo(valor, escala)).isInstanceOf(ArithmeticException.class);
+            }
+        }
+    }
+
+    @Test
+    void paraFixoRejeitaEscalaMaiorQueADoCalculo() {
+        assertThatThrownBy(() -> AritmeticaFixa.paraFixo(new BigDecimal("1.001"), AritmeticaFixa.ESCALA_PRECO))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void somaComEstouroPassaParaBigDecimal() {
+        AritmeticaFixa.Soma soma = new AritmeticaFixa.Soma(AritmeticaFixa.ESCALA_PRODUTO);
+        BigDecimal grande = new BigDecimal("9000000000000.000000");
+        soma.adicionar(grande);
+        soma.adicionar(grande);
+        soma.adicionar(new BigDecimal("0.01"));
+
+        assertThat(soma.getResultado()).isEqualTo(grande.add(grande).add(new BigDecimal("0.01")));
+    }
+
+    /**
+     * Parcelas na escala do cálculo, com algumas de escala maior, escala negativa e magnitude
+     * próxima do limite de long, para exercitar o fallback em BigDecimal
+     */
+    private List<BigDecimal> gerarParcelas(Random random, int escala) {
+        List<BigDecimal> parcelas = new ArrayList<>(PARCELAS_POR_CASO);
+        for (int i = 0; i < PARCELAS_POR_CASO; i++) {
+            int tipo = random.nextInt(50);
+            if (tipo == 0) {
+                parcelas.add(gerarValor(random, escala + 1 + random.nextInt(3), 10));
+            } else if (tipo == 1) {
+                parcelas.add(new BigDecimal(BigInteger.valueOf(random.nextInt(1000)), -random.nextInt(4)));
+            } else if (tipo == 2) {
+                parcelas.add(gerarValor(random, escala, 19));
+            } else {
+                parcelas.add(gerarValor(random, random.nextInt(escala + 1), 12));
+            }
+        }
+        return parcelas;
+    }
+
+    private BigDecimal gerarValor(Random random, int escala, int digitos) {
+        StringBuilder numero = new StringBuilder(random.nextBoolean() ? "-" : "");
+        numero.append(1 + random.nextInt(9));
+        for (int i = 1; i < digitos; i++) {
+            numero.append(random.nextInt(10));
+        }
+        return new BigDecimal(new BigInteger(numero.toString()), escala);
+    }
+}
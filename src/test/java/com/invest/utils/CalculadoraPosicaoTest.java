@@ -0,0 +1,54 @@
+package com.invest.utils;
+
+import com.invest.model.TipoTransacao;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * O preço médio reconstruído pelo livro é arredondado a cada compra na escala da coluna,
+ * como o preço gravado no ativo pela atualização direta
+ */
+class CalculadoraPosicaoTest {
+
+    @Test
+    void precoMedioArredondadoACadaCompraComoNaAtualizacaoDireta() {
+        LocalDateTime data = LocalDateTime.of(2024, 1, 2, 10, 0);
+        CalculadoraPosicao.Posicao posicao = new CalculadoraPosicao.Posicao();
+
+        CalculadoraPosicao.aplicar(posicao, TipoTransacao.COMPRA, new BigDecimal("2"), new BigDecimal("10.00"), data);
+        CalculadoraPosicao.aplicar(posicao, TipoTransacao.COMPRA, new BigDecimal("2"), new BigDecimal("10.01"), data.plusDays(1));
+        // 10.005 → 10.01, o valor que fica gravado no ativo após a segunda compra
+        assertThat(posicao.getPrecoMedio()).isEqualTo(new BigDecimal("10.01"));
+
+        // (4 x 10.01 + 10.00) / 5 = 10.008; sem arredondar antes seria (4 x 10.005 + 10.00) / 5 = 10.004
+        CalculadoraPosicao.aplicar(posicao, TipoTransacao.COMPRA, BigDecimal.ONE, new BigDecimal("10.00"), data.plusDays(2));
+        assertThat(posicao.getPrecoMedio()).isEqualTo(new BigDecimal("10.01"));
+    }
+
+    @Test
+    void atualizacaoDiretaEReconstrucaoChegamAoMesmoPrecoMedio() {
+        BigDecimal[][] compras = {
+                {new BigDecimal("3"), new BigDecimal("27.33")},
+                {new BigDecimal("7"), new BigDecimal("28.19")},
+                {new BigDecimal("0.5"), new BigDecimal("26.01")},
+                {new BigDecimal("11"), new BigDecimal("29.47")},
+        };
+
+        // Atualização direta: cada compra parte do preço gravado no ativo (escala da coluna)
+        BigDecimal quantidade = BigDecimal.ZERO;
+        BigDecimal precoGravado = null;
+        CalculadoraPosicao.Posicao posicao = new CalculadoraPosicao.Posicao();
+        for (BigDecimal[] compra : compras) {
+            precoGravado = CalculadoraPosicao.calcularPrecoMedio(quantidade, precoGravado, compra[0], compra[1]);
+            assertThat(precoGravado.scale()).isEqualTo(AritmeticaFixa.ESCALA_PRECO);
+            quantidade = quantidade.add(compra[0]);
+
+            CalculadoraPosicao.aplicar(posicao, TipoTransacao.COMPRA, compra[0], compra[1], LocalDateTime.now());
+            assertThat(posicao.getPrecoMedio()).isEqualTo(precoGravado);
+        }
+    }
+}